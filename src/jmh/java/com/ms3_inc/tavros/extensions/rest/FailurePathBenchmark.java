@@ -0,0 +1,112 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of requests failing validation, where most of the time used to go to
+ * building the {@link com.ms3_inc.tavros.extensions.rest.exception.RestException}.
+ * <p>
+ * Every scenario runs with and without the {@code camelx.rest.ff.lightexceptions} flag, the
+ * {@code Rendered} ones also ask the exception for its message like an error handler logging it would.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class FailurePathBenchmark {
+    private static final AsyncCallback DONE = doneSync -> { };
+    private static final String LIGHTWEIGHT = "-Dcamelx.rest.ff.lightexceptions=true";
+
+    @Param({"openapi4j", "swagger"})
+    public String validator;
+
+    CamelContext context;
+    AsyncProcessor processor;
+    Exchange invalidJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.start();
+
+        processor = "openapi4j".equals(validator)
+                ? new OpenApi4jValidator(ValidatorBenchmark.SPEC)
+                : new SwaggerRequestValidator(ValidatorBenchmark.SPEC);
+        invalidJson = ValidatorBenchmark.post(context, "/greeting", "application/json", "{\"not-caller\":\"someone\"}");
+
+        if (validate() == null) {
+            throw new IllegalStateException("The request was expected to fail validation");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    private Exception validate() {
+        invalidJson.setException(null);
+        processor.process(invalidJson, DONE);
+        return invalidJson.getException();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+    public Exception invalidBody() {
+        return validate();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", LIGHTWEIGHT})
+    public Exception invalidBodyLightweight() {
+        return validate();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+    public String invalidBodyRendered() {
+        return validate().getMessage();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", LIGHTWEIGHT})
+    public String invalidBodyLightweightRendered() {
+        return validate().getMessage();
+    }
+}
@@ -0,0 +1,99 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.MediaTypeUtils.CompactMediaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.MimeType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CompactMediaType} with Spring's {@link MimeType}, for parsing a {@code Content-Type} header
+ * and finding the first declared media type including it, as done for the body of each request.
+ * <p>
+ * The declared media types are parsed once, the header on every invocation. Run with {@code -prof gc}
+ * to compare the allocations too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MediaTypeBenchmark {
+    private static final String[] DECLARED = {
+            "application/xml", "application/*+xml", "application/json;version=2", "application/*+json", "application/json"
+    };
+
+    @Param({
+            "application/json",
+            "application/json; charset=UTF-8",
+            "application/vnd.api+json;version=2"
+    })
+    public String contentType;
+
+    private MimeType[] mimeTypes;
+    private CompactMediaType[] compactTypes;
+
+    @Setup
+    public void setUp() {
+        mimeTypes = new MimeType[DECLARED.length];
+        compactTypes = new CompactMediaType[DECLARED.length];
+        for (int i = 0; i < DECLARED.length; i++) {
+            mimeTypes[i] = MimeType.valueOf(DECLARED[i]);
+            compactTypes[i] = CompactMediaType.parse(DECLARED[i]);
+        }
+    }
+
+    @Benchmark
+    public MimeType mimeTypeParse() {
+        return MimeType.valueOf(contentType);
+    }
+
+    @Benchmark
+    public CompactMediaType compactParse() {
+        return CompactMediaType.parse(contentType);
+    }
+
+    @Benchmark
+    public int mimeTypeMatch() {
+        final MimeType mimeType = MimeType.valueOf(contentType);
+        for (int i = 0; i < mimeTypes.length; i++) {
+            if (MediaTypeUtils.includes(mimeTypes[i], mimeType)) return i;
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int compactMatch() {
+        final CompactMediaType mediaType = CompactMediaType.parse(contentType);
+        for (int i = 0; i < compactTypes.length; i++) {
+            if (MediaTypeUtils.includes(compactTypes[i], mediaType)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,66 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link QueryStringParser} with the former {@code UriComponentsBuilder} based parsing
+ * of {@code SwaggerRequestValidator}, for plain and percent-encoded query strings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryParsingBenchmark {
+
+    @Param({
+            "bar-query=some",
+            "page=2&size=50&sort=name&sort=date&ids=1,2,3&q=plain",
+            "q=caf%C3%A9+au+lait&from=2020-01-01T00%3A00%3A00Z&filter%5Bname%5D=x%20y"
+    })
+    public String query;
+
+    @Benchmark
+    public Map<String, List<String>> parser() {
+        return QueryStringParser.parse(query);
+    }
+
+    @Benchmark
+    public MultiValueMap<String, String> uriComponents() {
+        return UriComponentsBuilder.newInstance()
+                .query(query)
+                .build()
+                .getQueryParams();
+    }
+}
@@ -0,0 +1,78 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a validator from the YAML specification with building it from a {@link SpecSnapshot},
+ * which is what a validator does when a pod starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SpecLoadingBenchmark {
+
+    @Param({"openapi4j", "swagger"})
+    public String validator;
+
+    URL location;
+    byte[] snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SpecSnapshot compiled = SpecSnapshot.compile(ValidatorBenchmark.SPEC);
+        compiled.write(out);
+        location = compiled.getLocation();
+        snapshot = out.toByteArray();
+    }
+
+    @Benchmark
+    public Object fromYaml() {
+        return "openapi4j".equals(validator)
+                ? new OpenApi4jValidator(ValidatorBenchmark.SPEC)
+                : new SwaggerRequestValidator(ValidatorBenchmark.SPEC);
+    }
+
+    @Benchmark
+    public Object fromSnapshot() throws Exception {
+        SpecSnapshot spec = SpecSnapshot.read(new ByteArrayInputStream(snapshot), location);
+        return "openapi4j".equals(validator)
+                ? new OpenApi4jValidator(spec, null)
+                : new SwaggerRequestValidator(spec, null);
+    }
+}
@@ -0,0 +1,235 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.converter.stream.InputStreamCache;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link OpenApi4jValidator} and {@link SwaggerRequestValidator} through
+ * {@code process(Exchange, AsyncCallback)} with synthetic exchanges, the same way a
+ * route would after the HTTP consumer populated the message.
+ * <p>
+ * Throughput and sampled latency (which reports the p99) are measured for every scenario.
+ * The profile in the pom adds {@code -prof gc} so the allocation rate per operation
+ * ({@code gc.alloc.rate.norm}) is reported next to them.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ValidatorBenchmark {
+    static final String SPEC = "benchmark-api.yaml";
+    private static final AsyncCallback DONE = doneSync -> { };
+
+    @Param({"openapi4j", "swagger"})
+    public String validator;
+
+    /**
+     * Streaming body mode of {@link OpenApi4jValidator}, run with {@code -p streamingBody=true} to compare.
+     */
+    @Param({"false"})
+    public boolean streamingBody;
+
+    CamelContext context;
+    AsyncProcessor processor;
+    String smallJson;
+    String mediumJson;
+    String largeJson;
+    String invalidJson;
+    String xml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.start();
+
+        processor = "openapi4j".equals(validator)
+                ? new OpenApi4jValidator(SPEC).withStreamingBody(streamingBody)
+                : new SwaggerRequestValidator(SPEC);
+
+        smallJson = "{\"caller\":\"someone\"}";
+        mediumJson = items(64 * 1024);
+        largeJson = items(4 * 1024 * 1024);
+        invalidJson = "{\"not-caller\":\"someone\"}";
+        xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<greeting>\n\t<caller>someone</caller>\n</greeting>";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    /**
+     * Builds a JSON array of items of roughly the requested size in characters.
+     */
+    static String items(int approximateSize) {
+        StringBuilder sb = new StringBuilder(approximateSize + 128).append('[');
+        for (int i = 0; sb.length() < approximateSize; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item-").append(i)
+                    .append("\",\"price\":").append(i % 100).append(".5")
+                    .append(",\"tags\":[\"alpha\",\"beta\",\"gamma\"]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Exchanges are mutated by validation (the exception is set on failure), so each
+     * benchmark thread works on its own copies.
+     */
+    @State(Scope.Thread)
+    public static class Exchanges {
+        Exchange getValid;
+        Exchange getMissingHeader;
+        Exchange smallJson;
+        Exchange mediumJson;
+        Exchange largeJson;
+        Exchange largeJsonStream;
+        Exchange invalidJson;
+        Exchange xml;
+
+        @Setup(Level.Trial)
+        public void setUp(ValidatorBenchmark benchmark) {
+            CamelContext context = benchmark.context;
+
+            getValid = get(context, "/hello", "bar-query=some");
+            getValid.getMessage().setHeader("foo-header", "some");
+            getMissingHeader = get(context, "/hello", "bar-query=some");
+
+            smallJson = post(context, "/greeting", "application/json", benchmark.smallJson);
+            mediumJson = post(context, "/items", "application/json", benchmark.mediumJson);
+            largeJson = post(context, "/items", "application/json", benchmark.largeJson);
+            // as received from the HTTP consumer, the validators reset the cache after reading it
+            largeJsonStream = post(context, "/items", "application/json", benchmark.largeJson);
+            largeJsonStream.getMessage().setBody(new InputStreamCache(benchmark.largeJson.getBytes(StandardCharsets.UTF_8)));
+            invalidJson = post(context, "/greeting", "application/json", benchmark.invalidJson);
+            xml = post(context, "/greeting", "application/xml", benchmark.xml);
+
+            // make sure every scenario exercises the path it is named after
+            expect(benchmark, getValid, true);
+            expect(benchmark, getMissingHeader, false);
+            expect(benchmark, smallJson, true);
+            expect(benchmark, mediumJson, true);
+            expect(benchmark, largeJson, true);
+            expect(benchmark, largeJsonStream, true);
+            expect(benchmark, invalidJson, false);
+            expect(benchmark, xml, true);
+        }
+
+        private static void expect(ValidatorBenchmark benchmark, Exchange exchange, boolean valid) {
+            Exception result = benchmark.validate(exchange);
+            if ((result == null) != valid) {
+                throw new IllegalStateException("Unexpected validation outcome for "
+                        + exchange.getMessage().getHeader(Exchange.HTTP_URI) + ": " + result);
+            }
+        }
+    }
+
+    static Exchange get(CamelContext context, String path, String query) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getMessage().setHeader(Exchange.HTTP_METHOD, "GET");
+        exchange.getMessage().setHeader(Exchange.HTTP_URI, path);
+        exchange.getMessage().setHeader(Exchange.HTTP_QUERY, query);
+        exchange.getMessage().setHeader("Accept", "*/*");
+        exchange.getMessage().setHeader("User-Agent", "jmh");
+        return exchange;
+    }
+
+    static Exchange post(CamelContext context, String path, String contentType, String body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getMessage().setHeader(Exchange.HTTP_METHOD, "POST");
+        exchange.getMessage().setHeader(Exchange.HTTP_URI, path);
+        exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, contentType);
+        exchange.getMessage().setHeader("Accept", "*/*");
+        exchange.getMessage().setHeader("User-Agent", "jmh");
+        exchange.getMessage().setBody(body);
+        return exchange;
+    }
+
+    private Exception validate(Exchange exchange) {
+        exchange.setException(null);
+        processor.process(exchange, DONE);
+        return exchange.getException();
+    }
+
+    @Benchmark
+    public Exception getWithHeaderAndQuery(Exchanges exchanges) {
+        return validate(exchanges.getValid);
+    }
+
+    @Benchmark
+    public Exception getMissingHeader(Exchanges exchanges) {
+        return validate(exchanges.getMissingHeader);
+    }
+
+    @Benchmark
+    public Exception jsonSmall(Exchanges exchanges) {
+        return validate(exchanges.smallJson);
+    }
+
+    @Benchmark
+    public Exception jsonMedium(Exchanges exchanges) {
+        return validate(exchanges.mediumJson);
+    }
+
+    @Benchmark
+    public Exception jsonLarge(Exchanges exchanges) {
+        return validate(exchanges.largeJson);
+    }
+
+    @Benchmark
+    public Exception jsonLargeStream(Exchanges exchanges) {
+        return validate(exchanges.largeJsonStream);
+    }
+
+    @Benchmark
+    public Exception jsonInvalid(Exchanges exchanges) {
+        return validate(exchanges.invalidJson);
+    }
+
+    @Benchmark
+    public Exception xml(Exchanges exchanges) {
+        return validate(exchanges.xml);
+    }
+}
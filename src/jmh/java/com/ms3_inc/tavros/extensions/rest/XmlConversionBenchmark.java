@@ -0,0 +1,96 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.openapi4j.parser.model.v3.Schema;
+import org.openapi4j.parser.model.v3.Xml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the conversion of XML bodies by {@link XmlStreamConverter} with the former
+ * {@code XmlMapper.readTree} on a String, for documents of growing size.
+ * <p>
+ * Both read the bytes as received, so the String decoding of the former path is measured too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class XmlConversionBenchmark {
+    private static final XmlMapper XML_MAPPER = new XmlMapper();
+
+    @Param({"1024", "65536", "4194304"})
+    public int size;
+
+    private final XmlStreamConverter converter = new XmlStreamConverter(null);
+    private Schema schema;
+    private byte[] document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        schema = new Schema()
+                .setType("object")
+                .setXml(new Xml().setName("items"))
+                .setProperty("item", new Schema().setType("array")
+                        .setItemsSchema(new Schema().setType("object")
+                                .setProperty("id", new Schema().setType("integer").setXml(new Xml().setAttribute(true)))
+                                .setProperty("name", new Schema().setType("string"))
+                                .setProperty("price", new Schema().setType("number"))
+                                .setProperty("tags", new Schema().setType("array")
+                                        .setItemsSchema(new Schema().setType("string").setXml(new Xml().setName("tag")))
+                                        .setXml(new Xml().setWrapped(true)))));
+
+        StringBuilder sb = new StringBuilder(size + 128).append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><items>");
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("<item id=\"").append(i).append("\">")
+                    .append("<name>item-").append(i).append("</name>")
+                    .append("<price>").append(i % 100).append(".5</price>")
+                    .append("<tags><tag>alpha</tag><tag>beta</tag><tag>gamma</tag></tags>")
+                    .append("</item>");
+        }
+        document = sb.append("</items>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JsonNode xmlMapper() throws Exception {
+        return XML_MAPPER.readTree(new String(document, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public JsonNode streamConverter() throws Exception {
+        return converter.convert(new ByteArrayInputStream(document), schema);
+    }
+}
@@ -0,0 +1,131 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openapi4j.operation.validator.model.Request;
+import org.openapi4j.operation.validator.util.PathResolver;
+import org.openapi4j.parser.model.v3.Info;
+import org.openapi4j.parser.model.v3.OpenApi3;
+import org.openapi4j.parser.model.v3.Operation;
+import org.openapi4j.parser.model.v3.Path;
+import org.openapi4j.parser.model.v3.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the resolution of the operation of a request through {@link OperationIndex} with the
+ * pattern scan done by {@link RequestValidator}, for specifications of growing size.
+ * <p>
+ * The request paths are spread over the whole specification, so the scan pays on average
+ * for half of the patterns while the index cost should not depend on the number of paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OperationLookupBenchmark {
+    private static final int REQUEST_PATHS = 64;
+
+    @Param({"10", "100", "500", "1000"})
+    public int paths;
+
+    private OperationIndex index;
+    private Map<Pattern, Path> patterns;
+    private String[] requestPaths;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OpenApi3 api = new OpenApi3()
+                .setOpenapi("3.0.3")
+                .setInfo(new Info().setTitle("lookup").setVersion("1.0"))
+                .setServers(Collections.singletonList(new Server().setUrl("http://localhost:8080/api")));
+
+        // a mix of collections, items and sub resources as found in real specifications
+        for (int i = 0; i < paths; i++) {
+            String template;
+            switch (i % 3) {
+                case 0:
+                    template = "/resource" + i;
+                    break;
+                case 1:
+                    template = "/resource" + i + "/{id}";
+                    break;
+                default:
+                    template = "/resource" + i + "/{id}/children/{childId}";
+            }
+            api.setPath(template, new Path().setOperation("get", new Operation().setOperationId("op" + i)));
+        }
+
+        index = new OperationIndex(api, (path, operation) -> null);
+
+        // same structure as the one scanned by RequestValidator
+        patterns = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> entry : api.getPaths().entrySet()) {
+            for (Pattern pattern : PathResolver.instance().buildPathPatterns(api.getContext(), api.getServers(), entry.getKey())) {
+                patterns.put(pattern, entry.getValue());
+            }
+        }
+
+        requestPaths = new String[REQUEST_PATHS];
+        for (int i = 0; i < REQUEST_PATHS; i++) {
+            int path = (int) ((long) i * paths / REQUEST_PATHS);
+            switch (path % 3) {
+                case 0:
+                    requestPaths[i] = "/api/resource" + path;
+                    break;
+                case 1:
+                    requestPaths[i] = "/api/resource" + path + "/42";
+                    break;
+                default:
+                    requestPaths[i] = "/api/resource" + path + "/42/children/7";
+            }
+        }
+    }
+
+    private String nextPath() {
+        next = (next + 1) & (REQUEST_PATHS - 1);
+        return requestPaths[next];
+    }
+
+    @Benchmark
+    public Object index() {
+        return index.find(Request.Method.GET, nextPath());
+    }
+
+    @Benchmark
+    public Object patternScan() {
+        return patterns.get(PathResolver.instance().findPathPattern(patterns.keySet(), nextPath()));
+    }
+}
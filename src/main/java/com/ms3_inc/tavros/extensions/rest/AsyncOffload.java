@@ -0,0 +1,124 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Moves the validation of heavy requests off the calling thread, which is an I/O thread with
+ * asynchronous HTTP consumers such as netty-http.
+ * <p>
+ * A request is heavy when its body is at least as large as the threshold of the validator,
+ * or when its operation has the {@value #HEAVY_EXTENSION} extension set to {@code true}.
+ */
+final class AsyncOffload {
+    /**
+     * The extension marking an operation as heavy, so its requests are always validated asynchronously.
+     */
+    static final String HEAVY_EXTENSION = "x-camelx-heavy-validation";
+    /**
+     * The default size, in bytes, from which bodies are validated asynchronously.
+     */
+    static final long DEFAULT_BODY_THRESHOLD = 64 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncOffload.class);
+
+    private AsyncOffload() {
+    }
+
+    /**
+     * Runs the validation on the executor, completing the exchange asynchronously.
+     *
+     * @param executor   the executor
+     * @param exchange   the exchange of the request
+     * @param callback   the callback of the exchange, called once validated
+     * @param validation the validation, which reports failures on the exchange
+     * @return {@code true} if the validation was offloaded, {@code false} if the executor rejected it
+     * and it has to run on the calling thread
+     */
+    static boolean offload(Executor executor, Exchange exchange, AsyncCallback callback, Consumer<Exchange> validation) {
+        try {
+            executor.execute(() -> {
+                try {
+                    validation.accept(exchange);
+                } catch (RuntimeException e) {
+                    exchange.setException(e);
+                } finally {
+                    callback.done(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Validating on the calling thread, the executor rejected the validation");
+            return false;
+        }
+    }
+
+    /**
+     * @param exchange  the exchange of the request
+     * @param threshold the size from which bodies are heavy
+     * @return whether the body of the request is heavy, bodies of unknown size aren't
+     */
+    static boolean isHeavyBody(Exchange exchange, long threshold) {
+        return bodyLength(exchange.getMessage()) >= threshold;
+    }
+
+    /**
+     * @param extensions the extensions of an operation, or {@code null}
+     * @return whether the operation is marked as heavy
+     */
+    static boolean isHeavyOperation(Map<String, Object> extensions) {
+        if (extensions == null) return false;
+
+        Object heavy = extensions.get(HEAVY_EXTENSION);
+        return Boolean.TRUE.equals(heavy) || "true".equals(heavy);
+    }
+
+    /**
+     * @return the size of the body, without reading it, or -1 if it's unknown
+     */
+    static long bodyLength(Message message) {
+        final Object body = message.getBody();
+
+        if (body == null) return 0;
+        if (body instanceof String) return ((String) body).length();
+        if (body instanceof byte[]) return ((byte[]) body).length;
+        if (body instanceof ByteBuffer) return ((ByteBuffer) body).remaining();
+        if (body instanceof StreamCache) return ((StreamCache) body).length();
+
+        final Object contentLength = message.getHeader(Exchange.CONTENT_LENGTH);
+        if (contentLength instanceof Number) return ((Number) contentLength).longValue();
+        if (contentLength instanceof String) {
+            try {
+                return Long.parseLong(((String) contentLength).trim());
+            } catch (NumberFormatException e) {
+                // the size is unknown
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,231 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import org.openapi4j.core.util.TreeUtil;
+import org.openapi4j.schema.validator.JsonValidator;
+import org.openapi4j.schema.validator.ValidationData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Validates many bodies at once against the request body of an operation or a schema of the components,
+ * e.g. the records of a bulk payload, instead of splitting them and validating each one as a request.
+ * <pre>
+ * BatchValidator batchValidator = new BatchValidator(validator);
+ *
+ * from("platform-http:/greetings/bulk")
+ *     .process(exchange -&gt; {
+ *         OperationResult result = batchValidator.validateSchema("Greeting", exchange.getMessage().getBody(String.class));
+ *         exchange.setProperty(OperationResult.EXCHANGE_OPERATION_RESULT, result);
+ *     })
+ * </pre>
+ * The schema is compiled once per version of the specification of the validator, and the items are validated in
+ * parallel on a {@link ForkJoinPool}. Items can be JSON text, {@link JsonNode}s, or any object Jackson can convert
+ * to a tree, such as the maps and lists of an unmarshalled body.
+ * <p>
+ * The outcome is a single {@link OperationResult}, with a message per invalid item in the order of the items,
+ * and no message when every item is valid. The code of each message is the index of its item.
+ */
+public class BatchValidator {
+    private static final String ITEM_ERROR_TYPE = "RequestValidationError";
+
+    private final OpenApi4jValidator validator;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * @param validator the validator whose specification the items are validated against,
+     *                  the batch validator follows it when it's {@link ReloadableValidator#reload() reloaded}
+     */
+    public BatchValidator(OpenApi4jValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Validates the items on the given pool, the common pool by default.
+     *
+     * @param pool the pool
+     * @return this batch validator
+     */
+    public BatchValidator withPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Validates items against the request body of an operation, for its JSON media type if it accepts several.
+     *
+     * @param operationId the operationId of the operation
+     * @param items       the items
+     * @return the messages of the invalid items
+     * @throws IllegalArgumentException if the operation doesn't exist or doesn't have a request body schema
+     */
+    public OperationResult validateOperation(String operationId, Collection<?> items) {
+        return validate(validator.requestBodyValidatorOf(operationId), new ArrayList<>(items));
+    }
+
+    /**
+     * Validates the items of a JSON array against the request body of an operation.
+     *
+     * @param operationId the operationId of the operation
+     * @param jsonArray   the items, as a JSON array
+     * @return the messages of the invalid items
+     * @throws IllegalArgumentException if the operation doesn't exist or doesn't have a request body schema,
+     *                                  or if the items aren't a JSON array
+     */
+    public OperationResult validateOperation(String operationId, String jsonArray) {
+        return validate(validator.requestBodyValidatorOf(operationId), itemsOf(jsonArray));
+    }
+
+    /**
+     * Validates items against a schema of the components.
+     *
+     * @param schemaName the name of the schema in {@code #/components/schemas}
+     * @param items      the items
+     * @return the messages of the invalid items
+     * @throws IllegalArgumentException if the schema doesn't exist
+     */
+    public OperationResult validateSchema(String schemaName, Collection<?> items) {
+        return validate(validator.componentSchemaValidatorOf(schemaName), new ArrayList<>(items));
+    }
+
+    /**
+     * Validates the items of a JSON array against a schema of the components.
+     *
+     * @param schemaName the name of the schema in {@code #/components/schemas}
+     * @param jsonArray  the items, as a JSON array
+     * @return the messages of the invalid items
+     * @throws IllegalArgumentException if the schema doesn't exist or if the items aren't a JSON array
+     */
+    public OperationResult validateSchema(String schemaName, String jsonArray) {
+        return validate(validator.componentSchemaValidatorOf(schemaName), itemsOf(jsonArray));
+    }
+
+    private static List<Object> itemsOf(String jsonArray) {
+        final JsonNode array;
+        try {
+            array = TreeUtil.json.readTree(jsonArray);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON array: " + e.getOriginalMessage(), e);
+        }
+        if (array == null || !array.isArray()) {
+            throw new IllegalArgumentException("Not a JSON array");
+        }
+
+        final List<Object> items = new ArrayList<>(array.size());
+        array.forEach(items::add);
+        return items;
+    }
+
+    private OperationResult validate(JsonValidator schema, List<?> items) {
+        final OperationResult.Message[] messages = new OperationResult.Message[items.size()];
+        if (!items.isEmpty()) {
+            // a few leaves per worker, so uneven items still keep every worker busy
+            final int leafSize = Math.max(1, items.size() / (pool.getParallelism() * 4));
+            pool.invoke(new ValidateRange(schema, items, messages, 0, items.size(), leafSize));
+        }
+
+        final List<OperationResult.Message> invalid = new ArrayList<>();
+        for (OperationResult.Message message : messages) {
+            if (message != null) {
+                invalid.add(message);
+            }
+        }
+        return new OperationResult(invalid);
+    }
+
+    /**
+     * @return the message of the item, or {@code null} if it's valid
+     */
+    private static OperationResult.Message validate(JsonValidator schema, Object item, int index) {
+        final JsonNode node;
+        try {
+            node = nodeOf(item);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return OperationResult.MessageBuilder.error(ITEM_ERROR_TYPE, "Item " + index + " is malformed.")
+                    .withCode(String.valueOf(index))
+                    .withDiagnostics(e.getMessage())
+                    .build();
+        }
+
+        final ValidationData<?> validation = new ValidationData<>();
+        // the outcome is in the validation data, the schema validator always returns true
+        schema.validate(node, validation);
+        if (validation.isValid()) {
+            return null;
+        }
+
+        final List<OperationResult.Diagnostic> errors = new ArrayList<>();
+        final String diagnostics = ValidationLimits.NONE.diagnosticsOf(validation.results(), errors);
+        return OperationResult.MessageBuilder.error(ITEM_ERROR_TYPE, "Item " + index + " failed API specification validation.")
+                .withCode(String.valueOf(index))
+                .withDiagnostics(diagnostics)
+                .withErrors(errors)
+                .build();
+    }
+
+    private static JsonNode nodeOf(Object item) throws JsonProcessingException {
+        // a null item is the JSON null, validated against the schema like any other value
+        if (item == null) return NullNode.getInstance();
+        if (item instanceof JsonNode) return (JsonNode) item;
+        if (item instanceof String) return TreeUtil.json.readTree((String) item);
+
+        return TreeUtil.json.valueToTree(item);
+    }
+
+    /**
+     * Validates a range of the items, splitting it in halves until it's small enough.
+     */
+    private static final class ValidateRange extends RecursiveAction {
+        private final JsonValidator schema;
+        private final List<?> items;
+        private final OperationResult.Message[] messages;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        private ValidateRange(JsonValidator schema, List<?> items, OperationResult.Message[] messages, int from, int to, int leafSize) {
+            this.schema = schema;
+            this.items = items;
+            this.messages = messages;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                for (int i = from; i < to; i++) {
+                    messages[i] = validate(schema, items.get(i), i);
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+            invokeAll(new ValidateRange(schema, items, messages, from, middle, leafSize),
+                    new ValidateRange(schema, items, messages, middle, to, leafSize));
+        }
+    }
+}
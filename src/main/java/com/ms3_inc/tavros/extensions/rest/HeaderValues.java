@@ -0,0 +1,85 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the headers a validator needs from the message of an exchange.
+ * <p>
+ * Camel headers are case-insensitive, so headers are found whatever the case used by the client
+ * or by the specification. Values that aren't Strings are converted with the type converter of the
+ * context, and collections and arrays become multiple values.
+ */
+final class HeaderValues {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeaderValues.class);
+
+    private HeaderValues() {
+    }
+
+    /**
+     * @param exchange the exchange of the request
+     * @param name     the header name
+     * @return the values of the header, or {@code null} if the message doesn't have it
+     */
+    static List<String> of(Exchange exchange, String name) {
+        final Object value = exchange.getMessage().getHeader(name);
+
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String) {
+            return Collections.singletonList((String) value);
+        }
+
+        final Iterable<?> items = value instanceof Iterable ? (Iterable<?>) value
+                : value instanceof Object[] ? Arrays.asList((Object[]) value)
+                : null;
+        if (items == null) {
+            String converted = convert(exchange, name, value);
+            return converted != null ? Collections.singletonList(converted) : null;
+        }
+
+        final List<String> values = new ArrayList<>(2);
+        for (Object item : items) {
+            String converted = item != null ? convert(exchange, name, item) : null;
+            if (converted != null) {
+                values.add(converted);
+            }
+        }
+        return values.isEmpty() ? null : values;
+    }
+
+    private static String convert(Exchange exchange, String name, Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+
+        String converted = exchange.getContext().getTypeConverter().tryConvertTo(String.class, exchange, value);
+        if (converted == null) {
+            LOGGER.debug("Ignoring header '{}', its {} value can't be converted to a String", name, value.getClass().getName());
+        }
+        return converted;
+    }
+}
@@ -38,6 +38,7 @@ import org.springframework.util.MimeType;
 import org.springframework.util.ObjectUtils;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -47,6 +48,7 @@ import java.util.Map;
  * This file is a derived work of org.springframework.util.MimeType
  * Spring Framework v5.3.0-M1. Modifications made to the original work include:
  * <li>Utility `includes` and `isCompatibleWith` methods that account for parameters</li>
+ * <li>A {@link CompactMediaType} parsed in place, and allocation-free `includes` and `isCompatibleWith` methods for it</li>
  * </p>
  *
  * @author Arjen Poutsma (2002-2020)
@@ -202,4 +204,413 @@ public class MediaTypeUtils {
 
         return true;
     }
+
+    /**
+     * Indicate whether this media type includes the given media type, like
+     * {@link #includes(MimeType, MimeType)}, without allocating.
+     * @param other the reference media type with which to compare
+     * @return {@code true} if this media type includes the given media type;
+     * {@code false} otherwise
+     */
+    public static boolean includes(@NonNull CompactMediaType one, @Nullable CompactMediaType other) {
+        if (other == null) {
+            return false;
+        }
+        if (one.isWildcardType()) {
+            // */* includes anything
+            return true;
+        }
+        else if (one.typeEquals(other)) {
+            if (one.subtypeEquals(other)) {
+                return parametersInclude(one, other);
+            }
+            if (one.isWildcardSubtype()) {
+                // Wildcard with suffix, e.g. application/*+xml
+                if (one.plusIdx == -1) {
+                    return true;
+                }
+                // application/*+xml includes application/soap+xml
+                return other.plusIdx != -1 && one.suffixEquals(other) && one.isWildcardPrefix();
+            }
+        }
+        return false;
+    }
+
+    private static boolean parametersInclude(CompactMediaType one, CompactMediaType other) {
+        if (one.getParameterCount() > other.getParameterCount()) {
+            return false;
+        }
+
+        for (int i = 0; i < one.getParameterCount(); i++) {
+            int j = other.indexOfParameter(one, i);
+            if (j == -1) {
+                return false;
+            }
+            if (one.isCharsetParameter(i)) {
+                if (!one.charsetEquals(i, other, j))
+                    return false;
+            }
+            else if (!one.valueEquals(i, other, j)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Indicate whether this media type is compatible with the given media type, like
+     * {@link #isCompatibleWith(MimeType, MimeType)}, without allocating.
+     * @param other the reference media type with which to compare
+     * @return {@code true} if this media type is compatible with the given media type;
+     * {@code false} otherwise
+     */
+    public static boolean isCompatibleWith(@NonNull CompactMediaType one, @Nullable CompactMediaType other) {
+        if (other == null) {
+            return false;
+        }
+        if (one.isWildcardType() || other.isWildcardType()) {
+            return true;
+        }
+        else if (one.typeEquals(other)) {
+            if (one.subtypeEquals(other)) {
+                return parametersAreCompatibleWith(one, other);
+            }
+            // Wildcard with suffix? e.g. application/*+xml
+            if (one.isWildcardSubtype() || other.isWildcardSubtype()) {
+                if (one.plusIdx == -1 && other.plusIdx == -1) {
+                    return true;
+                }
+                else if (one.plusIdx != -1 && other.plusIdx != -1) {
+                    return one.suffixEquals(other) && (one.isWildcardPrefix() || other.isWildcardPrefix());
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean parametersAreCompatibleWith(CompactMediaType one, CompactMediaType other) {
+        for (int i = 0; i < one.getParameterCount(); i++) {
+            int j = other.indexOfParameter(one, i);
+            if (one.isCharsetParameter(i)) {
+                if (j != -1 && !one.charsetEquals(i, other, j))
+                    return false;
+            }
+            else if (j != -1 && !one.valueEquals(i, other, j))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * A media type parsed in place: it keeps the header it was parsed from and the bounds of its type, subtype and
+     * parameters, instead of copying them into Strings and a map like {@link MimeType}. Types, subtypes and parameter
+     * names compare case-insensitively, parameter values case-sensitively, charsets aside.
+     * <p>
+     * The common media types are interned, parsing them returns the shared constant.
+     */
+    public static final class CompactMediaType {
+        // before the constants, which use it
+        private static final int[] NO_PARAMETERS = new int[0];
+
+        public static final CompactMediaType ALL = new CompactMediaType("*/*");
+        public static final CompactMediaType APPLICATION_JSON = new CompactMediaType("application/json");
+        public static final CompactMediaType APPLICATION_XML = new CompactMediaType("application/xml");
+        public static final CompactMediaType APPLICATION_ANY_JSON = new CompactMediaType("application/*+json");
+        public static final CompactMediaType APPLICATION_ANY_XML = new CompactMediaType("application/*+xml");
+        public static final CompactMediaType TEXT_PLAIN = new CompactMediaType("text/plain");
+
+        private static final CompactMediaType[] INTERNED = {
+                APPLICATION_JSON, APPLICATION_XML, ALL, APPLICATION_ANY_JSON, APPLICATION_ANY_XML, TEXT_PLAIN
+        };
+        private static final boolean[] TOKEN_CHARS = new boolean[128];
+
+        static {
+            for (char c = 33; c < 127; c++) {
+                TOKEN_CHARS[c] = "()<>@,;:\\\"/[]?={}".indexOf(c) == -1;
+            }
+        }
+
+        private final CharSequence value;
+        private final int typeStart;
+        private final int typeEnd;
+        private final int subtypeStart;
+        private final int subtypeEnd;
+        private final int plusIdx;
+        // name start, name end, value start and value end of each parameter, values compared with their quotes like MimeType
+        private final int[] parameters;
+
+        private CompactMediaType(String value) {
+            this(value, 0, value.indexOf('/'), value.indexOf('/') + 1, value.length(), NO_PARAMETERS);
+        }
+
+        private CompactMediaType(CharSequence value, int typeStart, int typeEnd, int subtypeStart, int subtypeEnd, int[] parameters) {
+            this.value = value;
+            this.typeStart = typeStart;
+            this.typeEnd = typeEnd;
+            this.subtypeStart = subtypeStart;
+            this.subtypeEnd = subtypeEnd;
+            this.parameters = parameters;
+
+            int plus = -1;
+            for (int i = subtypeEnd - 1; i >= subtypeStart && plus == -1; i--) {
+                if (value.charAt(i) == '+') plus = i;
+            }
+            this.plusIdx = plus;
+        }
+
+        /**
+         * Parses a media type, e.g. a {@code Content-Type} header, without copying it. The header must not change
+         * while the media type is in use.
+         * @param value the media type, {@code *} standing for {@code *}{@code /*}
+         * @return the media type, or {@code null} if it can't be parsed
+         */
+        @Nullable
+        public static CompactMediaType parse(@Nullable CharSequence value) {
+            if (value == null) {
+                return null;
+            }
+
+            int start = 0;
+            int end = value.length();
+            while (start < end && isWhitespace(value.charAt(start))) start++;
+            while (end > start && isWhitespace(value.charAt(end - 1))) end--;
+
+            for (CompactMediaType interned : INTERNED) {
+                if (regionMatches(value, start, end, interned.value, 0, interned.value.length())) {
+                    return interned;
+                }
+            }
+
+            int paramsIdx = start;
+            while (paramsIdx < end && value.charAt(paramsIdx) != ';') paramsIdx++;
+            int typeEnd = paramsIdx;
+            while (typeEnd > start && isWhitespace(value.charAt(typeEnd - 1))) typeEnd--;
+
+            int slashIdx = start;
+            while (slashIdx < typeEnd && value.charAt(slashIdx) != '/') slashIdx++;
+
+            final int subtypeStart;
+            final int subtypeEnd;
+            if (slashIdx == typeEnd) {
+                // "*" is short for */*
+                if (typeEnd - start != 1 || value.charAt(start) != '*') {
+                    return null;
+                }
+                subtypeStart = start;
+                subtypeEnd = typeEnd;
+            }
+            else {
+                subtypeStart = slashIdx + 1;
+                subtypeEnd = typeEnd;
+                typeEnd = slashIdx;
+            }
+
+            if (!isToken(value, start, typeEnd) || !isToken(value, subtypeStart, subtypeEnd)) {
+                return null;
+            }
+            if (typeEnd - start == 1 && value.charAt(start) == '*'
+                    && (subtypeEnd - subtypeStart != 1 || value.charAt(subtypeStart) != '*')) {
+                // wildcard type is legal only in */*
+                return null;
+            }
+
+            final int[] parameters = paramsIdx < end ? parseParameters(value, paramsIdx + 1, end) : NO_PARAMETERS;
+            return parameters != null ? new CompactMediaType(value, start, typeEnd, subtypeStart, subtypeEnd, parameters) : null;
+        }
+
+        private static int[] parseParameters(CharSequence value, int start, int end) {
+            int[] parameters = NO_PARAMETERS;
+            int count = 0;
+
+            int paramStart = start;
+            while (paramStart < end) {
+                // the end of the parameter, skipping the semicolons within quotes
+                int paramEnd = paramStart;
+                boolean quoted = false;
+                while (paramEnd < end && (quoted || value.charAt(paramEnd) != ';')) {
+                    char c = value.charAt(paramEnd);
+                    if (c == '"') quoted = !quoted;
+                    else if (c == '\\' && quoted && paramEnd + 1 < end) paramEnd++;
+                    paramEnd++;
+                }
+
+                int eqIdx = paramStart;
+                while (eqIdx < paramEnd && value.charAt(eqIdx) != '=') eqIdx++;
+                if (eqIdx < paramEnd) {
+                    int nameStart = paramStart;
+                    int nameEnd = eqIdx;
+                    int valueStart = eqIdx + 1;
+                    int valueEnd = paramEnd;
+                    while (nameStart < nameEnd && isWhitespace(value.charAt(nameStart))) nameStart++;
+                    while (nameEnd > nameStart && isWhitespace(value.charAt(nameEnd - 1))) nameEnd--;
+                    while (valueStart < valueEnd && isWhitespace(value.charAt(valueStart))) valueStart++;
+                    while (valueEnd > valueStart && isWhitespace(value.charAt(valueEnd - 1))) valueEnd--;
+                    if (!isQuoted(value, valueStart, valueEnd) && !isToken(value, valueStart, valueEnd)) {
+                        return null;
+                    }
+                    if (!isToken(value, nameStart, nameEnd)) {
+                        return null;
+                    }
+
+                    if (parameters.length == count * 4) {
+                        parameters = Arrays.copyOf(parameters, Math.max(8, count * 8));
+                    }
+                    parameters[count * 4] = nameStart;
+                    parameters[count * 4 + 1] = nameEnd;
+                    parameters[count * 4 + 2] = valueStart;
+                    parameters[count * 4 + 3] = valueEnd;
+                    count++;
+                }
+                paramStart = paramEnd + 1;
+            }
+
+            return parameters.length == count * 4 ? parameters : Arrays.copyOf(parameters, count * 4);
+        }
+
+        public boolean isWildcardType() {
+            return typeEnd - typeStart == 1 && value.charAt(typeStart) == '*';
+        }
+
+        /**
+         * @return whether the subtype is {@code *} or a suffix wildcard like {@code *+xml}
+         */
+        public boolean isWildcardSubtype() {
+            return value.charAt(subtypeStart) == '*' && (subtypeEnd - subtypeStart == 1 || value.charAt(subtypeStart + 1) == '+');
+        }
+
+        public int getParameterCount() {
+            return parameters.length / 4;
+        }
+
+        /**
+         * @param name the name of the parameter, in any case
+         * @return the unquoted value of the parameter, or {@code null} if the media type doesn't have it
+         */
+        @Nullable
+        public String getParameter(String name) {
+            for (int i = 0; i < parameters.length; i += 4) {
+                if (regionMatches(value, parameters[i], parameters[i + 1], name, 0, name.length())) {
+                    int start = parameters[i + 2];
+                    int end = parameters[i + 3];
+                    return isQuoted(value, start, end)
+                            ? value.subSequence(start + 1, end - 1).toString()
+                            : value.subSequence(start, end).toString();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the charset parameter, or {@code null} if the media type doesn't have it or it isn't supported
+         */
+        @Nullable
+        public Charset getCharset() {
+            String charset = getParameter(PARAM_CHARSET);
+            try {
+                return charset != null ? Charset.forName(charset) : null;
+            }
+            catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private boolean typeEquals(CompactMediaType other) {
+            return regionMatches(value, typeStart, typeEnd, other.value, other.typeStart, other.typeEnd);
+        }
+
+        private boolean subtypeEquals(CompactMediaType other) {
+            return regionMatches(value, subtypeStart, subtypeEnd, other.value, other.subtypeStart, other.subtypeEnd);
+        }
+
+        private boolean suffixEquals(CompactMediaType other) {
+            return regionMatches(value, plusIdx + 1, subtypeEnd, other.value, other.plusIdx + 1, other.subtypeEnd);
+        }
+
+        private boolean isWildcardPrefix() {
+            return plusIdx == subtypeStart + 1 && value.charAt(subtypeStart) == '*';
+        }
+
+        /**
+         * @return the index of the parameter named like the parameter {@code i} of the given media type, or -1
+         */
+        private int indexOfParameter(CompactMediaType other, int i) {
+            for (int j = 0; j < parameters.length; j += 4) {
+                if (regionMatches(value, parameters[j], parameters[j + 1], other.value, other.parameters[i * 4], other.parameters[i * 4 + 1])) {
+                    return j / 4;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isCharsetParameter(int i) {
+            return regionMatches(value, parameters[i * 4], parameters[i * 4 + 1], PARAM_CHARSET, 0, PARAM_CHARSET.length());
+        }
+
+        private boolean valueEquals(int i, CompactMediaType other, int j) {
+            final int start = parameters[i * 4 + 2];
+            final int length = parameters[i * 4 + 3] - start;
+            final int otherStart = other.parameters[j * 4 + 2];
+            if (length != other.parameters[j * 4 + 3] - otherStart) {
+                return false;
+            }
+            for (int k = 0; k < length; k++) {
+                if (value.charAt(start + k) != other.value.charAt(otherStart + k)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean charsetEquals(int i, CompactMediaType other, int j) {
+            if (regionMatches(value, parameters[i * 4 + 2], parameters[i * 4 + 3],
+                    other.value, other.parameters[j * 4 + 2], other.parameters[j * 4 + 3])) {
+                return true;
+            }
+            // aliases, e.g. utf8 and UTF-8, only looked up when the names differ
+            Charset charset = getCharset();
+            return charset != null && charset.equals(other.getCharset());
+        }
+
+        private static boolean regionMatches(CharSequence one, int start, int end, CharSequence other, int otherStart, int otherEnd) {
+            if (end - start != otherEnd - otherStart) {
+                return false;
+            }
+            for (int i = start, j = otherStart; i < end; i++, j++) {
+                char c1 = one.charAt(i);
+                char c2 = other.charAt(j);
+                if (c1 != c2 && Character.toLowerCase(c1) != Character.toLowerCase(c2)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isToken(CharSequence value, int start, int end) {
+            if (start >= end) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                char c = value.charAt(i);
+                if (c >= 128 || !TOKEN_CHARS[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isQuoted(CharSequence value, int start, int end) {
+            return end - start >= 2 && value.charAt(start) == '"' && value.charAt(end - 1) == '"';
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t';
+        }
+
+        @Override
+        public String toString() {
+            return value.toString();
+        }
+    }
 }
@@ -17,30 +17,66 @@ package com.ms3_inc.tavros.extensions.rest;
  */
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import com.ms3_inc.tavros.extensions.rest.exception.PayloadTooLargeException;
 import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
 import org.apache.camel.support.AsyncProcessorSupport;
 import org.apache.camel.support.MessageHelper;
+import org.openapi4j.core.exception.DecodeException;
 import org.openapi4j.core.exception.ResolutionException;
+import org.openapi4j.core.model.v3.OAI3;
+import org.openapi4j.core.util.TreeUtil;
 import org.openapi4j.core.validation.ValidationException;
 import org.openapi4j.core.validation.ValidationResults;
 import org.openapi4j.operation.validator.model.Request;
 import org.openapi4j.operation.validator.model.impl.Body;
 import org.openapi4j.operation.validator.model.impl.DefaultRequest;
-import org.openapi4j.operation.validator.validation.RequestValidator;
+import org.openapi4j.operation.validator.model.impl.DefaultResponse;
+import org.openapi4j.operation.validator.model.impl.RequestParameters;
+import org.openapi4j.operation.validator.validation.OperationIndex;
 import org.openapi4j.operation.validator.validation.RequestValidatorExtension;
 import org.openapi4j.parser.OpenApi3Parser;
+import org.openapi4j.parser.model.v3.MediaType;
 import org.openapi4j.parser.model.v3.OpenApi3;
+import org.openapi4j.parser.model.v3.Operation;
+import org.openapi4j.parser.model.v3.Parameter;
+import org.openapi4j.parser.model.v3.Path;
+import org.openapi4j.parser.model.v3.RequestBody;
+import org.openapi4j.parser.model.v3.Schema;
+import org.openapi4j.parser.model.v3.SecurityRequirement;
+import org.openapi4j.parser.model.v3.SecurityScheme;
 import org.openapi4j.parser.model.v3.Server;
+import org.openapi4j.schema.validator.JsonValidator;
+import org.openapi4j.schema.validator.ValidationContext;
+import org.openapi4j.schema.validator.v3.SchemaValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
 
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
 
 /**
  * This {@code OpenApi4jValidator} class uses the openapi4j library for validation.
@@ -49,18 +85,65 @@ import java.util.Map;
  * This class provides two constructors for creating the validator,
  * one that sets the base path used in the route,
  * and one without a base path.
+ * <p>
+ * With streaming body mode, stream bodies are parsed straight from the stream instead of
+ * being copied into a String first. See {@link #withStreamingBody(boolean)}.
+ * JSON bodies set as objects or bytes aren't serialized to a String either, see {@link #withObjectMapper(ObjectMapper)}.
+ * <p>
+ * Only the headers the specification refers to for the matched operation are copied to the request:
+ * {@code Content-Type}, the header parameters and the headers of its security schemes.
+ * <p>
+ * Outcomes of repeated requests can be cached, see {@link #withResultCache(ValidationResultCache)}.
+ * Heavy requests can be validated off the calling thread, see {@link #withExecutor(Executor)},
+ * and validations can be measured, see {@link #withMetrics(ValidationMetrics)}.
+ * Routes validating against the same specification can share it through a {@link SpecRegistry}.
+ * The specification can be reloaded without stopping the route, see {@link #reload()} and {@link SpecReloader}.
+ * Responses can be validated against the same specification by a {@link ResponseValidator}.
+ * Before enforcing it, the validator can run in {@link #withShadowMode(ShadowMode) shadow mode}.
+ * Invalid requests can be validated and reported within {@link #withLimits(ValidationLimits) limits},
+ * and oversized bodies are rejected before being read, see {@link #withPayloadLimits(PayloadLimits)}.
+ * The parameters of valid requests, converted to their types, and their parsed body can be handed over to
+ * downstream processors, see {@link #withValidatedRequest(boolean)}.
  */
-public class OpenApi4jValidator extends AsyncProcessorSupport {
+public class OpenApi4jValidator extends AsyncProcessorSupport implements ReloadableValidator {
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenApi4jValidator.class);
-    private static final XmlMapper XML_MAPPER = new XmlMapper();
-    private final RequestValidator openapi4jValidator;
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String AUTHORIZATION = "Authorization";
+    // longer bodies aren't worth keeping in a fingerprint
+    private static final int MAX_FINGERPRINT_BODY_LENGTH = 8192;
+    // error codes of the failures openapi4j doesn't report with a code
+    private static final String OPERATION_ERROR_CODE = "operation";
+    private static final String MALFORMED_ERROR_CODE = "malformed";
+    private static final String CACHED_ERROR_CODE = "cached";
+    private static final String PAYLOAD_ERROR_CODE = "payload";
+    private static final String URI_PATH_CHARS = "-_.!~*'(),;:$&+=/@";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    // swapped on reload, shared with the validators of the same registry entry
+    private final AtomicReference<CompiledSpec> spec;
+    private final String specLocation;
+    private final String basePath;
     private final static boolean mediaTypeParamSupport = Boolean.parseBoolean(
             System.getProperty("camelx.rest.ff.mediaparams",
             System.getenv().getOrDefault("CAMELX_REST_FF_MEDIAPARAMS", "false")));
+    private final static boolean streamingBodyDefault = Boolean.parseBoolean(
+            System.getProperty("camelx.rest.ff.streaming",
+            System.getenv().getOrDefault("CAMELX_REST_FF_STREAMING", "false")));
+    private boolean streamingBody = streamingBodyDefault;
+    private ValidationResultCache resultCache;
+    private Executor executor;
+    private long asyncBodyThreshold = AsyncOffload.DEFAULT_BODY_THRESHOLD;
+    private ValidationMetrics metrics;
+    private ShadowMode shadowMode;
+    private ValidationLimits limits = ValidationLimits.NONE;
+    private PayloadLimits payloadLimits = PayloadLimits.NONE;
+    private boolean validatedRequest;
+    private boolean parsedBody;
+    private ObjectMapper objectMapper = TreeUtil.json;
+    private SpecRegistry.Entry registryEntry;
 
     /**
      * Constructs the validator using an {@link OpenApi3} instance. The {@link OpenApi3Parser} parses the provided specification,
-     * and creates a {@link RequestValidator} instance based on the {@code OpenApi3} instance.
+     * and creates a {@link RequestValidatorExtension} instance based on the {@code OpenApi3} instance.
      *
      * @param specPath location of specification in resources
      * @throws IllegalArgumentException if the url or file can’t be read or if there is an error with the spec
@@ -71,54 +154,518 @@ public class OpenApi4jValidator extends AsyncProcessorSupport {
 
     /**
      * Constructs the validator with a base path using an {@link OpenApi3} instance. The {@link OpenApi3Parser} parses the provided specification.
-     * The base path is added to the object and a {@link RequestValidator} instance is created based on the {@code OpenApi3} instance.
+     * The base path is added to the object and a {@link RequestValidatorExtension} instance is created based on the {@code OpenApi3} instance.
+     * The operation of each request is resolved through the operation index of the {@code RequestValidatorExtension},
+     * which accounts for the base path.
      *
-     * @param specPath location of specification in resources
+     * @param specPath location of specification in resources, or its URL, see {@link SpecSnapshot#urlOf(String)}.
+     *                 Locations ending with {@value SpecSnapshot#FILE_EXTENSION} are loaded as a {@link SpecSnapshot}.
      * @param basePath context path of api
      * @throws IllegalArgumentException if the url or file can’t be read or if there is an error with the spec
      */
     public OpenApi4jValidator(String specPath, String basePath) {
-        OpenApi3 api;
+        this(parse(specPath), specPath, basePath);
+    }
+
+    /**
+     * Constructs the validator from a specification compiled ahead of time.
+     *
+     * @param snapshot the compiled specification
+     * @param basePath context path of api, or {@code null} to use the servers of the specification
+     * @throws IllegalArgumentException if there is an error with the spec
+     */
+    public OpenApi4jValidator(SpecSnapshot snapshot, String basePath) {
+        this(parse(snapshot), snapshot.getLocation().toString(), basePath);
+    }
+
+    private OpenApi4jValidator(OpenApi3 api, String specLocation, String basePath) {
+        this.spec = new AtomicReference<>(new CompiledSpec(api, basePath, null));
+        this.specLocation = specLocation;
+        this.basePath = basePath;
+    }
+
+    /**
+     * Constructs a validator sharing the specification compiled by another one, see {@link SpecRegistry}.
+     *
+     * @param compiled      the validator that compiled the specification
+     * @param registryEntry the entry of the specification in the registry
+     */
+    OpenApi4jValidator(OpenApi4jValidator compiled, SpecRegistry.Entry registryEntry) {
+        this.spec = compiled.spec;
+        this.specLocation = compiled.specLocation;
+        this.basePath = compiled.basePath;
+        this.registryEntry = registryEntry;
+    }
+
+    private static OpenApi3 parse(String specPath) {
         try {
-            api = new OpenApi3Parser().parse(new ClassPathResource(specPath).getFile(), false);
+            if (specPath.endsWith(SpecSnapshot.FILE_EXTENSION)) {
+                return SpecSnapshot.load(specPath).toOpenApi3();
+            }
+            // parsed from its URL rather than a file, so specifications within jars can be read
+            return new OpenApi3Parser().parse(SpecSnapshot.urlOf(specPath), false);
         } catch (ResolutionException | ValidationException | IOException caughtExc) {
             throw new IllegalArgumentException(caughtExc);
         }
+    }
+
+    private static OpenApi3 parse(SpecSnapshot snapshot) {
+        try {
+            return snapshot.toOpenApi3();
+        } catch (ResolutionException caughtExc) {
+            throw new IllegalArgumentException(caughtExc);
+        }
+    }
+
+    /**
+     * Enables or disables the streaming body mode, which defaults to the {@code camelx.rest.ff.streaming}
+     * system property or the {@code CAMELX_REST_FF_STREAMING} environment variable.
+     * <p>
+     * In streaming mode, {@link InputStream} and {@link StreamCache} bodies are parsed by Jackson straight
+     * from the stream rather than copied into a String and parsed again. Plain input streams are
+     * turned into a {@code StreamCache} beforehand, and the cache is reset after validation, so
+     * downstream processors can still read the body. JSON array bodies are also validated one item at a time,
+     * and the validation stops after a number of invalid items.
+     * Validators sharing the specification through a {@link SpecRegistry} keep their own mode.
+     *
+     * @param streamingBody whether stream bodies are parsed from the stream
+     * @return this validator
+     */
+    public OpenApi4jValidator withStreamingBody(boolean streamingBody) {
+        this.streamingBody = streamingBody;
+        return this;
+    }
+
+    /**
+     * Caches the outcome of requests, so identical requests aren't validated again.
+     * Requests match when they have the same method, path, query parameters regardless of their order, and values
+     * for the headers the operation refers to. Requests with a body are only cached if the cache
+     * {@link ValidationResultCache#withBodies(boolean) caches bodies}, and their body is part of the match.
+     * Requests for unknown operations aren't cached.
+     *
+     * @param resultCache the cache, or {@code null} to validate every request, the default
+     * @return this validator
+     */
+    public OpenApi4jValidator withResultCache(ValidationResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    /**
+     * Validates heavy requests on the given executor instead of the calling thread, which is an I/O thread
+     * with asynchronous consumers such as netty-http. Requests are heavy when their body is at least
+     * {@link #withAsyncBodyThreshold(long) as large as the threshold}, or when their operation has the
+     * {@code x-camelx-heavy-validation: true} extension. Other requests are validated synchronously.
+     * <p>
+     * Any executor can be used, e.g. a bounded pool, or virtual threads on JDKs providing them. When the
+     * executor rejects a request, it's validated on the calling thread.
+     *
+     * @param executor the executor, or {@code null} to validate every request synchronously, the default
+     * @return this validator
+     */
+    public OpenApi4jValidator withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the size from which bodies are validated asynchronously, 64 KiB by default.
+     * Only used with an {@link #withExecutor(Executor) executor}. The size is taken from the body when
+     * it's already in memory or cached, from the {@code Content-Length} header otherwise.
+     *
+     * @param asyncBodyThreshold the size in bytes, or characters for String bodies
+     * @return this validator
+     */
+    public OpenApi4jValidator withAsyncBodyThreshold(long asyncBodyThreshold) {
+        this.asyncBodyThreshold = asyncBodyThreshold;
+        return this;
+    }
+
+    /**
+     * Reports the latency of each stage of the validation, the outcome and the body size of every request.
+     * Parameters and body are validated separately then, so their latencies can be told apart.
+     *
+     * @param metrics the metrics, or {@code null} to measure nothing, the default
+     * @return this validator
+     * @see ValidationStatistics
+     */
+    public OpenApi4jValidator withMetrics(ValidationMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Validates a sample of the requests in the background instead of every request, without ever rejecting them.
+     * The requests that would have been rejected are counted by the shadow mode, and reported to the
+     * {@link #withMetrics(ValidationMetrics) metrics}.
+     *
+     * @param shadowMode the shadow mode, or {@code null} to validate and reject every request, the default
+     * @return this validator
+     */
+    public OpenApi4jValidator withShadowMode(ShadowMode shadowMode) {
+        this.shadowMode = shadowMode;
+        return this;
+    }
+
+    /**
+     * Bounds the validation of invalid requests: it stops once the maximum number of errors is found,
+     * e.g. at the first one with {@link ValidationLimits#failFast()}, and the diagnostics are capped.
+     *
+     * @param limits the limits, {@link ValidationLimits#NONE} by default
+     * @return this validator
+     */
+    public OpenApi4jValidator withLimits(ValidationLimits limits) {
+        this.limits = limits != null ? limits : ValidationLimits.NONE;
+        return this;
+    }
+
+    /**
+     * Rejects the requests whose body is too large, or too deeply nested, before the body is read and validated.
+     * Operations can override the limits with extensions, see {@link PayloadLimits}.
+     *
+     * @param payloadLimits the limits, {@link PayloadLimits#NONE} by default
+     * @return this validator
+     */
+    public OpenApi4jValidator withPayloadLimits(PayloadLimits payloadLimits) {
+        this.payloadLimits = payloadLimits != null ? payloadLimits : PayloadLimits.NONE;
+        return this;
+    }
+
+    /**
+     * Sets the parameters of valid requests, converted to the types of their schemas, in the
+     * {@value ValidatedRequest#EXCHANGE_VALIDATED_REQUEST} exchange property, so downstream processors don't have to
+     * parse them again. The outcomes of such requests aren't {@link #withResultCache(ValidationResultCache) cached},
+     * and nothing is set in {@link #withShadowMode(ShadowMode) shadow mode}, which validates a copy of the exchange.
+     *
+     * @param validatedRequest whether the {@link ValidatedRequest} is set, disabled by default
+     * @return this validator
+     */
+    public OpenApi4jValidator withValidatedRequest(boolean validatedRequest) {
+        this.validatedRequest = validatedRequest;
+        return this;
+    }
+
+    /**
+     * Also keeps the JSON or XML body in the {@link ValidatedRequest}, as parsed for the validation. The body is
+     * parsed once, before the validation, so NDJSON and array bodies aren't validated from the stream then.
+     * Enables the {@link #withValidatedRequest(boolean) validated request}.
+     *
+     * @param parsedBody whether the parsed body is kept, disabled by default
+     * @return this validator
+     */
+    public OpenApi4jValidator withParsedBody(boolean parsedBody) {
+        this.parsedBody = parsedBody;
+        if (parsedBody) this.validatedRequest = true;
+        return this;
+    }
+
+    /**
+     * Sets the object mapper converting the {@code JsonNode}, map, collection and POJO bodies of JSON requests to a
+     * tree, and parsing their {@code byte[]}, {@code ByteBuffer} and Netty {@code ByteBuf} bodies. Such bodies are
+     * validated without being serialized to a String first.
+     *
+     * @param objectMapper the object mapper, shared with the route, the one of openapi4j by default
+     * @return this validator
+     */
+    public OpenApi4jValidator withObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper != null ? objectMapper : TreeUtil.json;
+        return this;
+    }
+
+    /**
+     * Compiles the specification again from its location, in the background, and swaps it in once compiled.
+     * Requests being validated finish with the previous version, the following ones use the new one.
+     * Operations of the paths that didn't change are reused, if nothing else changed.
+     * Validators sharing the specification through a {@link SpecRegistry} use the new version too, each keeping
+     * its own {@link #withStreamingBody(boolean) streaming mode}, and the outcomes cached for the previous version
+     * are no longer used.
+     *
+     * @return completed once the new version is used, or completed exceptionally if it can't be compiled,
+     * the previous version being kept
+     */
+    @Override
+    public CompletableFuture<Void> reload() {
+        return CompletableFuture.runAsync(() -> {
+            // reloads are serialized, so an older version can't replace a newer one
+            synchronized (spec) {
+                spec.set(new CompiledSpec(parse(specLocation), basePath, spec.get()));
+            }
+            LOGGER.info("Reloaded specification {}", specLocation);
+        });
+    }
 
-        if (basePath != null) {
-            api.setServers(Collections.singletonList(new Server().setUrl(basePath)));
+    @Override
+    public String getSpecLocation() {
+        return specLocation;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (registryEntry != null) {
+            registryEntry.retain();
         }
+    }
 
-        if (mediaTypeParamSupport)
-            openapi4jValidator = new RequestValidatorExtension(api);
-        else
-            openapi4jValidator = new RequestValidator(api);
+    @Override
+    protected void doStop() throws Exception {
+        if (registryEntry != null) {
+            registryEntry.release();
+        }
+        super.doStop();
     }
 
     @Override
     public boolean process(Exchange exchange, AsyncCallback callback) {
+        if (shadowMode != null) {
+            try {
+                shadowMode.offer(exchange, this::validate);
+            } finally {
+                callback.done(true);
+            }
+            return true;
+        }
+
+        if (executor != null && isHeavy(exchange)
+                && AsyncOffload.offload(executor, exchange, callback, this::validate)) {
+            return false;
+        }
+
+        try {
+            validate(exchange);
+        } finally {
+            callback.done(true);
+        }
+
+        return true;
+    }
+
+    /**
+     * Tells whether the request is worth validating on the executor. A request whose method or URI can't be read
+     * isn't: the validation on the calling thread reports it and completes the callback.
+     */
+    private boolean isHeavy(Exchange exchange) {
+        if (AsyncOffload.isHeavyBody(exchange, asyncBodyThreshold)) return true;
+
+        try {
+            final Request.Method method = Request.Method.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD, String.class));
+            final String uri = exchange.getMessage().getHeader(Exchange.HTTP_URI, String.class);
+            final OperationIndex.Match match = spec.get().requestValidator.find(method, OperationIndex.pathOf(uri));
+            return match != null && AsyncOffload.isHeavyOperation(match.getOperation().getExtensions());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates the request, setting a {@link BadRequestException} on the exchange if it's invalid,
+     * or a {@link PayloadTooLargeException} if its body is too large.
+     */
+    private void validate(Exchange exchange) {
         LOGGER.debug("Trying validation");
+        final ValidationMetrics metrics = this.metrics;
+        // the whole validation uses the same version of the specification, even if it's reloaded meanwhile
+        final CompiledSpec spec = this.spec.get();
+        final ValidationLimits limits = this.limits;
+        final RequestValidatorExtension requestValidator = spec.requestValidatorOf(streamingBody);
+        String fingerprint = null;
+        String operationId = null;
 
         try {
-            openapi4jValidator.validate(requestFrom(exchange));
+            long time = metrics != null ? System.nanoTime() : 0;
+            final Request.Method method = Request.Method.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD, String.class));
+            final String uri = exchange.getMessage().getHeader(Exchange.HTTP_URI, String.class);
+            final OperationIndex.Match match = requestValidator.find(method, OperationIndex.pathOf(uri));
+            if (metrics != null) {
+                operationId = operationIdOf(method, match);
+                time = recordStage(metrics, operationId, ValidationMetrics.Stage.LOOKUP, time);
+            }
+
+            if (match != null && match.getOperation().getRequestBody() != null) {
+                payloadLimits.overriddenBy(match.getOperation().getExtensions())
+                        .check(exchange, exchange.getMessage().getHeader(Exchange.CONTENT_TYPE, String.class));
+            }
+
+            // the parameters of cached outcomes aren't known
+            fingerprint = resultCache != null && !validatedRequest ? fingerprintOf(spec, exchange, method, uri, match) : null;
+            final ValidationResultCache.Outcome outcome = fingerprint != null ? resultCache.get(fingerprint) : null;
+            if (outcome != null) {
+                LOGGER.debug("Using cached validation outcome");
+                if (outcome.getFailure() != null) {
+                    exchange.setException(new BadRequestException(outcome.getFailure()));
+                }
+                if (metrics != null) {
+                    recordOutcome(metrics, operationId, outcome.getFailure() != null ? Collections.singleton(CACHED_ERROR_CODE) : null);
+                }
+            } else {
+                if (metrics != null && match != null && match.getOperation().getRequestBody() != null) {
+                    long bodyLength = AsyncOffload.bodyLength(exchange.getMessage());
+                    if (bodyLength >= 0) metrics.recordBodySize(operationId, bodyLength);
+                }
+
+                final JsonNode body = parsedBody ? parsedBodyFrom(spec, exchange, match) : null;
+                final Request request = requestFrom(spec, exchange, method, uri, match, body);
+                final String measuredOperationId = operationId;
+                ObjLongConsumer<ValidationMetrics.Stage> stageTimes = null;
+                if (metrics != null) {
+                    recordStage(metrics, operationId, ValidationMetrics.Stage.REQUEST, time);
+                    stageTimes = (stage, nanos) -> metrics.recordStage(measuredOperationId, stage, nanos);
+                }
+
+                final RequestParameters parameters = requestValidator.validate(request, match, limits, stageTimes);
+                if (fingerprint != null) resultCache.put(fingerprint, null);
+                if (validatedRequest) exchange.setProperty(ValidatedRequest.EXCHANGE_VALIDATED_REQUEST, new ValidatedRequest(parameters, body));
+                if (metrics != null) recordOutcome(metrics, operationId, null);
+            }
         } catch (ValidationException e) {
-            exchange.setException(new BadRequestException(messageFrom(e)));
+            OperationResult.Message message = messageFrom(e, limits);
+            if (fingerprint != null) resultCache.put(fingerprint, message);
+            if (metrics != null) recordOutcome(metrics, operationId, errorCodesOf(e));
+            exchange.setException(new BadRequestException(message));
+        } catch (BadRequestException e) {
+            if (fingerprint != null) resultCache.put(fingerprint, e.getOperationResultMessage());
+            if (metrics != null) recordOutcome(metrics, operationId, Collections.singleton(MALFORMED_ERROR_CODE));
+            exchange.setException(e);
+        } catch (PayloadTooLargeException e) {
+            if (metrics != null) recordOutcome(metrics, operationId, Collections.singleton(PAYLOAD_ERROR_CODE));
+            exchange.setException(e);
         } finally {
+            // the body may have been read from the stream cache
+            Object body = exchange.getMessage().getBody();
+            if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+            }
+
             LOGGER.debug("Validating complete");
-            callback.done(true);
         }
+    }
 
-        return true;
+    /**
+     * Finds the operation of a request in the current version of the specification, for the {@link ResponseValidator}.
+     *
+     * @param method the request method
+     * @param uri    the request URI
+     * @return the operation, or {@code null} if the request doesn't match any
+     */
+    ResponseValidator.ResponseContract responseContractOf(String method, String uri) {
+        final CompiledSpec spec = this.spec.get();
+        final Request.Method requestMethod = Request.Method.valueOf(method);
+        final OperationIndex.Match match = spec.requestValidator.find(requestMethod, OperationIndex.pathOf(uri));
+        if (match == null) return null;
+
+        final String operationId = operationIdOf(requestMethod, match);
+        return new ResponseValidator.ResponseContract() {
+            @Override
+            public String getOperationId() {
+                return operationId;
+            }
+
+            @Override
+            public Collection<String> validate(ResponseValidator.CapturedResponse response) {
+                final DefaultResponse.Builder responseBuilder = new DefaultResponse.Builder(response.getStatus());
+                response.getHeaders().forEach(responseBuilder::header);
+                if (response.getBody() != null) {
+                    responseBuilder.body(Body.from(response.getBody()));
+                }
+
+                try {
+                    spec.requestValidator.validate(responseBuilder.build(), match.getPath(), match.getOperation());
+                    return Collections.emptySet();
+                } catch (ValidationException e) {
+                    return errorCodesOf(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the validator of the request body of an operation in the current version of the specification,
+     * for the {@link BatchValidator}. The JSON media type is used when the operation accepts several.
+     *
+     * @param operationId the operationId of the operation
+     * @return the validator, compiled once per version of the specification
+     * @throws IllegalArgumentException if the operation doesn't exist or doesn't have a request body schema
+     */
+    JsonValidator requestBodyValidatorOf(String operationId) {
+        return spec.get().schemaValidatorOf("operation:" + operationId, spec -> spec.requestBodySchemaOf(operationId));
+    }
+
+    /**
+     * Returns the validator of a schema of the components in the current version of the specification,
+     * for the {@link BatchValidator}.
+     *
+     * @param schemaName the name of the schema in {@code #/components/schemas}
+     * @return the validator, compiled once per version of the specification
+     * @throws IllegalArgumentException if the schema doesn't exist
+     */
+    JsonValidator componentSchemaValidatorOf(String schemaName) {
+        return spec.get().schemaValidatorOf("schema:" + schemaName, spec -> {
+            Schema schema = spec.api.getComponents() != null && spec.api.getComponents().getSchemas() != null
+                    ? spec.api.getComponents().getSchemas().get(schemaName)
+                    : null;
+            if (schema == null) {
+                throw new IllegalArgumentException("Schema not found: " + schemaName);
+            }
+            return schema;
+        });
+    }
+
+    /**
+     * @return the operationId of the operation, its method and templated path if it doesn't have one
+     */
+    private static String operationIdOf(Request.Method method, OperationIndex.Match match) {
+        if (match == null) return ValidationMetrics.UNKNOWN_OPERATION;
+
+        String operationId = match.getOperation().getOperationId();
+        return operationId != null ? operationId : method.name() + ' ' + match.getTemplatePath();
+    }
+
+    /**
+     * @return the end of the stage, which is the start of the next one
+     */
+    private static long recordStage(ValidationMetrics metrics, String operationId, ValidationMetrics.Stage stage, long start) {
+        long end = System.nanoTime();
+        metrics.recordStage(operationId, stage, end - start);
+        return end;
+    }
+
+    /**
+     * @param errorCodes the codes of the errors, or {@code null} if the request is valid
+     */
+    private static void recordOutcome(ValidationMetrics metrics, String operationId, Collection<String> errorCodes) {
+        if (operationId == null) return;
+
+        if (errorCodes == null) {
+            metrics.recordSuccess(operationId);
+        } else {
+            metrics.recordFailure(operationId, errorCodes);
+        }
+    }
+
+    /**
+     * @return the distinct codes of the errors reported by openapi4j, {@code operation} for unknown operations
+     */
+    private static Collection<String> errorCodesOf(ValidationException exception) {
+        if (exception.results() == null) {
+            return Collections.singleton(OPERATION_ERROR_CODE);
+        }
+
+        Set<String> errorCodes = new TreeSet<>();
+        for (ValidationResults.ValidationItem item : exception.results().items()) {
+            errorCodes.add(String.valueOf(item.code()));
+        }
+        return errorCodes;
     }
 
     /**
      * Parses the {@code ValidationResults} report and returns the details and diagnostics
-     * of the bad request.
+     * of the bad request, both as text and as a list of errors.
      *
      * @param exception    the ValidationException thrown by the validator
+     * @param limits       the limits of the diagnostics
      * @return the {@code Message} with all of the information about the error
      */
-    private static OperationResult.Message messageFrom(ValidationException exception) {
+    private static OperationResult.Message messageFrom(ValidationException exception, ValidationLimits limits) {
         ValidationResults results = exception.results();
 
         if (results == null) {
@@ -126,51 +673,71 @@ public class OpenApi4jValidator extends AsyncProcessorSupport {
                     .build();
         }
 
-        StringBuilder diagnostics = new StringBuilder();
-        LOGGER.debug(exception.results().toString());
-        for (ValidationResults.ValidationItem result : results.items()) {
-            diagnostics.append(result.toString()).append(System.lineSeparator());
-        }
+        LOGGER.debug("Validation results: {}", results);
+        List<OperationResult.Diagnostic> errors = new ArrayList<>();
+        String diagnostics = limits.diagnosticsOf(results, errors);
 
         return OperationResult.MessageBuilder.error("RequestValidationError", "HTTP request failed API specification validation.")
-            .withDiagnostics(diagnostics.toString())
+            .withDiagnostics(diagnostics)
+            .withErrors(errors)
             .build();
     }
 
     /**
      * Builds the request from the {@code Exchange} using the builder pattern.
      * First initializes the needed headers and values from the exchange.
-     * If the body is not empty, it gets added to the request. If the content type is XML,
-     * it's converted to a {@link JsonNode}.
-     * Adds the query params and the necessary headers to the request.
+     * If the matched operation declares a request body and the body is not empty, it gets added to the request.
+     * Otherwise the body isn't read at all. If the content type is XML,
+     * it's converted to a {@link JsonNode} by the {@link XmlStreamConverter}.
+     * Adds the query params and the headers the operation refers to, see {@link CompiledSpec#headerNamesOf(OperationIndex.Match)}.
      *
+     * @param spec     the specification the request is validated against
      * @param exchange the entire {@code Exchange} object of the request
+     * @param method   the request method
+     * @param uri      the request URI
+     * @param match    the operation of the request, or {@code null} if not found
+     * @param parsedBody the body already parsed by {@link #parsedBodyFrom(CompiledSpec, Exchange, OperationIndex.Match)},
+     *                   or {@code null} to read it from the exchange
      * @return the {@code Request} built from the necessary exchange values
+     * @throws BadRequestException if the XML body is malformed
      */
-    private static Request requestFrom(Exchange exchange) {
-        final Request.Method method = Request.Method.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD, String.class));
-        final String path = exchange.getMessage().getHeader(Exchange.HTTP_URI, String.class);
+    private Request requestFrom(CompiledSpec spec, Exchange exchange, Request.Method method, String uri, OperationIndex.Match match,
+                                JsonNode parsedBody) throws BadRequestException {
         final String query = exchange.getMessage().getHeader(Exchange.HTTP_QUERY, String.class);
-        final String body = MessageHelper.extractBodyAsString(exchange.getMessage());
         final String contentType = exchange.getMessage().getHeader(Exchange.CONTENT_TYPE, String.class);
-        final DefaultRequest.Builder requestBuilder = new DefaultRequest.Builder(path, method);
+        final DefaultRequest.Builder requestBuilder = new DefaultRequest.Builder(requestUrlOf(uri), method);
 
-        if (body != null && !body.isEmpty()) {
-            if (contentType != null && contentType.endsWith("xml")) {
-                try {
-                    JsonNode node = XML_MAPPER.readTree(body);
-                    requestBuilder.body(Body.from(node));
-                } catch (IOException ioe) {
-                    throw new RuntimeException(ioe);
-                }
-            } else {
-                requestBuilder.body(Body.from(body));
+        final boolean hasRequestBody = match != null && match.getOperation().getRequestBody() != null;
+        final StreamCache streamCache = hasRequestBody && parsedBody == null && streamingBody ? streamCacheFrom(exchange) : null;
+        if (!hasRequestBody) {
+            LOGGER.debug("Skipping body, no request body declared");
+        } else if (parsedBody != null) {
+            requestBuilder.body(Body.from(parsedBody));
+        } else if (streamCache != null) {
+            if (streamCache.length() != 0) {
+                InputStream body = exchange.getContext().getTypeConverter().convertTo(InputStream.class, exchange, streamCache);
+                requestBuilder.body(isXml(contentType)
+                        ? Body.from(xmlNodeFrom(spec, body, null, match, contentType))
+                        : Body.from(body));
+            }
+        } else {
+            final JsonNode typedBody = isJson(contentType) ? typedBodyFrom(exchange, contentType) : null;
+            final String body = typedBody == null ? MessageHelper.extractBodyAsString(exchange.getMessage()) : null;
+            if (typedBody != null) {
+                requestBuilder.body(Body.from(typedBody));
+            } else if (body != null && !body.isEmpty()) {
+                requestBuilder.body(isXml(contentType)
+                        ? Body.from(xmlNodeFrom(spec, null, body, match, contentType))
+                        : Body.from(body));
             }
         }
 
-        for (Map.Entry<String, Object> header : exchange.getMessage().getHeaders().entrySet()) {
-            if (!header.getKey().startsWith("Camel") && header.getValue() instanceof String) {
-                requestBuilder.header(header.getKey(), (String) header.getValue());
+        if (match != null) {
+            for (String headerName : spec.headerNamesOf(match)) {
+                List<String> values = HeaderValues.of(exchange, headerName);
+                if (values != null) {
+                    requestBuilder.header(headerName, values);
+                }
             }
         }
 
@@ -178,4 +745,434 @@ public class OpenApi4jValidator extends AsyncProcessorSupport {
 
         return requestBuilder.build();
     }
+
+    /**
+     * Returns the URL openapi4j parses for the request. Paths that aren't valid URIs, e.g. with spaces
+     * or a stray {@code %}, are percent-encoded so they're reported as not found rather than failing.
+     */
+    private static String requestUrlOf(String uri) {
+        try {
+            URI.create(uri);
+            return uri;
+        } catch (IllegalArgumentException e) {
+            final String path = OperationIndex.pathOf(uri);
+            final byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            final StringBuilder encoded = new StringBuilder(bytes.length + 16);
+            for (int i = 0; i < bytes.length; i++) {
+                final int c = bytes[i] & 0xff;
+                final boolean escape = c == '%' && i + 2 < bytes.length
+                        && Character.digit(bytes[i + 1], 16) != -1 && Character.digit(bytes[i + 2], 16) != -1;
+                if (escape || c < 0x80 && (Character.isLetterOrDigit(c) || URI_PATH_CHARS.indexOf(c) != -1)) {
+                    encoded.append((char) c);
+                } else {
+                    encoded.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+                }
+            }
+            return encoded.toString();
+        }
+    }
+
+    /**
+     * Parses the JSON or XML body of the request once, for both the validation and the {@link ValidatedRequest}.
+     *
+     * @param spec     the specification the request is validated against
+     * @param exchange the entire {@code Exchange} object of the request
+     * @param match    the operation of the request, or {@code null} if not found
+     * @return the body, or {@code null} if it's empty, of another type, or malformed JSON, left to the validator to report
+     * @throws BadRequestException if the XML body is malformed
+     */
+    private JsonNode parsedBodyFrom(CompiledSpec spec, Exchange exchange, OperationIndex.Match match) throws BadRequestException {
+        if (match == null || match.getOperation().getRequestBody() == null) return null;
+
+        final String contentType = exchange.getMessage().getHeader(Exchange.CONTENT_TYPE, String.class);
+        final boolean xml = isXml(contentType);
+        if (!xml && !isJson(contentType)) return null;
+
+        final StreamCache streamCache = streamingBody ? streamCacheFrom(exchange) : null;
+        try {
+            if (streamCache != null) {
+                if (streamCache.length() == 0) return null;
+
+                InputStream body = exchange.getContext().getTypeConverter().convertTo(InputStream.class, exchange, streamCache);
+                return xml ? xmlNodeFrom(spec, body, null, match, contentType) : nodeOrNull(TreeUtil.json.readTree(body));
+            }
+            if (!xml) {
+                final JsonNode typedBody = TypedBodies.nodeOf(objectMapper, exchange, contentType);
+                if (typedBody != null) return typedBody;
+            }
+
+            final String body = MessageHelper.extractBodyAsString(exchange.getMessage());
+            if (body == null || body.isEmpty()) return null;
+
+            return xml ? xmlNodeFrom(spec, null, body, match, contentType) : nodeOrNull(TreeUtil.json.readTree(body));
+        } catch (IOException e) {
+            // validated again from the exchange, which reports it
+            return null;
+        } finally {
+            if (streamCache != null) {
+                streamCache.reset();
+            }
+        }
+    }
+
+    /**
+     * Reads a body that isn't text without serializing it, see {@link TypedBodies}.
+     *
+     * @return the body, or {@code null} to read it as a String, which is also how malformed bytes get reported
+     */
+    private JsonNode typedBodyFrom(Exchange exchange, String contentType) {
+        try {
+            return TypedBodies.nodeOf(objectMapper, exchange, contentType);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static JsonNode nodeOrNull(JsonNode node) {
+        return node == null || node.isMissingNode() ? null : node;
+    }
+
+    /**
+     * Builds the key of the request in the result cache from the inputs the validation depends on.
+     * Every component is prefixed by its length, so values containing separators can't collide.
+     *
+     * @return the fingerprint, or {@code null} if the request isn't cacheable
+     */
+    private String fingerprintOf(CompiledSpec spec, Exchange exchange, Request.Method method, String uri, OperationIndex.Match match) {
+        if (match == null) return null;
+
+        String body = null;
+        if (match.getOperation().getRequestBody() != null) {
+            // objects have no faithful String form to key them by
+            if (!resultCache.isCachingBodies() || TypedBodies.isObject(exchange.getMessage().getBody())) return null;
+            // other streams would be consumed, and their length isn't known before reading them
+            final Object content = exchange.getMessage().getBody();
+            if (content != null && !(content instanceof String || content instanceof byte[] || content instanceof StreamCache)) return null;
+            if (AsyncOffload.bodyLength(exchange.getMessage()) > MAX_FINGERPRINT_BODY_LENGTH) return null;
+
+            body = MessageHelper.extractBodyAsString(exchange.getMessage());
+            if (content instanceof StreamCache) {
+                ((StreamCache) content).reset();
+            }
+            if (body != null && body.length() > MAX_FINGERPRINT_BODY_LENGTH) return null;
+        }
+
+        // outcomes depend on the version of the specification, and on the streaming mode
+        final StringBuilder fingerprint = new StringBuilder(128).append(spec.version).append(streamingBody ? "s" : "").append(method.name());
+        appendComponent(fingerprint, uri);
+
+        final Map<String, List<String>> query = QueryStringParser.parse(exchange.getMessage().getHeader(Exchange.HTTP_QUERY, String.class));
+        fingerprint.append('?').append(query.size());
+        for (Map.Entry<String, List<String>> parameter : new TreeMap<>(query).entrySet()) {
+            appendComponent(fingerprint, parameter.getKey());
+            appendComponents(fingerprint, parameter.getValue());
+        }
+
+        for (String headerName : spec.headerNamesOf(match)) {
+            appendComponents(fingerprint, HeaderValues.of(exchange, headerName));
+        }
+
+        appendComponent(fingerprint.append('#'), body);
+        return fingerprint.toString();
+    }
+
+    private static void appendComponents(StringBuilder fingerprint, List<String> values) {
+        if (values == null) {
+            fingerprint.append('-');
+            return;
+        }
+
+        fingerprint.append('[').append(values.size());
+        for (String value : values) {
+            appendComponent(fingerprint, value);
+        }
+    }
+
+    private static void appendComponent(StringBuilder fingerprint, String value) {
+        if (value == null) {
+            fingerprint.append('-');
+        } else {
+            fingerprint.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * Returns the body of the message as a {@link StreamCache}, caching plain input streams
+     * with the stream caching strategy of the context so they can be read again.
+     *
+     * @param exchange the exchange of the request
+     * @return the stream cache, or {@code null} if the body isn't a stream
+     */
+    private static StreamCache streamCacheFrom(Exchange exchange) {
+        final Message message = exchange.getMessage();
+        final Object body = message.getBody();
+
+        if (body instanceof StreamCache) {
+            ((StreamCache) body).reset();
+            return (StreamCache) body;
+        }
+
+        if (body instanceof InputStream) {
+            StreamCache streamCache = exchange.getContext().getStreamCachingStrategy().cache(exchange);
+            if (streamCache != null) {
+                message.setBody(streamCache);
+            }
+            return streamCache;
+        }
+
+        return null;
+    }
+
+    private static boolean isXml(String contentType) {
+        if (contentType == null) return false;
+
+        int paramsIdx = contentType.indexOf(';');
+        return (paramsIdx == -1 ? contentType : contentType.substring(0, paramsIdx)).trim().endsWith("xml");
+    }
+
+    /**
+     * JSON media types, NDJSON aside as it isn't a single document.
+     */
+    private static boolean isJson(String contentType) {
+        if (contentType == null) return false;
+
+        int paramsIdx = contentType.indexOf(';');
+        String type = (paramsIdx == -1 ? contentType : contentType.substring(0, paramsIdx)).trim().toLowerCase();
+        return type.endsWith("/json") || type.endsWith("+json");
+    }
+
+    /**
+     * Converts an XML body, from either a stream or a String, to a {@link JsonNode} shaped by the
+     * schema the matching operation declares for the content type.
+     *
+     * @return the converted body of the request
+     * @throws BadRequestException if the document is malformed, with the position of the error
+     */
+    private JsonNode xmlNodeFrom(CompiledSpec spec, InputStream in, String body, OperationIndex.Match match, String contentType)
+            throws BadRequestException {
+        final Schema schema = xmlSchemaFor(match, contentType);
+
+        try {
+            return in != null
+                    ? spec.xmlConverter.convert(in, schema)
+                    : spec.xmlConverter.convert(new StringReader(body), schema);
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            String diagnostics = location != null
+                    ? String.format("line %d, column %d: %s", location.getLineNumber(), location.getColumnNumber(), firstLine(e.getMessage()))
+                    : firstLine(e.getMessage());
+
+            throw new BadRequestException(e, OperationResult.MessageBuilder.error("RequestValidationError", "Malformed XML body.")
+                    .withDiagnostics(diagnostics)
+                    .build());
+        }
+    }
+
+    /**
+     * @return the schema declared for the content type by the matching operation, if any
+     */
+    private static Schema xmlSchemaFor(OperationIndex.Match match, String contentType) {
+        if (match == null || match.getValidator() == null) return null;
+
+        RequestBody requestBody = match.getValidator().getOperation().getRequestBody();
+        if (requestBody == null || requestBody.getContentMediaTypes() == null) return null;
+
+        final MediaTypeUtils.CompactMediaType mimeType = MediaTypeUtils.CompactMediaType.parse(contentType);
+        // malformed content types are reported by the validator
+        if (mimeType == null) return null;
+
+        for (Map.Entry<String, MediaType> mediaType : requestBody.getContentMediaTypes().entrySet()) {
+            MediaTypeUtils.CompactMediaType declared = MediaTypeUtils.CompactMediaType.parse(mediaType.getKey());
+            if (declared != null && MediaTypeUtils.includes(declared, mimeType)) {
+                return mediaType.getValue().getSchema();
+            }
+        }
+
+        return null;
+    }
+
+    private static String firstLine(String message) {
+        if (message == null) return null;
+
+        int eolIdx = message.indexOf('\n');
+        return eolIdx == -1 ? message : message.substring(0, eolIdx);
+    }
+
+    /**
+     * The specification and everything compiled from it, replaced as a whole when the specification is reloaded.
+     */
+    private static final class CompiledSpec {
+        private final long version;
+        private final OpenApi3 api;
+        private final RequestValidatorExtension requestValidator;
+        // validates array bodies one item at a time, created once a validator streams bodies
+        private volatile RequestValidatorExtension streamingRequestValidator;
+        private final ValidationContext<OAI3> context;
+        private final XmlStreamConverter xmlConverter;
+        // header names by operation, operations are compared by identity
+        private final Map<Operation, List<String>> headerNames = new ConcurrentHashMap<>();
+        // validators of the batch targets, by kind and name
+        private final Map<String, JsonValidator> schemaValidators = new ConcurrentHashMap<>();
+
+        /**
+         * @param previous the version being reloaded, whose unchanged operations are reused, or {@code null}
+         */
+        private CompiledSpec(OpenApi3 api, String basePath, CompiledSpec previous) {
+            if (basePath != null) {
+                api.setServers(Collections.singletonList(new Server().setUrl(basePath)));
+            }
+
+            this.version = previous != null ? previous.version + 1 : 0;
+            this.api = api;
+            this.context = new ValidationContext<>(api.getContext());
+            this.requestValidator = new RequestValidatorExtension(context, api, mediaTypeParamSupport, false,
+                    previous != null ? previous.requestValidator : null);
+            if (previous != null && previous.streamingRequestValidator != null) {
+                this.streamingRequestValidator = new RequestValidatorExtension(context, api, mediaTypeParamSupport, true,
+                        previous.streamingRequestValidator);
+            }
+            this.xmlConverter = new XmlStreamConverter(api.getContext());
+        }
+
+        /**
+         * Returns the request validator of the streaming mode. Both validators share the specification,
+         * their operations are compiled on first use.
+         *
+         * @param streamingArrays whether JSON array bodies are validated one item at a time
+         * @return the request validator of the mode
+         */
+        private RequestValidatorExtension requestValidatorOf(boolean streamingArrays) {
+            if (!streamingArrays) return requestValidator;
+
+            RequestValidatorExtension validator = streamingRequestValidator;
+            if (validator == null) {
+                synchronized (this) {
+                    validator = streamingRequestValidator;
+                    if (validator == null) {
+                        validator = new RequestValidatorExtension(context, api, mediaTypeParamSupport, true);
+                        streamingRequestValidator = validator;
+                    }
+                }
+            }
+            return validator;
+        }
+
+        private JsonValidator schemaValidatorOf(String target, Function<CompiledSpec, Schema> schemaResolver) {
+            JsonValidator validator = schemaValidators.get(target);
+            if (validator == null) {
+                validator = schemaValidators.computeIfAbsent(target, t -> new SchemaValidator(context, "body",
+                        TreeUtil.json.convertValue(schemaResolver.apply(this).copy(), JsonNode.class)));
+            }
+            return validator;
+        }
+
+        private Schema requestBodySchemaOf(String operationId) {
+            if (api.getPaths() != null) {
+                for (Path path : api.getPaths().values()) {
+                    if (path.getOperations() == null) continue;
+
+                    for (Operation operation : path.getOperations().values()) {
+                        if (operationId.equals(operation.getOperationId())) {
+                            Schema schema = jsonSchemaOf(operation.getRequestBody());
+                            if (schema == null) {
+                                throw new IllegalArgumentException("Operation without a request body schema: " + operationId);
+                            }
+                            return schema;
+                        }
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Operation not found: " + operationId);
+        }
+
+        /**
+         * @return the schema of the JSON media type of the body, of its first media type if it doesn't have one
+         */
+        private Schema jsonSchemaOf(RequestBody requestBody) {
+            if (requestBody == null || requestBody.getContentMediaTypes() == null) return null;
+
+            Schema first = null;
+            for (Map.Entry<String, MediaType> mediaType : requestBody.getContentMediaTypes().entrySet()) {
+                if (mediaType.getValue().getSchema() == null) continue;
+
+                Schema schema = mediaType.getValue().getSchema();
+                String type = mediaType.getKey().toLowerCase();
+                int paramsIdx = type.indexOf(';');
+                if ((paramsIdx == -1 ? type : type.substring(0, paramsIdx)).trim().endsWith("json")) return schema;
+                if (first == null) first = schema;
+            }
+            return first;
+        }
+
+        /**
+         * Returns the names of the headers the matching operation refers to, computed once per operation:
+         * {@code Content-Type}, its header parameters, including the ones declared by its path, and the headers
+         * carrying the credentials of its security schemes, or of the API's when it doesn't override them.
+         *
+         * @param match the operation of the request
+         * @return the header names, without duplicates regardless of case
+         */
+        private List<String> headerNamesOf(OperationIndex.Match match) {
+            List<String> names = headerNames.get(match.getOperation());
+            if (names == null) {
+                names = headerNames.computeIfAbsent(match.getOperation(), operation -> headerNamesOf(
+                        match.getValidator() != null ? match.getValidator().getOperation() : operation));
+            }
+            return names;
+        }
+
+        private List<String> headerNamesOf(Operation operation) {
+            final Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            names.add(CONTENT_TYPE);
+
+            if (operation.getParameters() != null) {
+                for (Parameter parameter : operation.getParameters()) {
+                    parameter = flatParameter(parameter);
+                    if (parameter != null && "header".equals(parameter.getIn()) && parameter.getName() != null) {
+                        names.add(parameter.getName());
+                    }
+                }
+            }
+
+            final List<SecurityRequirement> requirements = operation.getSecurityRequirements() != null
+                    ? operation.getSecurityRequirements()
+                    : api.getSecurityRequirements();
+            final Map<String, SecurityScheme> schemes = api.getComponents() != null ? api.getComponents().getSecuritySchemes() : null;
+            if (requirements != null && schemes != null) {
+                for (SecurityRequirement requirement : requirements) {
+                    if (requirement.getRequirements() == null) continue;
+
+                    for (String schemeName : requirement.getRequirements().keySet()) {
+                        SecurityScheme scheme = schemes.get(schemeName);
+                        if (scheme == null || scheme.getType() == null) continue;
+
+                        if ("apiKey".equals(scheme.getType())) {
+                            if ("header".equals(scheme.getIn()) && scheme.getName() != null) {
+                                names.add(scheme.getName());
+                            }
+                        } else {
+                            // http, oauth2 and openIdConnect credentials
+                            names.add(AUTHORIZATION);
+                        }
+                    }
+                }
+            }
+
+            return Collections.unmodifiableList(new ArrayList<>(names));
+        }
+
+        /**
+         * @return the parameter a {@code $ref} parameter refers to, or {@code null} if it can't be resolved
+         */
+        private Parameter flatParameter(Parameter parameter) {
+            if (!parameter.isRef()) return parameter;
+
+            try {
+                return parameter.getReference(api.getContext()).getMappedContent(Parameter.class);
+            } catch (DecodeException | RuntimeException e) {
+                // reported by the validator
+                return null;
+            }
+        }
+    }
 }
@@ -104,7 +104,7 @@ public class OperationResult {
 
 	/***
 	 * This class specifies the values of a {@code Message}, the level, the type,
-	 * the code, the details, and the diagnostics.
+	 * the code, the details, and the diagnostics, both as text and as a list of {@link Diagnostic}s.
 	 */
 	public static class Message {
 		public final Level level;
@@ -112,6 +112,7 @@ public class OperationResult {
 		public final String code;
 		public final String details;
 		public final String diagnostics;
+		public final List<Diagnostic> errors;
 
 		/***
 		 * Constructs the error {@code Message} with the specified parameters.
@@ -123,11 +124,26 @@ public class OperationResult {
 		 * @param diagnostics	diagnostics
 		 */
 		public Message(Level level, String type, String code, String details, String diagnostics) {
+			this(level, type, code, details, diagnostics, Collections.emptyList());
+		}
+
+		/***
+		 * Constructs the error {@code Message} with the specified parameters and its structured diagnostics.
+		 *
+		 * @param level 		{@link Level}
+		 * @param type 			the type
+		 * @param code 			the code
+		 * @param details		details
+		 * @param diagnostics	diagnostics
+		 * @param errors		the errors the diagnostics are made of
+		 */
+		public Message(Level level, String type, String code, String details, String diagnostics, List<Diagnostic> errors) {
 			this.level = level;
 			this.type = type;
 			this.code = code;
 			this.details = details;
 			this.diagnostics = diagnostics;
+			this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
 		}
 
 		@Override
@@ -145,6 +161,41 @@ public class OperationResult {
 		}
 	}
 
+	/***
+	 * One error of the diagnostics of a {@code Message}: its code, where it was found and what's wrong.
+	 */
+	public static class Diagnostic {
+		public final String code;
+		public final String location;
+		public final String message;
+
+		/***
+		 * Constructs the {@code Diagnostic} with the specified parameters.
+		 *
+		 * @param code		the code of the error
+		 * @param location	where the error was found in the request, e.g. {@code body.items.0.id}, or {@code null}
+		 * @param message	what's wrong
+		 */
+		public Diagnostic(String code, String location, String message) {
+			this.code = code;
+			this.location = location;
+			this.message = message;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			if (location != null && !location.isEmpty()) {
+				sb.append(location).append(": ");
+			}
+			sb.append(message);
+			if (code != null) {
+				sb.append(" (code: ").append(code).append(')');
+			}
+			return sb.toString();
+		}
+	}
+
 	/***
 	 * This class uses the builder pattern to build the message.
 	 */
@@ -154,6 +205,7 @@ public class OperationResult {
 		private final String details;
 		private String code = null;
 		private String diagnostics = null;
+		private List<Diagnostic> errors = Collections.emptyList();
 
 		/***
 		 * Constructs the message builder with the specified level, type of message,
@@ -224,13 +276,24 @@ public class OperationResult {
 			return this;
 		}
 
+		/***
+		 * Adds the errors the diagnostics are made of to the instance, for clients that need them one by one.
+		 *
+		 * @param errors the errors
+		 * @return this {@code MessageBuilder} instance
+		 */
+		public MessageBuilder withErrors(List<Diagnostic> errors) {
+			this.errors = errors;
+			return this;
+		}
+
 		/***
 		 * Build the {@code Message} instance with the collected values.
 		 *
 		 * @return the created {@code Message} instance
 		 */
 		public Message build() {
-			return new Message(level, type, code, details, diagnostics);
+			return new Message(level, type, code, details, diagnostics, errors);
 		}
 	}
 }
@@ -0,0 +1,98 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics of an operation, see {@link ValidationStatistics}.
+ * Latencies are in microseconds, and percentiles are the upper bound of the power of two
+ * bucket they fall in.
+ */
+public class OperationStatistics {
+    private final String operationId;
+    private final long successCount;
+    private final long failureCount;
+    private final Map<String, Long> failuresByCode;
+    private final Map<String, Double> meanMicrosByStage;
+    private final Map<String, Long> p99MicrosByStage;
+    private final Map<String, Long> maxMicrosByStage;
+    private final double meanBodySize;
+    private final long p99BodySize;
+    private final long maxBodySize;
+
+    OperationStatistics(String operationId, long successCount, long failureCount, Map<String, Long> failuresByCode,
+                        Map<String, Double> meanMicrosByStage, Map<String, Long> p99MicrosByStage, Map<String, Long> maxMicrosByStage,
+                        double meanBodySize, long p99BodySize, long maxBodySize) {
+        this.operationId = operationId;
+        this.successCount = successCount;
+        this.failureCount = failureCount;
+        this.failuresByCode = failuresByCode;
+        this.meanMicrosByStage = meanMicrosByStage;
+        this.p99MicrosByStage = p99MicrosByStage;
+        this.maxMicrosByStage = maxMicrosByStage;
+        this.meanBodySize = meanBodySize;
+        this.p99BodySize = p99BodySize;
+        this.maxBodySize = maxBodySize;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public long getSuccessCount() {
+        return successCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the number of invalid requests by error code, a request may have several codes
+     */
+    public Map<String, Long> getFailuresByCode() {
+        return failuresByCode;
+    }
+
+    /**
+     * @return the mean latency by stage, named after {@link ValidationMetrics.Stage} in lower case
+     */
+    public Map<String, Double> getMeanMicrosByStage() {
+        return meanMicrosByStage;
+    }
+
+    public Map<String, Long> getP99MicrosByStage() {
+        return p99MicrosByStage;
+    }
+
+    public Map<String, Long> getMaxMicrosByStage() {
+        return maxMicrosByStage;
+    }
+
+    public double getMeanBodySize() {
+        return meanBodySize;
+    }
+
+    public long getP99BodySize() {
+        return p99BodySize;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+}
@@ -0,0 +1,377 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import com.ms3_inc.tavros.extensions.rest.exception.PayloadTooLargeException;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
+import org.apache.camel.converter.stream.CachedOutputStream;
+import org.apache.camel.util.IOHelper;
+import org.openapi4j.core.util.TreeUtil;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Rejects oversized or deeply nested request bodies before they are read into memory and validated.
+ * <p>
+ * The size of the body is checked against the {@code Content-Length} header, or the body itself when it's already
+ * in memory. Streams of unknown size are cached up to the maximum size, and rejected as soon as they exceed it.
+ * Bodies larger than the maximum size are rejected with a {@link PayloadTooLargeException}.
+ * <p>
+ * The nesting depth, and the length of the strings and arrays of JSON bodies are checked by a streaming parser,
+ * which stops at the first value over a limit. The nesting depth and the length of the texts and attribute values
+ * of XML bodies are checked the same way, elements containing others counting as levels like objects do.
+ * Such bodies are rejected with a {@link BadRequestException}.
+ * <p>
+ * Operations can override the limits of the validator with the {@value #MAX_BODY_SIZE_EXTENSION},
+ * {@value #MAX_DEPTH_EXTENSION}, {@value #MAX_STRING_LENGTH_EXTENSION} and {@value #MAX_ARRAY_LENGTH_EXTENSION}
+ * extensions. Limits are immutable, {@code with} methods return a copy.
+ */
+public final class PayloadLimits {
+    /**
+     * Nothing is limited, the default.
+     */
+    public static final PayloadLimits NONE = new PayloadLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    static final String MAX_BODY_SIZE_EXTENSION = "x-camelx-max-body-size";
+    static final String MAX_DEPTH_EXTENSION = "x-camelx-max-depth";
+    static final String MAX_STRING_LENGTH_EXTENSION = "x-camelx-max-string-length";
+    static final String MAX_ARRAY_LENGTH_EXTENSION = "x-camelx-max-array-length";
+
+    private static final String ERROR_TYPE = "RequestValidationError";
+
+    private final long maxBodySize;
+    private final int maxDepth;
+    private final int maxStringLength;
+    private final int maxArrayLength;
+
+    private PayloadLimits(long maxBodySize, int maxDepth, int maxStringLength, int maxArrayLength) {
+        this.maxBodySize = maxBodySize;
+        this.maxDepth = maxDepth;
+        this.maxStringLength = maxStringLength;
+        this.maxArrayLength = maxArrayLength;
+    }
+
+    /**
+     * @param maxBodySize the maximum size of the body, in bytes, or characters for String bodies
+     * @return a copy of these limits with the given size
+     */
+    public PayloadLimits withMaxBodySize(long maxBodySize) {
+        return new PayloadLimits(positive(maxBodySize), maxDepth, maxStringLength, maxArrayLength);
+    }
+
+    /**
+     * @param maxDepth the maximum nesting depth of objects and arrays, 1 for a flat object
+     * @return a copy of these limits with the given depth
+     */
+    public PayloadLimits withMaxDepth(int maxDepth) {
+        return new PayloadLimits(maxBodySize, (int) positive(maxDepth), maxStringLength, maxArrayLength);
+    }
+
+    /**
+     * @param maxStringLength the maximum length of strings, property names included
+     * @return a copy of these limits with the given length
+     */
+    public PayloadLimits withMaxStringLength(int maxStringLength) {
+        return new PayloadLimits(maxBodySize, maxDepth, (int) positive(maxStringLength), maxArrayLength);
+    }
+
+    /**
+     * @param maxArrayLength the maximum number of items of arrays
+     * @return a copy of these limits with the given length
+     */
+    public PayloadLimits withMaxArrayLength(int maxArrayLength) {
+        return new PayloadLimits(maxBodySize, maxDepth, maxStringLength, (int) positive(maxArrayLength));
+    }
+
+    private static long positive(long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        return limit;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    public int getMaxArrayLength() {
+        return maxArrayLength;
+    }
+
+    /**
+     * @param extensions the extensions of an operation, or {@code null}
+     * @return these limits, overridden by the extensions of the operation
+     */
+    PayloadLimits overriddenBy(Map<String, Object> extensions) {
+        if (extensions == null) return this;
+
+        final long bodySize = limitOf(extensions, MAX_BODY_SIZE_EXTENSION, maxBodySize);
+        final int depth = (int) limitOf(extensions, MAX_DEPTH_EXTENSION, maxDepth);
+        final int stringLength = (int) limitOf(extensions, MAX_STRING_LENGTH_EXTENSION, maxStringLength);
+        final int arrayLength = (int) limitOf(extensions, MAX_ARRAY_LENGTH_EXTENSION, maxArrayLength);
+        if (bodySize == maxBodySize && depth == maxDepth && stringLength == maxStringLength && arrayLength == maxArrayLength) {
+            return this;
+        }
+        return new PayloadLimits(bodySize, depth, stringLength, arrayLength);
+    }
+
+    private static long limitOf(Map<String, Object> extensions, String name, long defaultLimit) {
+        final Object limit = extensions.get(name);
+        if (limit instanceof Number) return ((Number) limit).longValue();
+        if (limit instanceof String) {
+            try {
+                return Long.parseLong(((String) limit).trim());
+            } catch (NumberFormatException e) {
+                // ignored, like other malformed extensions
+            }
+        }
+        return defaultLimit;
+    }
+
+    /**
+     * Checks the body of the request against the limits, before it's read by the validator.
+     * Plain input streams are replaced by a {@link StreamCache}, so they can be measured and read again.
+     *
+     * @param exchange    the exchange of the request
+     * @param contentType the content type of the request, or {@code null}
+     * @throws PayloadTooLargeException if the body is larger than the maximum size
+     * @throws BadRequestException      if the body is nested too deeply, or has a string or array too long
+     */
+    void check(Exchange exchange, String contentType) throws PayloadTooLargeException, BadRequestException {
+        final boolean checksStructure = maxDepth != Integer.MAX_VALUE || maxStringLength != Integer.MAX_VALUE
+                || maxArrayLength != Integer.MAX_VALUE;
+        if (maxBodySize == Long.MAX_VALUE && !checksStructure) return;
+
+        final Message message = exchange.getMessage();
+        final long length = AsyncOffload.bodyLength(message);
+        if (length > maxBodySize) {
+            throw tooLarge(length);
+        }
+
+        final boolean json = checksStructure && isJson(contentType);
+        final boolean xml = checksStructure && !json && isXml(contentType);
+        if ((json || xml || length == -1 && maxBodySize != Long.MAX_VALUE)
+                && message.getBody() instanceof InputStream && !(message.getBody() instanceof StreamCache)) {
+            message.setBody(cache(exchange, message.getBody(InputStream.class)));
+        }
+        if (xml) {
+            checkXml(exchange, message.getBody());
+            return;
+        }
+        if (!json) return;
+
+        final Object body = message.getBody();
+        try {
+            if (body instanceof String) {
+                checkStructure(TreeUtil.json.getFactory().createParser((String) body));
+            } else if (body instanceof byte[]) {
+                checkStructure(TreeUtil.json.getFactory().createParser((byte[]) body));
+            } else if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+                InputStream in = exchange.getContext().getTypeConverter().convertTo(InputStream.class, exchange, body);
+                try {
+                    // the stream belongs to the message, it's read again by the validator
+                    checkStructure(TreeUtil.json.getFactory().createParser(in).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE));
+                } finally {
+                    ((StreamCache) body).reset();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // malformed bodies are reported by the validator
+        } catch (IOException e) {
+            throw new BadRequestException(e, OperationResult.MessageBuilder.error(ERROR_TYPE, "Unreadable body.")
+                    .withDiagnostics(e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Caches a stream of unknown size with the stream caching settings of the context, up to the maximum size.
+     */
+    private StreamCache cache(Exchange exchange, InputStream in) throws PayloadTooLargeException, BadRequestException {
+        final byte[] buffer = new byte[IOHelper.DEFAULT_BUFFER_SIZE];
+        long length = 0;
+        try (CachedOutputStream out = new CachedOutputStream(exchange)) {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                length += read;
+                if (length > maxBodySize) {
+                    throw tooLarge(length);
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.newStreamCache();
+        } catch (IOException e) {
+            throw new BadRequestException(e, OperationResult.MessageBuilder.error(ERROR_TYPE, "Unreadable body.")
+                    .withDiagnostics(e.getMessage())
+                    .build());
+        } finally {
+            IOHelper.close(in);
+        }
+    }
+
+    private void checkStructure(JsonParser parser) throws IOException, BadRequestException {
+        try (JsonParser p = parser) {
+            // the item counts of the enclosing arrays by depth, -1 for objects
+            int[] itemCounts = new int[16];
+            int depth = 0;
+            for (JsonToken token = p.nextToken(); token != null; token = p.nextToken()) {
+                if (depth > 0 && itemCounts[depth] >= 0 && !token.isStructEnd() && ++itemCounts[depth] > maxArrayLength) {
+                    throw invalid(p, "Array is longer than " + maxArrayLength + " items");
+                }
+
+                switch (token) {
+                    case START_OBJECT:
+                    case START_ARRAY:
+                        if (++depth > maxDepth) {
+                            throw invalid(p, "Body is nested deeper than " + maxDepth + " levels");
+                        }
+                        if (depth == itemCounts.length) {
+                            itemCounts = Arrays.copyOf(itemCounts, depth * 2);
+                        }
+                        itemCounts[depth] = token == JsonToken.START_ARRAY ? 0 : -1;
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        depth--;
+                        break;
+                    case FIELD_NAME:
+                    case VALUE_STRING:
+                        if (p.getTextLength() > maxStringLength) {
+                            throw invalid(p, "String is longer than " + maxStringLength + " characters");
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private void checkXml(Exchange exchange, Object body) throws BadRequestException {
+        try {
+            if (body instanceof String) {
+                checkStructure(XmlStreamConverter.XML_INPUT_FACTORY.createXMLStreamReader(new StringReader((String) body)));
+            } else if (body instanceof byte[]) {
+                checkStructure(XmlStreamConverter.XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream((byte[]) body)));
+            } else if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+                InputStream in = exchange.getContext().getTypeConverter().convertTo(InputStream.class, exchange, body);
+                try {
+                    // closing the reader leaves the stream open, it's read again by the validator
+                    checkStructure(XmlStreamConverter.XML_INPUT_FACTORY.createXMLStreamReader(in));
+                } finally {
+                    ((StreamCache) body).reset();
+                }
+            }
+        } catch (XMLStreamException e) {
+            // malformed bodies are reported by the validator
+        }
+    }
+
+    private void checkStructure(XMLStreamReader reader) throws XMLStreamException, BadRequestException {
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        // the parent of the element is at depth, like the object holding a field
+                        if (++depth - 1 > maxDepth) {
+                            throw invalid(reader.getLocation(), "Body is nested deeper than " + maxDepth + " levels");
+                        }
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            if (reader.getAttributeValue(i).length() > maxStringLength) {
+                                throw invalid(reader.getLocation(), "String is longer than " + maxStringLength + " characters");
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (reader.getTextLength() > maxStringLength) {
+                            throw invalid(reader.getLocation(), "String is longer than " + maxStringLength + " characters");
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isXml(String contentType) {
+        if (contentType == null) return false;
+
+        final int paramsIdx = contentType.indexOf(';');
+        final String type = (paramsIdx == -1 ? contentType : contentType.substring(0, paramsIdx)).trim().toLowerCase();
+        return type.endsWith("xml");
+    }
+
+    private static boolean isJson(String contentType) {
+        if (contentType == null) return false;
+
+        final int paramsIdx = contentType.indexOf(';');
+        final String type = (paramsIdx == -1 ? contentType : contentType.substring(0, paramsIdx)).trim().toLowerCase();
+        return type.endsWith("json");
+    }
+
+    private PayloadTooLargeException tooLarge(long length) {
+        return new PayloadTooLargeException(OperationResult.MessageBuilder.error(ERROR_TYPE, "Payload too large.")
+                .withDiagnostics(String.format("Body of at least %d bytes exceeds the maximum of %d bytes", length, maxBodySize))
+                .build());
+    }
+
+    private static BadRequestException invalid(JsonParser parser, String diagnostics) {
+        return invalid(parser.getCurrentLocation().getLineNr(), parser.getCurrentLocation().getColumnNr(), diagnostics);
+    }
+
+    private static BadRequestException invalid(Location location, String diagnostics) {
+        return invalid(location.getLineNumber(), location.getColumnNumber(), diagnostics);
+    }
+
+    private static BadRequestException invalid(int line, int column, String diagnostics) {
+        return new BadRequestException(OperationResult.MessageBuilder.error(ERROR_TYPE, "Payload exceeds limits.")
+                .withDiagnostics(String.format("line %d, column %d: %s", line, column, diagnostics))
+                .build());
+    }
+}
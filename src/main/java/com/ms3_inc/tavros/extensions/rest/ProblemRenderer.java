@@ -0,0 +1,494 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.ms3_inc.tavros.extensions.rest.MediaTypeUtils.CompactMediaType;
+import com.ms3_inc.tavros.extensions.rest.exception.RestException;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Renders the {@link RestException} handled by an {@code onException} clause as an RFC 7807 problem,
+ * in {@code application/problem+json}, or {@code application/problem+xml} when the client prefers XML.
+ * <pre>
+ * onException(RestException.class)
+ *     .handled(true)
+ *     .process(new ProblemRenderer());
+ * </pre>
+ * The {@link OperationResult.Message} of the exception becomes the problem: its type the {@code type}, resolved
+ * against the {@link #withTypeBaseUri(String) base URI}, its details the {@code title}, its diagnostics the
+ * {@code detail}, and its code, level and {@link OperationResult.Diagnostic errors} extension members. The status is
+ * the {@link RestException#httpStatusCode() status of the exception}, 500 when it has none. Other exceptions
+ * are rendered as a generic 500 problem, so their messages don't leak to the client.
+ * <p>
+ * The body is written as UTF-8 bytes straight from the message, the static parts of the document being encoded
+ * once. The bytes of recurring problems, e.g. the same invalid request sent again, are cached up to
+ * {@link #withCacheCapacity(int) a number of problems}, the least recently used being evicted, and set as the body
+ * as they are: they must not be modified.
+ */
+public class ProblemRenderer implements Processor {
+    public static final String PROBLEM_JSON = "application/problem+json";
+    public static final String PROBLEM_XML = "application/problem+xml";
+
+    /**
+     * The default number of rendered problems cached.
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 256;
+
+    private static final int MAX_CACHED_LENGTH = 4096;
+    private static final int MAX_CAUSE_DEPTH = 8;
+
+    private static final OperationResult.Message INTERNAL_ERROR =
+            OperationResult.MessageBuilder.error("InternalServerError", "Internal server error.").build();
+
+    private static final byte[] JSON_TYPE = ascii("{\"type\":\"");
+    private static final byte[] JSON_TITLE = ascii("\",\"title\":\"");
+    private static final byte[] JSON_STATUS = ascii("\",\"status\":");
+    private static final byte[] JSON_DETAIL = ascii(",\"detail\":\"");
+    private static final byte[] JSON_CODE = ascii(",\"code\":\"");
+    private static final byte[] JSON_LEVEL = ascii(",\"level\":\"");
+    private static final byte[] JSON_ERRORS = ascii(",\"errors\":[");
+    private static final byte[] JSON_ERROR_CODE = ascii("{\"code\":");
+    private static final byte[] JSON_ERROR_LOCATION = ascii(",\"location\":");
+    private static final byte[] JSON_ERROR_MESSAGE = ascii(",\"message\":");
+    private static final byte[] JSON_NULL = ascii("null");
+
+    private static final byte[] XML_TYPE = ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?><problem xmlns=\"urn:ietf:rfc:7807\"><type>");
+    private static final byte[] XML_TITLE = ascii("</type><title>");
+    private static final byte[] XML_STATUS = ascii("</title><status>");
+    private static final byte[] XML_STATUS_END = ascii("</status>");
+    private static final byte[] XML_DETAIL = ascii("<detail>");
+    private static final byte[] XML_CODE = ascii("<code>");
+    private static final byte[] XML_LEVEL = ascii("<level>");
+    private static final byte[] XML_ERRORS = ascii("<errors>");
+    private static final byte[] XML_ERROR = ascii("<error>");
+    private static final byte[] XML_ERROR_LOCATION = ascii("<location>");
+    private static final byte[] XML_ERROR_MESSAGE = ascii("<message>");
+    private static final byte[] XML_END = ascii("</problem>");
+
+    private static final CompactMediaType TEXT_XML = CompactMediaType.parse("text/xml");
+
+    private static final Map<OperationResult.Level, byte[]> LEVELS = new EnumMap<>(OperationResult.Level.class);
+
+    static {
+        for (OperationResult.Level level : OperationResult.Level.values()) {
+            LEVELS.put(level, ascii(level.name()));
+        }
+    }
+
+    private byte[] jsonTypeBaseUri = new byte[0];
+    private byte[] xmlTypeBaseUri = new byte[0];
+    private int cacheCapacity = DEFAULT_CACHE_CAPACITY;
+    // the least recently used problem is evicted once the capacity is reached
+    private final Map<Key, byte[]> cache = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+            return size() > cacheCapacity;
+        }
+    };
+
+    /**
+     * Sets the URI the types of the messages are resolved against, e.g. {@code https://example.com/problems/}
+     * renders the {@code RequestValidationError} type as {@code https://example.com/problems/RequestValidationError}.
+     *
+     * @param typeBaseUri the base URI, none by default, the types being relative references then
+     * @return this renderer
+     */
+    public ProblemRenderer withTypeBaseUri(String typeBaseUri) {
+        final Buffer json = new Buffer(64);
+        json.writeUtf8(typeBaseUri, true, false);
+        final Buffer xml = new Buffer(64);
+        xml.writeUtf8(typeBaseUri, false, true);
+        this.jsonTypeBaseUri = json.toByteArray();
+        this.xmlTypeBaseUri = xml.toByteArray();
+        synchronized (cache) {
+            cache.clear();
+        }
+        return this;
+    }
+
+    /**
+     * @param cacheCapacity the number of rendered problems cached, 0 to render each one,
+     *                      {@value #DEFAULT_CACHE_CAPACITY} by default
+     * @return this renderer
+     */
+    public ProblemRenderer withCacheCapacity(int cacheCapacity) {
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("The cache capacity can't be negative");
+        }
+        synchronized (cache) {
+            this.cacheCapacity = cacheCapacity;
+            cache.clear();
+        }
+        return this;
+    }
+
+    @Override
+    public void process(Exchange exchange) {
+        Throwable exception = exchange.getException();
+        if (exception == null) {
+            exception = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+        }
+
+        final RestException restException = restExceptionOf(exception);
+        final OperationResult.Message message = restException != null ? restException.getOperationResultMessage() : null;
+        final int status = restException != null ? restException.httpStatusCode().orElse(500) : 500;
+        final boolean xml = prefersXml(exchange.getMessage().getHeader("Accept", String.class));
+
+        final Message response = exchange.getMessage();
+        response.setHeader(Exchange.HTTP_RESPONSE_CODE, status);
+        response.setHeader(Exchange.CONTENT_TYPE, xml ? PROBLEM_XML : PROBLEM_JSON);
+        response.setBody(render(message != null ? message : INTERNAL_ERROR, status, xml));
+    }
+
+    private static RestException restExceptionOf(Throwable exception) {
+        Throwable cause = exception;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++, cause = cause.getCause()) {
+            if (cause instanceof RestException) return (RestException) cause;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the first media type of the {@code Accept} header naming JSON or XML is XML
+     */
+    private static boolean prefersXml(String accept) {
+        if (accept == null) return false;
+
+        int start = 0;
+        while (start < accept.length()) {
+            int end = accept.indexOf(',', start);
+            if (end == -1) end = accept.length();
+
+            final CompactMediaType mediaType = CompactMediaType.parse(CharBuffer.wrap(accept, start, end));
+            if (mediaType != null && !mediaType.isWildcardSubtype()) {
+                if (isXml(mediaType)) return true;
+                if (MediaTypeUtils.includes(CompactMediaType.APPLICATION_ANY_JSON, mediaType)
+                        || MediaTypeUtils.includes(CompactMediaType.APPLICATION_JSON, mediaType)) {
+                    return false;
+                }
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean isXml(CompactMediaType mediaType) {
+        return MediaTypeUtils.includes(CompactMediaType.APPLICATION_ANY_XML, mediaType)
+                || MediaTypeUtils.includes(CompactMediaType.APPLICATION_XML, mediaType)
+                || MediaTypeUtils.includes(TEXT_XML, mediaType);
+    }
+
+    /**
+     * @return the problem as UTF-8 bytes, cached if it may recur
+     */
+    byte[] render(OperationResult.Message message, int status, boolean xml) {
+        if (cacheCapacity == 0) {
+            return xml ? renderXml(message, status) : renderJson(message, status);
+        }
+
+        final Key key = new Key(message, status, xml);
+        byte[] rendered;
+        synchronized (cache) {
+            rendered = cache.get(key);
+        }
+        if (rendered == null) {
+            rendered = xml ? renderXml(message, status) : renderJson(message, status);
+            if (rendered.length <= MAX_CACHED_LENGTH) {
+                synchronized (cache) {
+                    cache.put(key, rendered);
+                }
+            }
+        }
+        return rendered;
+    }
+
+    private byte[] renderJson(OperationResult.Message message, int status) {
+        final Buffer buffer = new Buffer(256);
+        buffer.write(JSON_TYPE);
+        buffer.write(jsonTypeBaseUri);
+        buffer.writeUtf8(message.type, true, false);
+        buffer.write(JSON_TITLE);
+        buffer.writeUtf8(message.details, true, false);
+        buffer.write(JSON_STATUS);
+        buffer.writeInt(status);
+        if (message.diagnostics != null) {
+            buffer.write(JSON_DETAIL);
+            buffer.writeUtf8(message.diagnostics, true, false);
+            buffer.write('"');
+        }
+        if (message.code != null) {
+            buffer.write(JSON_CODE);
+            buffer.writeUtf8(message.code, true, false);
+            buffer.write('"');
+        }
+        if (message.level != null) {
+            buffer.write(JSON_LEVEL);
+            buffer.write(LEVELS.get(message.level));
+            buffer.write('"');
+        }
+        if (!message.errors.isEmpty()) {
+            buffer.write(JSON_ERRORS);
+            for (int i = 0; i < message.errors.size(); i++) {
+                final OperationResult.Diagnostic error = message.errors.get(i);
+                if (i > 0) buffer.write(',');
+                buffer.write(JSON_ERROR_CODE);
+                writeJsonString(buffer, error.code);
+                buffer.write(JSON_ERROR_LOCATION);
+                writeJsonString(buffer, error.location);
+                buffer.write(JSON_ERROR_MESSAGE);
+                writeJsonString(buffer, error.message);
+                buffer.write('}');
+            }
+            buffer.write(']');
+        }
+        buffer.write('}');
+        return buffer.toByteArray();
+    }
+
+    private static void writeJsonString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.write(JSON_NULL);
+        } else {
+            buffer.write('"');
+            buffer.writeUtf8(value, true, false);
+            buffer.write('"');
+        }
+    }
+
+    private byte[] renderXml(OperationResult.Message message, int status) {
+        final Buffer buffer = new Buffer(256);
+        buffer.write(XML_TYPE);
+        buffer.write(xmlTypeBaseUri);
+        buffer.writeUtf8(message.type, false, true);
+        buffer.write(XML_TITLE);
+        buffer.writeUtf8(message.details, false, true);
+        buffer.write(XML_STATUS);
+        buffer.writeInt(status);
+        buffer.write(XML_STATUS_END);
+        writeXmlElement(buffer, XML_DETAIL, message.diagnostics);
+        writeXmlElement(buffer, XML_CODE, message.code);
+        if (message.level != null) {
+            buffer.write(XML_LEVEL);
+            buffer.write(LEVELS.get(message.level));
+            buffer.writeEnd(XML_LEVEL);
+        }
+        if (!message.errors.isEmpty()) {
+            buffer.write(XML_ERRORS);
+            for (OperationResult.Diagnostic error : message.errors) {
+                buffer.write(XML_ERROR);
+                writeXmlElement(buffer, XML_CODE, error.code);
+                writeXmlElement(buffer, XML_ERROR_LOCATION, error.location);
+                writeXmlElement(buffer, XML_ERROR_MESSAGE, error.message);
+                buffer.writeEnd(XML_ERROR);
+            }
+            buffer.writeEnd(XML_ERRORS);
+        }
+        buffer.write(XML_END);
+        return buffer.toByteArray();
+    }
+
+    private static void writeXmlElement(Buffer buffer, byte[] start, String value) {
+        if (value == null) return;
+
+        buffer.write(start);
+        buffer.writeUtf8(value, false, true);
+        buffer.writeEnd(start);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A growable byte array encoding and escaping characters as it writes them.
+     */
+    private static final class Buffer {
+        private static final byte[] HEX = ascii("0123456789abcdef");
+        private static final byte[] UNICODE_ESCAPE = ascii("\\u00");
+        private static final byte[] AMP = ascii("&amp;");
+        private static final byte[] LT = ascii("&lt;");
+        private static final byte[] GT = ascii("&gt;");
+
+        private byte[] bytes;
+        private int count;
+
+        private Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (count + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + length));
+            }
+        }
+
+        private void write(int b) {
+            ensure(1);
+            bytes[count++] = (byte) b;
+        }
+
+        private void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, count, b.length);
+            count += b.length;
+        }
+
+        /**
+         * Writes the end tag of the element whose start tag is given, e.g. {@code </code>} for {@code <code>}.
+         */
+        private void writeEnd(byte[] startTag) {
+            ensure(startTag.length + 1);
+            bytes[count++] = '<';
+            bytes[count++] = '/';
+            System.arraycopy(startTag, 1, bytes, count, startTag.length - 1);
+            count += startTag.length - 1;
+        }
+
+        private void writeInt(int value) {
+            if (value < 0) {
+                write('-');
+                value = -value;
+            }
+            int divisor = 1;
+            while (value / divisor >= 10) divisor *= 10;
+            for (; divisor > 0; divisor /= 10) {
+                write('0' + value / divisor % 10);
+            }
+        }
+
+        /**
+         * Writes the characters as UTF-8, escaped for a JSON string or XML text.
+         */
+        private void writeUtf8(String value, boolean json, boolean xml) {
+            if (value == null) return;
+
+            ensure(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    writeAscii(c, json, xml);
+                } else if (c < 0x800) {
+                    ensure(2);
+                    bytes[count++] = (byte) (0xc0 | c >> 6);
+                    bytes[count++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensure(4);
+                    bytes[count++] = (byte) (0xf0 | codePoint >> 18);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    bytes[count++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    bytes[count++] = (byte) (0x80 | codePoint & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired, not encodable
+                    write('?');
+                } else {
+                    ensure(3);
+                    bytes[count++] = (byte) (0xe0 | c >> 12);
+                    bytes[count++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    bytes[count++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+        }
+
+        private void writeAscii(char c, boolean json, boolean xml) {
+            if (json && (c == '"' || c == '\\')) {
+                write('\\');
+                write(c);
+            } else if (json && c < 0x20) {
+                write(UNICODE_ESCAPE);
+                write(HEX[c >> 4]);
+                write(HEX[c & 0xf]);
+            } else if (xml && c == '&') {
+                write(AMP);
+            } else if (xml && c == '<') {
+                write(LT);
+            } else if (xml && c == '>') {
+                write(GT);
+            } else if (xml && c < 0x20 && c != '\n' && c != '\r' && c != '\t') {
+                // not allowed in XML 1.0
+                write('?');
+            } else {
+                write(c);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, count);
+        }
+    }
+
+    /**
+     * A problem by the content of its message, messages being created for each exception.
+     */
+    private static final class Key {
+        private final OperationResult.Message message;
+        private final int status;
+        private final boolean xml;
+        private final int hash;
+
+        private Key(OperationResult.Message message, int status, boolean xml) {
+            this.message = message;
+            this.status = status;
+            this.xml = xml;
+            this.hash = Objects.hash(message.level, message.type, message.code, message.details, message.diagnostics,
+                    message.errors.size(), status, xml);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            final Key other = (Key) o;
+            final OperationResult.Message m = other.message;
+            return hash == other.hash && status == other.status && xml == other.xml
+                    && message.level == m.level && Objects.equals(message.type, m.type)
+                    && Objects.equals(message.code, m.code) && Objects.equals(message.details, m.details)
+                    && Objects.equals(message.diagnostics, m.diagnostics) && errorsEqual(message.errors, m.errors);
+        }
+
+        private static boolean errorsEqual(List<OperationResult.Diagnostic> one, List<OperationResult.Diagnostic> other) {
+            if (one.size() != other.size()) return false;
+
+            for (int i = 0; i < one.size(); i++) {
+                final OperationResult.Diagnostic a = one.get(i);
+                final OperationResult.Diagnostic b = other.get(i);
+                if (!Objects.equals(a.code, b.code) || !Objects.equals(a.location, b.location)
+                        || !Objects.equals(a.message, b.message)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
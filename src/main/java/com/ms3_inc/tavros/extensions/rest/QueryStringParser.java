@@ -0,0 +1,122 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a raw query string into its parameters, in a single pass over the characters.
+ * <p>
+ * Names and values are percent-decoded as UTF-8 and {@code +} is decoded as a space, like HTML forms
+ * and servlet containers do. Escapes that aren't valid are kept as they are. Repeated names collect
+ * their values in order, and names without {@code =} get a {@code null} value.
+ * <p>
+ * Values are not split according to the {@code style} and {@code explode} of their parameter:
+ * {@code a=1,2} is a single value {@code "1,2"}, and {@code a[b]=1} is a parameter named {@code a[b]},
+ * so the validator can apply the rules of the specification to the decoded values.
+ */
+public final class QueryStringParser {
+    private QueryStringParser() {
+    }
+
+    /**
+     * @param query the raw query string, without the leading {@code ?}
+     * @return the values by parameter name, in order of appearance
+     */
+    public static Map<String, List<String>> parse(CharSequence query) {
+        if (query == null || query.length() == 0) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, List<String>> parameters = new LinkedHashMap<>();
+        final int length = query.length();
+        int start = 0;
+
+        while (start < length) {
+            int end = indexOf(query, '&', start, length);
+            if (end > start) {
+                int eqIdx = indexOf(query, '=', start, end);
+                String name = decode(query, start, eqIdx == end ? end : eqIdx);
+                String value = eqIdx == end ? null : decode(query, eqIdx + 1, end);
+
+                List<String> values = parameters.get(name);
+                if (values == null) {
+                    parameters.put(name, values = new ArrayList<>(1));
+                }
+                values.add(value);
+            }
+            start = end + 1;
+        }
+
+        return parameters;
+    }
+
+    private static int indexOf(CharSequence query, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (query.charAt(i) == c) return i;
+        }
+        return end;
+    }
+
+    private static String decode(CharSequence query, int start, int end) {
+        int i = start;
+        while (i < end && query.charAt(i) != '%' && query.charAt(i) != '+') {
+            i++;
+        }
+        if (i == end) {
+            // nothing to decode, the common case
+            return query.subSequence(start, end).toString();
+        }
+
+        final StringBuilder decoded = new StringBuilder(end - start).append(query, start, i);
+        byte[] bytes = null;
+
+        while (i < end) {
+            char c = query.charAt(i);
+
+            if (c == '+') {
+                decoded.append(' ');
+                i++;
+            } else if (c == '%' && isEscape(query, i, end)) {
+                // consecutive escapes form the UTF-8 sequence of a character
+                if (bytes == null) bytes = new byte[(end - i) / 3];
+                int count = 0;
+                while (i < end && query.charAt(i) == '%' && isEscape(query, i, end)) {
+                    bytes[count++] = (byte) ((Character.digit(query.charAt(i + 1), 16) << 4) + Character.digit(query.charAt(i + 2), 16));
+                    i += 3;
+                }
+                decoded.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+            } else {
+                decoded.append(c);
+                i++;
+            }
+        }
+
+        return decoded.toString();
+    }
+
+    private static boolean isEscape(CharSequence query, int i, int end) {
+        return i + 2 < end
+                && Character.digit(query.charAt(i + 1), 16) != -1
+                && Character.digit(query.charAt(i + 2), 16) != -1;
+    }
+}
@@ -0,0 +1,41 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A validator whose specification can be replaced while it's validating requests.
+ *
+ * @see SpecReloader
+ */
+public interface ReloadableValidator {
+
+    /**
+     * Compiles the specification again from its location, in the background, and starts using it once compiled.
+     * Requests being validated finish with the previous version.
+     *
+     * @return completed once the new version is used, or completed exceptionally if it can't be compiled,
+     * the previous version being kept
+     */
+    CompletableFuture<Void> reload();
+
+    /**
+     * @return the location the specification is reloaded from
+     */
+    String getSpecLocation();
+}
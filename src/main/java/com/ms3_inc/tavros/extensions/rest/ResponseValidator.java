@@ -0,0 +1,346 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.MessageHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Validates a sample of the responses of a route against the specification of its request validator,
+ * to detect backends drifting from the contract without paying for validating every response.
+ * <pre>
+ * OpenApi4jValidator validator = new OpenApi4jValidator("api.yaml");
+ * ValidationStatistics responseStatistics = new ValidationStatistics().registerMBean("api-responses");
+ *
+ * from("platform-http:/greeting")
+ *     .process(validator)
+ *     .to("http://backend/greeting")
+ *     .process(new ResponseValidator(validator).withSamplingRate(0.05).withMetrics(responseStatistics));
+ * </pre>
+ * The processor only decides whether to sample the response and copies it, the validation runs on a
+ * background thread. Violations are reported to the {@link #withMetrics(ValidationMetrics) metrics}, with the
+ * {@link ValidationMetrics.Stage#VALIDATION} stage, and never fail the exchange.
+ * <p>
+ * The operation of the response is found from the {@code CamelHttpMethod} and {@code CamelHttpUri} headers of
+ * the request, so the processor must run before they're removed or replaced. The status is read from the
+ * {@code CamelHttpResponseCode} header, 200 when it's missing. Plain input stream bodies of sampled responses
+ * are cached with the stream caching strategy of the context, so they can still be read.
+ * The specification follows the request validator when it's {@link ReloadableValidator#reload() reloaded}.
+ */
+public class ResponseValidator extends AsyncProcessorSupport {
+    /**
+     * The default rate of the responses validated.
+     */
+    public static final double DEFAULT_SAMPLING_RATE = 0.01;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseValidator.class);
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final BiFunction<String, String, ResponseContract> contracts;
+    private final Map<String, Double> samplingRates = new ConcurrentHashMap<>();
+    private volatile double samplingRate = DEFAULT_SAMPLING_RATE;
+    private Executor executor;
+    private ThreadPoolExecutor defaultExecutor;
+    private ValidationMetrics metrics;
+    private final LongAdder droppedCount = new LongAdder();
+
+    /**
+     * @param requestValidator the validator of the requests, whose specification the responses are validated against
+     */
+    public ResponseValidator(OpenApi4jValidator requestValidator) {
+        this(requestValidator::responseContractOf);
+    }
+
+    /**
+     * @param requestValidator the validator of the requests, whose specification the responses are validated against
+     */
+    public ResponseValidator(SwaggerRequestValidator requestValidator) {
+        this(requestValidator::responseContractOf);
+    }
+
+    private ResponseValidator(BiFunction<String, String, ResponseContract> contracts) {
+        this.contracts = contracts;
+    }
+
+    /**
+     * Sets the rate of the responses validated, for the operations without a rate of their own.
+     *
+     * @param samplingRate from 0, none, to 1, every response, {@value #DEFAULT_SAMPLING_RATE} by default
+     * @return this validator
+     * @throws IllegalArgumentException if the rate isn't between 0 and 1
+     */
+    public ResponseValidator withSamplingRate(double samplingRate) {
+        this.samplingRate = checkRate(samplingRate);
+        return this;
+    }
+
+    /**
+     * Sets the rate of the responses validated for an operation, e.g. to validate every response of a
+     * rarely called operation, or none of an operation returning large bodies.
+     *
+     * @param operationId  the operationId of the operation, or its method and templated path if it doesn't have one,
+     *                     as reported to the {@link ValidationMetrics metrics}
+     * @param samplingRate from 0, none, to 1, every response
+     * @return this validator
+     * @throws IllegalArgumentException if the rate isn't between 0 and 1
+     */
+    public ResponseValidator withSamplingRate(String operationId, double samplingRate) {
+        samplingRates.put(operationId, checkRate(samplingRate));
+        return this;
+    }
+
+    /**
+     * Validates the sampled responses on the given executor. By default, they're validated by a single
+     * background thread with a queue of {@value #DEFAULT_QUEUE_SIZE} responses. Samples the executor rejects
+     * are dropped, see {@link #getDroppedCount()}.
+     *
+     * @param executor the executor, or {@code null} for the default one
+     * @return this validator
+     */
+    public ResponseValidator withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Reports the outcome and the latency of the validation of the sampled responses. Use distinct metrics for
+     * requests and responses, e.g. two {@link ValidationStatistics} registered under different names, as they're
+     * reported for the same operations.
+     *
+     * @param metrics the metrics, or {@code null} to measure nothing, the default
+     * @return this validator
+     */
+    public ResponseValidator withMetrics(ValidationMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return the number of sampled responses dropped because the executor rejected them
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private static double checkRate(double samplingRate) {
+        if (!(samplingRate >= 0 && samplingRate <= 1)) {
+            throw new IllegalArgumentException("The sampling rate must be between 0 and 1: " + samplingRate);
+        }
+        return samplingRate;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (executor == null) {
+            defaultExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(DEFAULT_QUEUE_SIZE),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "ResponseValidator");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (defaultExecutor != null) {
+            // the samples queued are dropped
+            defaultExecutor.shutdownNow();
+            defaultExecutor = null;
+        }
+        super.doStop();
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            sample(exchange);
+        } catch (RuntimeException e) {
+            // the reply is never affected by its validation
+            LOGGER.debug("Skipping response validation", e);
+        } finally {
+            callback.done(true);
+        }
+        return true;
+    }
+
+    private void sample(Exchange exchange) {
+        if (samplingRate == 0 && samplingRates.isEmpty()) return;
+
+        final Message message = exchange.getMessage();
+        final String method = message.getHeader(Exchange.HTTP_METHOD, String.class);
+        final String uri = message.getHeader(Exchange.HTTP_URI, String.class);
+        if (method == null || uri == null) {
+            LOGGER.debug("Skipping response validation, the request method or URI is unknown");
+            return;
+        }
+
+        final ResponseContract contract = contracts.apply(method, uri);
+        if (contract == null) return;
+
+        final double rate = samplingRates.getOrDefault(contract.getOperationId(), samplingRate);
+        if (rate == 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) return;
+
+        // copied on the calling thread, the message may change once the exchange goes on
+        final CapturedResponse response = CapturedResponse.of(exchange);
+        final Executor executor = this.executor != null ? this.executor : defaultExecutor;
+        try {
+            if (executor == null) {
+                throw new RejectedExecutionException("Not started");
+            }
+            executor.execute(() -> validate(contract, response));
+        } catch (RejectedExecutionException e) {
+            droppedCount.increment();
+            LOGGER.debug("Dropping the response sampled for {}, the executor rejected it", contract.getOperationId());
+        }
+    }
+
+    private void validate(ResponseContract contract, CapturedResponse response) {
+        final ValidationMetrics metrics = this.metrics;
+        try {
+            long start = System.nanoTime();
+            Collection<String> errorCodes = contract.validate(response);
+            if (metrics != null) {
+                metrics.recordStage(contract.getOperationId(), ValidationMetrics.Stage.VALIDATION, System.nanoTime() - start);
+                if (response.getBody() != null) {
+                    metrics.recordBodySize(contract.getOperationId(), response.getBody().length());
+                }
+                if (errorCodes.isEmpty()) {
+                    metrics.recordSuccess(contract.getOperationId());
+                } else {
+                    metrics.recordFailure(contract.getOperationId(), errorCodes);
+                }
+            }
+            if (!errorCodes.isEmpty()) {
+                LOGGER.debug("Response of {} with status {} failed API specification validation: {}",
+                        contract.getOperationId(), response.getStatus(), errorCodes);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to validate the response of {}", contract.getOperationId(), e);
+        }
+    }
+
+    /**
+     * The operation of a request, bound to the version of the specification it was found in.
+     */
+    interface ResponseContract {
+        /**
+         * @return the operationId of the operation, its method and templated path if it doesn't have one
+         */
+        String getOperationId();
+
+        /**
+         * @param response the response
+         * @return the distinct codes of the errors reported by the validation library, empty if the response is valid
+         */
+        Collection<String> validate(CapturedResponse response);
+    }
+
+    /**
+     * A copy of the response of an exchange, independent of the exchange.
+     */
+    static final class CapturedResponse {
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final String body;
+
+        private CapturedResponse(int status, Map<String, List<String>> headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static CapturedResponse of(Exchange exchange) {
+            final Message message = exchange.getMessage();
+            final Integer status = message.getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class);
+
+            final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String name : message.getHeaders().keySet()) {
+                if (name.startsWith("Camel")) continue;
+
+                List<String> values = HeaderValues.of(exchange, name);
+                if (values != null) {
+                    headers.put(name, values);
+                }
+            }
+            final String contentType = message.getHeader(Exchange.CONTENT_TYPE, String.class);
+            if (contentType != null) {
+                headers.put("Content-Type", Collections.singletonList(contentType));
+            }
+
+            if (message.getBody() instanceof InputStream && !(message.getBody() instanceof StreamCache)) {
+                StreamCache streamCache = exchange.getContext().getStreamCachingStrategy().cache(exchange);
+                if (streamCache != null) {
+                    message.setBody(streamCache);
+                }
+            }
+            final String body = MessageHelper.extractBodyAsString(message);
+            if (message.getBody() instanceof StreamCache) {
+                ((StreamCache) message.getBody()).reset();
+            }
+
+            return new CapturedResponse(status != null ? status : 200, Collections.unmodifiableMap(headers),
+                    body != null && !body.isEmpty() ? body : null);
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the headers, by case-insensitive name
+         */
+        Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        String getContentType() {
+            List<String> values = headers.get("Content-Type");
+            return values != null ? values.get(0) : null;
+        }
+
+        /**
+         * @return the body, or {@code null} if the response doesn't have one
+         */
+        String getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Validates a sample of the requests in the background without ever rejecting them, to measure the cost and
+ * the impact of a validator on live traffic before enforcing it, see {@link OpenApi4jValidator#withShadowMode(ShadowMode)}.
+ * <pre>
+ * ShadowMode shadowMode = new ShadowMode(0.1).withCpuBudget(0.25);
+ * from("platform-http:/greeting")
+ *     .process(new OpenApi4jValidator("api.yaml").withShadowMode(shadowMode).withMetrics(statistics))
+ * </pre>
+ * Sampled requests are copied, including their body, and validated on a background thread while the original
+ * exchange goes on untouched. The requests that would have been rejected are counted, and reported to the
+ * metrics of the validator like in enforcing mode.
+ * <p>
+ * With a {@link #withCpuBudget(double) CPU budget}, the sampling rate adapts every second: it's halved while
+ * validating uses more CPU time than the budget, and doubled back, up to the configured rate, while it uses less
+ * than half of it. A shadow mode can be shared by several validators, they then share the budget.
+ */
+public class ShadowMode {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShadowMode.class);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MINIMUM_SAMPLING_RATE = 0.0001;
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final double maximumSamplingRate;
+    private final LongSupplier ticker;
+    private final LongSupplier cpuClock;
+    private volatile double samplingRate;
+    private volatile double cpuBudget = Double.POSITIVE_INFINITY;
+    private volatile Executor executor;
+    private final LongAdder validatedCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    // CPU time spent validating since the start of the window
+    private final LongAdder windowCpuNanos = new LongAdder();
+    private volatile long windowStart;
+
+    /**
+     * @param samplingRate the rate of the requests validated, from 0, none, to 1, every request
+     * @throws IllegalArgumentException if the rate isn't between 0 and 1
+     */
+    public ShadowMode(double samplingRate) {
+        this(samplingRate, System::nanoTime, threadCpuClock());
+    }
+
+    ShadowMode(double samplingRate, LongSupplier ticker, LongSupplier cpuClock) {
+        if (!(samplingRate >= 0 && samplingRate <= 1)) {
+            throw new IllegalArgumentException("The sampling rate must be between 0 and 1: " + samplingRate);
+        }
+
+        this.maximumSamplingRate = samplingRate;
+        this.samplingRate = samplingRate;
+        this.ticker = ticker;
+        this.cpuClock = cpuClock;
+        this.windowStart = ticker.getAsLong();
+    }
+
+    /**
+     * @return the CPU time of the current thread if the JVM measures it, the elapsed time otherwise
+     */
+    private static LongSupplier threadCpuClock() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()) {
+            return threads::getCurrentThreadCpuTime;
+        }
+        return System::nanoTime;
+    }
+
+    /**
+     * Limits the CPU time spent validating, by lowering the sampling rate when it's exceeded.
+     *
+     * @param cpuBudget the fraction of a processor validation may use, e.g. 0.25 for a quarter of a core, unlimited by default
+     * @return this shadow mode
+     * @throws IllegalArgumentException if the budget isn't positive
+     */
+    public ShadowMode withCpuBudget(double cpuBudget) {
+        if (!(cpuBudget > 0)) {
+            throw new IllegalArgumentException("The CPU budget must be positive: " + cpuBudget);
+        }
+        this.cpuBudget = cpuBudget;
+        return this;
+    }
+
+    /**
+     * Validates the sampled requests on the given executor. By default, they're validated by a single background
+     * thread with a queue of {@value #DEFAULT_QUEUE_SIZE} requests. Requests the executor rejects aren't validated,
+     * see {@link #getDroppedCount()}.
+     *
+     * @param executor the executor
+     * @return this shadow mode
+     */
+    public ShadowMode withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @return the current sampling rate, lower than the configured one while the CPU budget is exceeded
+     */
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * @return the number of requests validated
+     */
+    public long getValidatedCount() {
+        return validatedCount.sum();
+    }
+
+    /**
+     * @return the number of requests validated that would have been rejected
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * @return the number of sampled requests that weren't validated because the executor rejected them
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Samples the request and, if sampled, validates a copy of it in the background.
+     *
+     * @param exchange   the exchange of the request, left untouched apart from stream bodies being cached
+     * @param validation the validation, which reports failures on the exchange it's given
+     */
+    void offer(Exchange exchange, Consumer<Exchange> validation) {
+        final double rate = samplingRate;
+        if (rate == 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) return;
+
+        final Exchange copy;
+        try {
+            copy = copyOf(exchange);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Skipping shadow validation, the request can't be copied", e);
+            return;
+        }
+
+        try {
+            executor().execute(() -> validate(copy, validation));
+        } catch (RejectedExecutionException e) {
+            droppedCount.increment();
+            LOGGER.debug("Dropping the request sampled for shadow validation, the executor rejected it");
+        }
+    }
+
+    private void validate(Exchange copy, Consumer<Exchange> validation) {
+        final long start = cpuClock.getAsLong();
+        try {
+            validation.accept(copy);
+        } catch (RuntimeException e) {
+            copy.setException(e);
+        }
+        spent(cpuClock.getAsLong() - start);
+
+        validatedCount.increment();
+        if (copy.getException() != null) {
+            failureCount.increment();
+            LOGGER.debug("Request would have failed validation: {}", copy.getException().getMessage());
+        }
+    }
+
+    /**
+     * Accounts for the CPU time of a validation, and adapts the sampling rate once the window is over.
+     */
+    void spent(long cpuNanos) {
+        windowCpuNanos.add(cpuNanos);
+
+        final long now = ticker.getAsLong();
+        if (now - windowStart < WINDOW_NANOS || cpuBudget == Double.POSITIVE_INFINITY) return;
+
+        synchronized (this) {
+            if (now - windowStart < WINDOW_NANOS) return;
+
+            final double usage = (double) windowCpuNanos.sumThenReset() / (now - windowStart);
+            windowStart = now;
+            if (usage > cpuBudget) {
+                samplingRate = Math.max(samplingRate / 2, Math.min(MINIMUM_SAMPLING_RATE, maximumSamplingRate));
+                LOGGER.debug("Shadow validation used {} of a processor, lowering the sampling rate to {}", usage, samplingRate);
+            } else if (usage < cpuBudget / 2 && samplingRate < maximumSamplingRate) {
+                samplingRate = Math.min(samplingRate * 2, maximumSamplingRate);
+                LOGGER.debug("Shadow validation used {} of a processor, raising the sampling rate to {}", usage, samplingRate);
+            }
+        }
+    }
+
+    private Executor executor() {
+        Executor executor = this.executor;
+        if (executor == null) {
+            synchronized (this) {
+                if (this.executor == null) {
+                    ThreadPoolExecutor defaultExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                            new ArrayBlockingQueue<>(DEFAULT_QUEUE_SIZE), runnable -> {
+                                Thread thread = new Thread(runnable, "ShadowMode");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    // the thread ends while idle, so an unused shadow mode doesn't need to be stopped
+                    defaultExecutor.allowCoreThreadTimeOut(true);
+                    this.executor = defaultExecutor;
+                }
+                executor = this.executor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Copies the exchange, with a body of its own when the body is a stream. Plain input streams are cached with the
+     * stream caching strategy of the context beforehand, so both exchanges can read them.
+     */
+    private static Exchange copyOf(Exchange exchange) throws IOException {
+        final Message message = exchange.getMessage();
+        if (message.getBody() instanceof InputStream && !(message.getBody() instanceof StreamCache)) {
+            StreamCache streamCache = exchange.getContext().getStreamCachingStrategy().cache(exchange);
+            if (streamCache != null) {
+                message.setBody(streamCache);
+            }
+        }
+
+        final Exchange copy = exchange.copy();
+        final Object body = message.getBody();
+        if (body instanceof StreamCache) {
+            copy.getMessage().setBody(((StreamCache) body).copy(copy));
+            ((StreamCache) body).reset();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,164 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.support.service.ServiceSupport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Shares the compiled specifications of the validators of a {@link CamelContext}, so a specification used by
+ * many routes is parsed once and held in memory once.
+ * <pre>
+ * from("platform-http:/greeting")
+ *     .process(SpecRegistry.of(getContext()).openApi4jValidator("api.yaml", null).withMetrics(statistics))
+ * </pre>
+ * Specifications are keyed by validator, location and base path. The validators handed out share the compiled
+ * specification but not their options, each can be configured with its own {@code with*} methods.
+ * <p>
+ * A specification is held as long as a validator sharing it is started: validators retain it when their route
+ * starts and release it when their route stops. Once the last one is stopped, the specification is removed from
+ * the registry, and compiled again for the next validator asking for it. Everything is released when the
+ * context stops.
+ */
+public final class SpecRegistry extends ServiceSupport {
+    private static final String OPENAPI4J = "openapi4j";
+    private static final String SWAGGER = "swagger";
+
+    private final Map<List<String>, Entry> entries = new HashMap<>();
+
+    private SpecRegistry() {
+    }
+
+    /**
+     * Returns the registry of a context, creating it on first use.
+     *
+     * @param context the context
+     * @return the registry of the context
+     */
+    public static SpecRegistry of(CamelContext context) {
+        synchronized (context) {
+            SpecRegistry registry = context.getExtension(SpecRegistry.class);
+            if (registry == null) {
+                registry = new SpecRegistry();
+                try {
+                    context.addService(registry, true);
+                } catch (Exception e) {
+                    throw RuntimeCamelException.wrapRuntimeCamelException(e);
+                }
+                context.setExtension(SpecRegistry.class, registry);
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Returns a validator sharing the specification compiled by {@link OpenApi4jValidator#OpenApi4jValidator(String, String)}.
+     *
+     * @param specPath location of specification in resources, or its URL
+     * @param basePath context path of api, or {@code null}
+     * @return a new validator, with the default options
+     * @throws IllegalArgumentException if the url or file can’t be read or if there is an error with the spec
+     */
+    public OpenApi4jValidator openApi4jValidator(String specPath, String basePath) {
+        Entry entry = entry(OPENAPI4J, specPath, basePath, () -> new OpenApi4jValidator(specPath, basePath));
+        return new OpenApi4jValidator((OpenApi4jValidator) entry.compiled, entry);
+    }
+
+    /**
+     * Returns a validator sharing the specification compiled by {@link SwaggerRequestValidator#SwaggerRequestValidator(String, String)}.
+     *
+     * @param specPath location of specification in resources, or its URL
+     * @param basePath context path of api, or {@code null}
+     * @return a new validator, with the default options
+     */
+    public SwaggerRequestValidator swaggerValidator(String specPath, String basePath) {
+        Entry entry = entry(SWAGGER, specPath, basePath, () -> new SwaggerRequestValidator(specPath, basePath));
+        return new SwaggerRequestValidator((SwaggerRequestValidator) entry.compiled, entry);
+    }
+
+    /**
+     * @return the number of specifications held
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Entry entry(String validator, String specPath, String basePath, Supplier<Object> compiler) {
+        final List<String> key = Arrays.asList(validator, specPath, basePath);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        // compiled outside the lock, if two routes race for the same specification the first one wins
+        final Entry compiled = new Entry(key, compiler.get());
+        synchronized (this) {
+            return entries.computeIfAbsent(key, k -> compiled);
+        }
+    }
+
+    @Override
+    protected synchronized void doStop() {
+        entries.clear();
+    }
+
+    /**
+     * A compiled specification, and the number of started validators sharing it.
+     */
+    final class Entry {
+        private final List<String> key;
+        private final Object compiled;
+        private int references;
+
+        private Entry(List<String> key, Object compiled) {
+            this.key = key;
+            this.compiled = compiled;
+        }
+
+        /**
+         * Called when a validator sharing the specification starts.
+         */
+        void retain() {
+            synchronized (SpecRegistry.this) {
+                if (references++ == 0) {
+                    // shared again if it was released, unless it was compiled again meanwhile
+                    entries.putIfAbsent(key, this);
+                }
+            }
+        }
+
+        /**
+         * Called when a validator sharing the specification stops.
+         */
+        void release() {
+            synchronized (SpecRegistry.this) {
+                if (references > 0 && --references == 0) {
+                    entries.remove(key, this);
+                }
+            }
+        }
+    }
+}
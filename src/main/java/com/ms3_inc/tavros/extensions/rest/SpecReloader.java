@@ -0,0 +1,270 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reloads the specification of a validator when its file changes, or when asked through JMX once
+ * {@link #registerMBean(String) registered}.
+ * <pre>
+ * OpenApi4jValidator validator = new OpenApi4jValidator("file:/etc/api/api.yaml");
+ * getContext().addService(new SpecReloader(validator).withFileWatch(true).registerMBean("api"));
+ * </pre>
+ * The file is watched while the reloader is started. Changes are coalesced: the reload starts once the file
+ * hasn't changed for the {@link #withQuietPeriod(Duration) quiet period}, and changes made during a reload
+ * trigger a single reload after it. Only the file of the specification is watched, not the documents it refers to.
+ */
+public class SpecReloader extends ServiceSupport implements SpecReloaderMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpecReloader.class);
+
+    private final ReloadableValidator validator;
+    private boolean fileWatch;
+    private Duration quietPeriod = Duration.ofMillis(200);
+    private final LongAdder reloadCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private volatile String lastFailure;
+    private static final int IDLE = 0;
+    private static final int RELOADING = 1;
+    private static final int RELOADING_WITH_CHANGES = 2;
+
+    // one state, so a change can't be missed between the end of a reload and the check for pending changes
+    private final AtomicInteger reloadState = new AtomicInteger(IDLE);
+    private WatchService watchService;
+    private ObjectName objectName;
+
+    /**
+     * @param validator the validator whose specification is reloaded
+     */
+    public SpecReloader(ReloadableValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Enables or disables watching the file of the specification, disabled by default.
+     * The location of the specification must be a file, or a classpath resource in a directory.
+     *
+     * @param fileWatch whether the specification is reloaded when its file changes
+     * @return this reloader
+     */
+    public SpecReloader withFileWatch(boolean fileWatch) {
+        this.fileWatch = fileWatch;
+        return this;
+    }
+
+    /**
+     * Sets how long the file must be left unchanged before reloading, 200 milliseconds by default,
+     * so a file being written isn't read halfway.
+     *
+     * @param quietPeriod the quiet period
+     * @return this reloader
+     */
+    public SpecReloader withQuietPeriod(Duration quietPeriod) {
+        this.quietPeriod = quietPeriod;
+        return this;
+    }
+
+    /**
+     * Registers the reloader in the platform MBean server, as
+     * {@code com.ms3_inc.tavros.extensions.rest:type=SpecReloader,name=<name>}.
+     *
+     * @param name the name of the reloader, e.g. the name of the API
+     * @return this reloader
+     * @throws IllegalArgumentException if the name is already registered
+     */
+    public synchronized SpecReloader registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName(ValidationStatistics.JMX_DOMAIN + ":type=SpecReloader,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Unregisters the reloader from the platform MBean server, if registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String getSpecLocation() {
+        return validator.getSpecLocation();
+    }
+
+    @Override
+    public long getReloadCount() {
+        return reloadCount.sum();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    @Override
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public void reload() {
+        try {
+            reloadAsync().join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Failed to reload " + getSpecLocation() + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Reloads the specification in the background.
+     *
+     * @return completed once the new version is used, or completed exceptionally if it can't be reloaded
+     */
+    public CompletableFuture<Void> reloadAsync() {
+        return validator.reload().whenComplete((result, failure) -> {
+            if (failure == null) {
+                reloadCount.increment();
+            } else {
+                failureCount.increment();
+                lastFailure = String.valueOf(failure instanceof CompletionException ? failure.getCause() : failure);
+                LOGGER.warn("Failed to reload {}, keeping the previous version", getSpecLocation(), failure);
+            }
+        });
+    }
+
+    /**
+     * Reloads unless a reload is in progress, in which case another one follows it.
+     */
+    private void fileChanged() {
+        if (reloadState.getAndUpdate(state -> state == IDLE ? RELOADING : RELOADING_WITH_CHANGES) == IDLE) {
+            reloadChanges();
+        }
+    }
+
+    private void reloadChanges() {
+        reloadAsync().whenComplete((result, failure) -> {
+            // the changes made during the reload start the next one
+            if (reloadState.getAndUpdate(state -> state == RELOADING_WITH_CHANGES ? RELOADING : IDLE) == RELOADING_WITH_CHANGES) {
+                reloadChanges();
+            }
+        });
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (!fileWatch) return;
+
+        final Path file = fileOf(validator.getSpecLocation());
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        final WatchService watchService = this.watchService;
+        Thread watcher = new Thread(() -> watch(watchService, file.getFileName()), "SpecReloader-" + file.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (watchService != null) {
+            // ends the watching thread
+            watchService.close();
+            watchService = null;
+        }
+        unregisterMBean();
+    }
+
+    private void watch(WatchService watchService, Path fileName) {
+        try {
+            while (true) {
+                if (!changed(watchService.take(), fileName)) continue;
+
+                // wait until the file is left unchanged
+                WatchKey key;
+                while ((key = watchService.poll(quietPeriod.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    changed(key, fileName);
+                }
+                fileChanged();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            LOGGER.debug("Stopped watching {}", fileName);
+        }
+    }
+
+    private static boolean changed(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context()) || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private static Path fileOf(String location) throws IOException {
+        URL url = SpecSnapshot.urlOf(location);
+        if (!"file".equals(url.getProtocol())) {
+            throw new IllegalArgumentException("Only files can be watched, not " + url);
+        }
+
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
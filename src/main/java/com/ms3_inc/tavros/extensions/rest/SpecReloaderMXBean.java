@@ -0,0 +1,49 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The management interface of {@link SpecReloader}.
+ */
+public interface SpecReloaderMXBean {
+    /**
+     * @return the location the specification is reloaded from
+     */
+    String getSpecLocation();
+
+    /**
+     * @return the number of successful reloads
+     */
+    long getReloadCount();
+
+    /**
+     * @return the number of reloads that failed, the previous version of the specification being kept
+     */
+    long getFailureCount();
+
+    /**
+     * @return the error of the last failed reload, or {@code null}
+     */
+    String getLastFailure();
+
+    /**
+     * Reloads the specification and waits until the new version is used.
+     *
+     * @throws IllegalStateException if the specification can't be reloaded
+     */
+    void reload();
+}
@@ -0,0 +1,506 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openapi4j.core.exception.DecodeException;
+import org.openapi4j.core.exception.ResolutionException;
+import org.openapi4j.core.model.v3.OAI3Context;
+import org.openapi4j.core.util.TreeUtil;
+import org.openapi4j.parser.model.v3.OpenApi3;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A specification compiled ahead of time, so validators start without parsing YAML or loading the
+ * documents it refers to.
+ * <p>
+ * A snapshot holds a single document: the references to other documents are replaced by what they point to,
+ * the references within the specification are kept as they are. It's stored as a compressed binary tree where
+ * each distinct string is written once, and read back straight into a {@link JsonNode}.
+ * Snapshots are created at build time, e.g. with
+ * <pre>
+ * java -cp ... com.ms3_inc.tavros.extensions.rest.SpecSnapshot src/main/resources/api.yaml target/classes/api.yaml.snapshot
+ * </pre>
+ * and the validators load them in place of the specification when given a location ending with {@value #FILE_EXTENSION}.
+ * <p>
+ * References to other documents that point back to the document they come from, directly or not, can't be
+ * replaced and fail the compilation. So do references to other documents in discriminator mappings.
+ */
+public final class SpecSnapshot {
+    /**
+     * The extension of snapshot files.
+     */
+    public static final String FILE_EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x43585353;
+    private static final int VERSION = 1;
+    private static final String REF = "$ref";
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte BIG_INTEGER = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte DECIMAL = 6;
+    private static final byte STRING = 7;
+    private static final byte BINARY = 8;
+    private static final byte ARRAY = 9;
+    private static final byte OBJECT = 10;
+
+    private final URL location;
+    private final JsonNode document;
+
+    private SpecSnapshot(URL location, JsonNode document) {
+        this.location = location;
+        this.document = document;
+    }
+
+    /**
+     * Compiles a specification, loading every document it refers to.
+     *
+     * @param location the location of the specification, see {@link #urlOf(String)}
+     * @return the snapshot
+     * @throws IOException if a document can't be read or a reference can't be resolved
+     */
+    public static SpecSnapshot compile(String location) throws IOException {
+        URL url = urlOf(location);
+        return new SpecSnapshot(url, new Bundler(url).bundle());
+    }
+
+    /**
+     * Loads a snapshot.
+     *
+     * @param location the location of the snapshot, see {@link #urlOf(String)}
+     * @return the snapshot
+     * @throws IOException if the snapshot can't be read or isn't a snapshot
+     */
+    public static SpecSnapshot load(String location) throws IOException {
+        URL url = urlOf(location);
+        try (InputStream in = url.openStream()) {
+            return read(in, url);
+        }
+    }
+
+    /**
+     * Reads a snapshot from a stream.
+     *
+     * @param in       the stream, left open
+     * @param location the location of the snapshot, used as the base of its references
+     * @return the snapshot
+     * @throws IOException if the snapshot can't be read or isn't a snapshot
+     */
+    public static SpecSnapshot read(InputStream in, URL location) throws IOException {
+        Objects.requireNonNull(location, "The location of the snapshot is required");
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a specification snapshot: " + location);
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported specification snapshot version " + version + ": " + location);
+        }
+
+        String[] strings = new String[readCount(data)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readCount(data)];
+            data.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return new SpecSnapshot(location, readNode(data, strings));
+    }
+
+    /**
+     * Writes the snapshot.
+     *
+     * @param out the stream, left open
+     * @throws IOException if the stream can't be written
+     */
+    public void write(OutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        writeNode(new DataOutputStream(tree), document, strings);
+
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflater));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        writeCount(data, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeCount(data, bytes.length);
+            data.write(bytes);
+        }
+        tree.writeTo(data);
+        data.flush();
+        deflater.finish();
+    }
+
+    /**
+     * @return the location the snapshot was compiled from or loaded from
+     */
+    public URL getLocation() {
+        return location;
+    }
+
+    /**
+     * Parses the snapshot for openapi4j. Only the references within the specification are resolved.
+     *
+     * @return a new instance of the API
+     * @throws ResolutionException if a reference can't be resolved
+     */
+    public OpenApi3 toOpenApi3() throws ResolutionException {
+        // the context annotates the references of the document it's given
+        OAI3Context context = new OAI3Context(location, document.deepCopy());
+        OpenApi3 api = TreeUtil.json.convertValue(context.getBaseDocument(), OpenApi3.class);
+        api.setContext(context);
+        return api;
+    }
+
+    /**
+     * @return the specification as a single JSON document
+     */
+    public String toJson() {
+        try {
+            return TreeUtil.json.writeValueAsString(document);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Resolves the location of a specification or snapshot. Locations with a URL scheme, such as
+     * {@code file:} or {@code https:}, are used as they are, others are looked up in the classpath,
+     * including within jars.
+     *
+     * @param location the location
+     * @return the URL of the location
+     * @throws IOException if the location isn't in the classpath
+     */
+    public static URL urlOf(String location) throws IOException {
+        if (location.indexOf(':') > 1) {
+            try {
+                return new URL(location);
+            } catch (MalformedURLException e) {
+                // not a URL, e.g. a Windows path
+            }
+        }
+        return new ClassPathResource(location).getURL();
+    }
+
+    /**
+     * Compiles the specification given as first argument into the snapshot file given as second argument.
+     *
+     * @param args the location of the specification and the path of the snapshot
+     * @throws IOException if the specification can't be compiled or the snapshot can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: SpecSnapshot <specification location> <snapshot file>");
+            System.exit(2);
+        }
+
+        SpecSnapshot snapshot = compile(args[0]);
+        try (OutputStream out = new FileOutputStream(args[1])) {
+            snapshot.write(out);
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, JsonNode node, Map<String, Integer> strings) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                out.writeByte(OBJECT);
+                writeCount(out, node.size());
+                for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    writeString(out, field.getKey(), strings);
+                    writeNode(out, field.getValue(), strings);
+                }
+                break;
+            case ARRAY:
+                out.writeByte(ARRAY);
+                writeCount(out, node.size());
+                for (JsonNode item : node) {
+                    writeNode(out, item, strings);
+                }
+                break;
+            case STRING:
+                out.writeByte(STRING);
+                writeString(out, node.textValue(), strings);
+                break;
+            case NUMBER:
+                if (node.isInt() || node.isLong() || node.isShort()) {
+                    out.writeByte(INT);
+                    long value = node.longValue();
+                    writeVarLong(out, (value << 1) ^ (value >> 63));
+                } else if (node.isBigInteger()) {
+                    out.writeByte(BIG_INTEGER);
+                    writeString(out, node.bigIntegerValue().toString(), strings);
+                } else if (node.isBigDecimal()) {
+                    out.writeByte(DECIMAL);
+                    writeString(out, node.decimalValue().toString(), strings);
+                } else {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(node.doubleValue());
+                }
+                break;
+            case BOOLEAN:
+                out.writeByte(node.booleanValue() ? TRUE : FALSE);
+                break;
+            case BINARY:
+                out.writeByte(BINARY);
+                byte[] bytes = node.binaryValue();
+                writeCount(out, bytes.length);
+                out.write(bytes);
+                break;
+            case NULL:
+                out.writeByte(NULL);
+                break;
+            default:
+                throw new IOException("Unsupported node " + node.getNodeType());
+        }
+    }
+
+    private static JsonNode readNode(DataInputStream in, String[] strings) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case OBJECT:
+                ObjectNode object = NODES.objectNode();
+                for (int i = readCount(in); i > 0; i--) {
+                    String name = readString(in, strings);
+                    object.set(name, readNode(in, strings));
+                }
+                return object;
+            case ARRAY:
+                ArrayNode array = NODES.arrayNode();
+                for (int i = readCount(in); i > 0; i--) {
+                    array.add(readNode(in, strings));
+                }
+                return array;
+            case STRING:
+                return NODES.textNode(readString(in, strings));
+            case INT:
+                long zigZag = readVarLong(in);
+                long value = (zigZag >>> 1) ^ -(zigZag & 1);
+                // the same node types as parsing the specification gives
+                return value == (int) value ? NODES.numberNode((int) value) : NODES.numberNode(value);
+            case BIG_INTEGER:
+                return NODES.numberNode(new BigInteger(readString(in, strings)));
+            case DECIMAL:
+                return NODES.numberNode(new BigDecimal(readString(in, strings)));
+            case DOUBLE:
+                return NODES.numberNode(in.readDouble());
+            case TRUE:
+                return NODES.booleanNode(true);
+            case FALSE:
+                return NODES.booleanNode(false);
+            case BINARY:
+                byte[] bytes = new byte[readCount(in)];
+                in.readFully(bytes);
+                return NODES.binaryNode(bytes);
+            case NULL:
+                return NODES.nullNode();
+            default:
+                throw new IOException("Corrupted specification snapshot, unknown node type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string, Map<String, Integer> strings) throws IOException {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        writeCount(out, index);
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int index = readCount(in);
+        if (index >= strings.length) {
+            throw new IOException("Corrupted specification snapshot, unknown string " + index);
+        }
+        return strings[index];
+    }
+
+    private static void writeCount(DataOutputStream out, int count) throws IOException {
+        writeVarLong(out, count);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted specification snapshot, invalid count " + count);
+        }
+        return (int) count;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted specification snapshot, invalid number");
+    }
+
+    /**
+     * Copies the root document, replacing the references to other documents by what they point to.
+     */
+    private static final class Bundler {
+        private final URL root;
+        // keyed by the external form, URL.equals resolves host names
+        private final Map<String, JsonNode> documents = new HashMap<>();
+        // the references being replaced, to report the ones pointing back to themselves
+        private final Deque<String> replacing = new ArrayDeque<>();
+
+        private Bundler(URL root) {
+            this.root = root;
+        }
+
+        private JsonNode bundle() throws IOException {
+            return copy(document(root), root);
+        }
+
+        private JsonNode copy(JsonNode node, URL base) throws IOException {
+            if (node.isObject()) {
+                JsonNode ref = node.get(REF);
+                String internalRef = null;
+                if (ref != null && ref.isTextual()) {
+                    internalRef = internalRef(ref.textValue(), base);
+                    if (internalRef == null) {
+                        return replace(ref.textValue(), base);
+                    }
+                }
+
+                ObjectNode object = NODES.objectNode();
+                for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    object.set(field.getKey(), copy(field.getValue(), base));
+                }
+                if (internalRef != null) {
+                    object.put(REF, internalRef);
+                }
+                return object;
+            }
+
+            if (node.isArray()) {
+                ArrayNode array = NODES.arrayNode();
+                for (JsonNode item : node) {
+                    array.add(copy(item, base));
+                }
+                return array;
+            }
+
+            // value nodes are immutable
+            return node;
+        }
+
+        /**
+         * @return the reference relative to the root document if it points to it, {@code null} otherwise
+         */
+        private String internalRef(String ref, URL base) throws IOException {
+            int hash = ref.indexOf('#');
+            if (hash == 0 && sameDocument(base, root)) {
+                return ref;
+            }
+
+            URL target = hash == 0 ? base : new URL(base, hash == -1 ? ref : ref.substring(0, hash));
+            return sameDocument(target, root) ? (hash == -1 ? "#" : ref.substring(hash)) : null;
+        }
+
+        private JsonNode replace(String ref, URL base) throws IOException {
+            int hash = ref.indexOf('#');
+            String pointer = hash == -1 ? "" : ref.substring(hash + 1);
+            URL target = hash == 0 ? base : new URL(base, hash == -1 ? ref : ref.substring(0, hash));
+
+            String canonical = target + "#" + pointer;
+            if (replacing.contains(canonical)) {
+                throw new IOException("Recursive reference to another document can't be bundled: " + canonical);
+            }
+
+            JsonNode content = pointer.isEmpty() || pointer.equals("/") ? document(target) : document(target).at(pointer);
+            if (content.isMissingNode()) {
+                throw new IOException("Reference '" + ref + "' is unreachable in '" + target + "'");
+            }
+
+            replacing.push(canonical);
+            try {
+                return copy(content, target);
+            } finally {
+                replacing.pop();
+            }
+        }
+
+        private JsonNode document(URL url) throws IOException {
+            JsonNode document = documents.get(url.toExternalForm());
+            if (document == null) {
+                try {
+                    document = TreeUtil.load(url);
+                } catch (DecodeException e) {
+                    throw new IOException("Failed to load document from '" + url + "'", e);
+                }
+                documents.put(url.toExternalForm(), document);
+            }
+            return document;
+        }
+
+        private static boolean sameDocument(URL url, URL other) {
+            return url.toExternalForm().equals(other.toExternalForm());
+        }
+    }
+}
@@ -16,12 +16,31 @@ package com.ms3_inc.tavros.extensions.rest;
  * limitations under the License.
  */
 import com.atlassian.oai.validator.OpenApiInteractionValidator;
+import com.atlassian.oai.validator.interaction.ApiOperationResolver;
+import com.atlassian.oai.validator.model.ApiOperationMatch;
 import com.atlassian.oai.validator.model.Request;
 import com.atlassian.oai.validator.model.SimpleRequest;
+import com.atlassian.oai.validator.model.SimpleResponse;
 import com.atlassian.oai.validator.report.SimpleValidationReportFormat;
 import com.atlassian.oai.validator.report.ValidationReport;
 import com.ms3_inc.tavros.extensions.rest.OperationResult.MessageBuilder;
 import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import com.ms3_inc.tavros.extensions.rest.exception.PayloadTooLargeException;
+import io.swagger.parser.OpenAPIParser;
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.media.ArraySchema;
+import io.swagger.v3.oas.models.media.ComposedSchema;
+import io.swagger.v3.oas.models.media.Content;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.media.StringSchema;
+import io.swagger.v3.oas.models.parameters.Parameter;
+import io.swagger.v3.oas.models.security.SecurityRequirement;
+import io.swagger.v3.oas.models.security.SecurityScheme;
+import io.swagger.v3.parser.core.models.ParseOptions;
+import io.swagger.v3.parser.core.models.SwaggerParseResult;
 import org.apache.camel.AsyncCallback;
 import org.apache.camel.CamelException;
 import org.apache.camel.Exchange;
@@ -29,11 +48,20 @@ import org.apache.camel.support.AsyncProcessorSupport;
 import org.apache.camel.support.MessageHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * This {@code SwaggerRequestValidator} class uses the Atlassian swagger-request-validator
@@ -42,20 +70,40 @@ import java.util.Map;
  * This class provides two constructors for creating the validator,
  * one that sets the base path used in the route,
  * and one without a base path.
+ * <p>
+ * Only the headers the specification refers to for the matched operation are copied to the request:
+ * {@code Content-Type}, {@code Accept}, the header and cookie parameters and the headers of its security schemes.
+ * Heavy requests can be validated off the calling thread, see {@link #withExecutor(Executor)},
+ * and validations can be measured, see {@link #withMetrics(ValidationMetrics)}.
+ * Routes validating against the same specification can share it through a {@link SpecRegistry}.
+ * The specification can be reloaded without stopping the route, see {@link #reload()} and {@link SpecReloader}.
+ * Responses can be validated against the same specification by a {@link ResponseValidator}.
+ * Before enforcing it, the validator can run in {@link #withShadowMode(ShadowMode) shadow mode}.
+ * Oversized bodies are rejected before being read, see {@link #withPayloadLimits(PayloadLimits)}.
  */
-public class SwaggerRequestValidator extends AsyncProcessorSupport {
+public class SwaggerRequestValidator extends AsyncProcessorSupport implements ReloadableValidator {
+    private static final String PARAMETER_REF_PREFIX = "#/components/parameters/";
+    private static final String PAYLOAD_ERROR_CODE = "payload";
     private final Logger LOGGER = LoggerFactory.getLogger(getClass());
-    private final OpenApiInteractionValidator validator;
+    // swapped on reload, shared with the validators of the same registry entry
+    private final AtomicReference<CompiledSpec> spec;
+    private final String specLocation;
+    private final String basePath;
+    private Executor executor;
+    private long asyncBodyThreshold = AsyncOffload.DEFAULT_BODY_THRESHOLD;
+    private ValidationMetrics metrics;
+    private ShadowMode shadowMode;
+    private PayloadLimits payloadLimits = PayloadLimits.NONE;
+    private SpecRegistry.Entry registryEntry;
 
     /**
      * Constructs a validator using an {@link OpenApiInteractionValidator} instance.
      *
-     * @param specPath location of specification in resources
+     * @param specPath location of specification in resources, or its URL.
+     *                 Locations ending with {@value SpecSnapshot#FILE_EXTENSION} are loaded as a {@link SpecSnapshot}.
      */
     public SwaggerRequestValidator(String specPath) {
-        validator = OpenApiInteractionValidator
-                .createFor(specPath)
-                .build();
+        this(specPath, null);
     }
 
     /***
@@ -63,35 +111,512 @@ public class SwaggerRequestValidator extends AsyncProcessorSupport {
      * overriding the base path provided in the specification or setting the
      * base path if it hasn't been provided in the specification.
      *
-     * @param specPath location of specification in resources
+     * @param specPath location of specification in resources, or its URL.
+     *                 Locations ending with {@value SpecSnapshot#FILE_EXTENSION} are loaded as a {@link SpecSnapshot}.
      * @param basePath context path of api
      */
     public SwaggerRequestValidator(String specPath, String basePath) {
-        validator = OpenApiInteractionValidator
-                .createFor(specPath)
-                .withBasePathOverride(basePath)
-                .build();
+        this(loadApi(specPath), specPath, basePath);
+    }
+
+    /**
+     * Constructs a validator from a specification compiled ahead of time.
+     *
+     * @param snapshot the compiled specification
+     * @param basePath context path of api, or {@code null} to use the servers of the specification
+     */
+    public SwaggerRequestValidator(SpecSnapshot snapshot, String basePath) {
+        this(loadApi(snapshot.getLocation().toString(), snapshot.toJson()), snapshot.getLocation().toString(), basePath);
+    }
+
+    private SwaggerRequestValidator(OpenAPI api, String specLocation, String basePath) {
+        this.spec = new AtomicReference<>(new CompiledSpec(api, basePath));
+        this.specLocation = specLocation;
+        this.basePath = basePath;
+    }
+
+    /**
+     * Constructs a validator sharing the specification compiled by another one, see {@link SpecRegistry}.
+     *
+     * @param compiled      the validator that compiled the specification
+     * @param registryEntry the entry of the specification in the registry
+     */
+    SwaggerRequestValidator(SwaggerRequestValidator compiled, SpecRegistry.Entry registryEntry) {
+        this.spec = compiled.spec;
+        this.specLocation = compiled.specLocation;
+        this.basePath = compiled.basePath;
+        this.registryEntry = registryEntry;
+    }
+
+    /**
+     * Parses the specification once for both the validator and the operation resolver, the way
+     * {@link OpenApiInteractionValidator} parses it: with references resolved, and without the patterns of
+     * {@code byte} strings, which apply to their decoded value.
+     *
+     * @param specPath location of specification in resources or its URL, or the specification itself
+     * @return the API
+     * @throws OpenApiInteractionValidator.ApiLoadException if the specification can't be loaded
+     */
+    private static OpenAPI loadApi(String specPath) {
+        if (specPath.endsWith(SpecSnapshot.FILE_EXTENSION)) {
+            try {
+                return loadApi(specPath, SpecSnapshot.load(specPath).toJson());
+            } catch (IOException e) {
+                throw new OpenApiInteractionValidator.ApiLoadException(specPath, e);
+            }
+        }
+
+        SwaggerParseResult result;
+        try {
+            result = new OpenAPIParser().readLocation(specPath, null, parseOptions());
+            if (result == null || result.getOpenAPI() == null) {
+                result = new OpenAPIParser().readContents(specPath, null, parseOptions());
+            }
+        } catch (RuntimeException e) {
+            throw new OpenApiInteractionValidator.ApiLoadException(specPath, e);
+        }
+        return apiOf(specPath, result);
+    }
+
+    private static OpenAPI loadApi(String location, String spec) {
+        SwaggerParseResult result;
+        try {
+            result = new OpenAPIParser().readContents(spec, null, parseOptions());
+        } catch (RuntimeException e) {
+            throw new OpenApiInteractionValidator.ApiLoadException(location, e);
+        }
+        return apiOf(location, result);
+    }
+
+    private static ParseOptions parseOptions() {
+        ParseOptions options = new ParseOptions();
+        options.setResolve(true);
+        options.setResolveFully(true);
+        options.setResolveCombinators(false);
+        return options;
+    }
+
+    private static OpenAPI apiOf(String location, SwaggerParseResult result) {
+        if (result == null || result.getOpenAPI() == null
+                || (result.getMessages() != null && !result.getMessages().isEmpty())) {
+            throw new OpenApiInteractionValidator.ApiLoadException(location, result);
+        }
+
+        OpenAPI api = result.getOpenAPI();
+        // fully resolved schemas are shared, and may refer to themselves
+        final Set<Schema<?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (api.getPaths() != null) {
+            for (PathItem pathItem : api.getPaths().values()) {
+                for (Operation operation : pathItem.readOperations()) {
+                    if (operation.getResponses() != null) {
+                        operation.getResponses().values().forEach(response -> removeBytePatterns(response.getContent(), visited));
+                    }
+                    if (operation.getRequestBody() != null) {
+                        removeBytePatterns(operation.getRequestBody().getContent(), visited);
+                    }
+                    if (operation.getParameters() != null) {
+                        for (Parameter parameter : operation.getParameters()) {
+                            removeBytePatterns(parameter.getContent(), visited);
+                            removeBytePatterns(parameter.getSchema(), visited);
+                        }
+                    }
+                }
+            }
+        }
+
+        Components components = api.getComponents();
+        if (components != null) {
+            forEach(components.getResponses(), response -> removeBytePatterns(response.getContent(), visited));
+            forEach(components.getRequestBodies(), requestBody -> removeBytePatterns(requestBody.getContent(), visited));
+            forEach(components.getHeaders(), header -> {
+                removeBytePatterns(header.getContent(), visited);
+                removeBytePatterns(header.getSchema(), visited);
+            });
+            forEach(components.getParameters(), parameter -> {
+                removeBytePatterns(parameter.getContent(), visited);
+                removeBytePatterns(parameter.getSchema(), visited);
+            });
+            forEach(components.getSchemas(), schema -> removeBytePatterns(schema, visited));
+        }
+        return api;
+    }
+
+    private static <T> void forEach(Map<String, T> map, Consumer<T> action) {
+        if (map != null) {
+            map.values().forEach(action);
+        }
+    }
+
+    private static <T> void forEach(List<T> list, Consumer<T> action) {
+        if (list != null) {
+            list.forEach(action);
+        }
+    }
+
+    private static void removeBytePatterns(Content content, Set<Schema<?>> visited) {
+        forEach(content, mediaType -> removeBytePatterns(mediaType.getSchema(), visited));
+    }
+
+    /**
+     * Unlike the loader of {@link OpenApiInteractionValidator}, walks composed schemas, {@code not} and
+     * {@code additionalProperties} too, so {@code byte} strings nested in them are treated alike.
+     */
+    private static void removeBytePatterns(Schema<?> schema, Set<Schema<?>> visited) {
+        if (schema == null || !visited.add(schema)) return;
+
+        if (schema instanceof StringSchema && "byte".equals(schema.getFormat())) {
+            schema.setPattern(null);
+            return;
+        }
+
+        forEach(schema.getProperties(), property -> removeBytePatterns(property, visited));
+        if (schema.getAdditionalProperties() instanceof Schema) {
+            removeBytePatterns((Schema<?>) schema.getAdditionalProperties(), visited);
+        }
+        if (schema instanceof ArraySchema) {
+            removeBytePatterns(((ArraySchema) schema).getItems(), visited);
+        }
+        if (schema instanceof ComposedSchema) {
+            final ComposedSchema composed = (ComposedSchema) schema;
+            forEach(composed.getAllOf(), member -> removeBytePatterns(member, visited));
+            forEach(composed.getOneOf(), member -> removeBytePatterns(member, visited));
+            forEach(composed.getAnyOf(), member -> removeBytePatterns(member, visited));
+        }
+        removeBytePatterns(schema.getNot(), visited);
+    }
+
+    /**
+     * Returns the names of the headers the validator reads for an operation: {@code Content-Type}, {@code Accept},
+     * the header parameters of the operation and its path, {@code Cookie} for cookie parameters and API keys, and the
+     * headers carrying the credentials of its security schemes, or of the API's when it doesn't override them.
+     *
+     * @return the header names, without duplicates regardless of case
+     */
+    private static List<String> headerNamesOf(OpenAPI api, PathItem pathItem, Operation operation) {
+        final Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        names.add("Content-Type");
+        names.add("Accept");
+
+        final List<Parameter> parameters = new ArrayList<>();
+        if (pathItem.getParameters() != null) parameters.addAll(pathItem.getParameters());
+        if (operation.getParameters() != null) parameters.addAll(operation.getParameters());
+        for (Parameter parameter : parameters) {
+            parameter = resolve(api, parameter);
+            if ("header".equals(parameter.getIn()) && parameter.getName() != null) {
+                names.add(parameter.getName());
+            } else if ("cookie".equals(parameter.getIn())) {
+                names.add("Cookie");
+            }
+        }
+
+        final List<SecurityRequirement> requirements = operation.getSecurity() != null ? operation.getSecurity() : api.getSecurity();
+        final Map<String, SecurityScheme> schemes = api.getComponents() != null ? api.getComponents().getSecuritySchemes() : null;
+        if (requirements != null && schemes != null) {
+            for (SecurityRequirement requirement : requirements) {
+                for (String schemeName : requirement.keySet()) {
+                    SecurityScheme scheme = schemes.get(schemeName);
+                    if (scheme == null || scheme.getType() == null) continue;
+
+                    if (scheme.getType() != SecurityScheme.Type.APIKEY) {
+                        // http, oauth2 and openIdConnect credentials
+                        names.add("Authorization");
+                    } else if (scheme.getIn() == SecurityScheme.In.HEADER && scheme.getName() != null) {
+                        names.add(scheme.getName());
+                    } else if (scheme.getIn() == SecurityScheme.In.COOKIE) {
+                        names.add("Cookie");
+                    }
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    private static Parameter resolve(OpenAPI api, Parameter parameter) {
+        if (parameter.get$ref() == null || !parameter.get$ref().startsWith(PARAMETER_REF_PREFIX)
+                || api.getComponents() == null || api.getComponents().getParameters() == null) {
+            return parameter;
+        }
+
+        Parameter resolved = api.getComponents().getParameters().get(parameter.get$ref().substring(PARAMETER_REF_PREFIX.length()));
+        return resolved != null ? resolved : parameter;
+    }
+
+    /**
+     * Validates heavy requests on the given executor instead of the calling thread, which is an I/O thread
+     * with asynchronous consumers such as netty-http. Requests are heavy when their body is at least
+     * {@link #withAsyncBodyThreshold(long) as large as the threshold}, or when their operation has the
+     * {@code x-camelx-heavy-validation: true} extension. Other requests are validated synchronously.
+     * <p>
+     * Any executor can be used, e.g. a bounded pool, or virtual threads on JDKs providing them. When the
+     * executor rejects a request, it's validated on the calling thread.
+     *
+     * @param executor the executor, or {@code null} to validate every request synchronously, the default
+     * @return this validator
+     */
+    public SwaggerRequestValidator withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the size from which bodies are validated asynchronously, 64 KiB by default.
+     * Only used with an {@link #withExecutor(Executor) executor}. The size is taken from the body when
+     * it's already in memory or cached, from the {@code Content-Length} header otherwise.
+     *
+     * @param asyncBodyThreshold the size in bytes, or characters for String bodies
+     * @return this validator
+     */
+    public SwaggerRequestValidator withAsyncBodyThreshold(long asyncBodyThreshold) {
+        this.asyncBodyThreshold = asyncBodyThreshold;
+        return this;
+    }
+
+    /**
+     * Reports the latency of each stage of the validation, the outcome and the body size of every request.
+     * Parameters and body are validated together by the library, so their latency is reported as the
+     * {@link ValidationMetrics.Stage#VALIDATION} stage.
+     *
+     * @param metrics the metrics, or {@code null} to measure nothing, the default
+     * @return this validator
+     * @see ValidationStatistics
+     */
+    public SwaggerRequestValidator withMetrics(ValidationMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Validates a sample of the requests in the background instead of every request, without ever rejecting them.
+     * The requests that would have been rejected are counted by the shadow mode, and reported to the
+     * {@link #withMetrics(ValidationMetrics) metrics}.
+     *
+     * @param shadowMode the shadow mode, or {@code null} to validate and reject every request, the default
+     * @return this validator
+     */
+    public SwaggerRequestValidator withShadowMode(ShadowMode shadowMode) {
+        this.shadowMode = shadowMode;
+        return this;
+    }
+
+    /**
+     * Rejects the requests whose body is too large, or too deeply nested, before the body is read and validated.
+     * Operations can override the limits with extensions, see {@link PayloadLimits}.
+     *
+     * @param payloadLimits the limits, {@link PayloadLimits#NONE} by default
+     * @return this validator
+     */
+    public SwaggerRequestValidator withPayloadLimits(PayloadLimits payloadLimits) {
+        this.payloadLimits = payloadLimits != null ? payloadLimits : PayloadLimits.NONE;
+        return this;
+    }
+
+    /**
+     * Parses the specification again from its location, in the background, and swaps it in once parsed.
+     * Requests being validated finish with the previous version, the following ones use the new one.
+     * Validators sharing the specification through a {@link SpecRegistry} use the new version too.
+     *
+     * @return completed once the new version is used, or completed exceptionally if it can't be parsed,
+     * the previous version being kept
+     */
+    @Override
+    public CompletableFuture<Void> reload() {
+        return CompletableFuture.runAsync(() -> {
+            // reloads are serialized, so an older version can't replace a newer one
+            synchronized (spec) {
+                spec.set(new CompiledSpec(loadApi(specLocation), basePath));
+            }
+            LOGGER.info("Reloaded specification {}", specLocation);
+        });
+    }
+
+    @Override
+    public String getSpecLocation() {
+        return specLocation;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (registryEntry != null) {
+            registryEntry.retain();
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (registryEntry != null) {
+            registryEntry.release();
+        }
+        super.doStop();
     }
 
     @Override
     public boolean process(Exchange exchange, AsyncCallback callback) {
+        if (shadowMode != null) {
+            try {
+                shadowMode.offer(exchange, this::validate);
+            } finally {
+                callback.done(true);
+            }
+            return true;
+        }
+
+        if (executor != null && isHeavy(exchange)
+                && AsyncOffload.offload(executor, exchange, callback, this::validate)) {
+            return false;
+        }
+
+        try {
+            validate(exchange);
+        } finally {
+            callback.done(true);
+        }
+
+        return true;
+    }
+
+    /**
+     * Tells whether the request is worth validating on the executor. A request whose method or URI can't be read
+     * isn't: the validation on the calling thread reports it and completes the callback.
+     */
+    private boolean isHeavy(Exchange exchange) {
+        if (AsyncOffload.isHeavyBody(exchange, asyncBodyThreshold)) return true;
+
+        try {
+            final ApiOperationMatch match = spec.get().operationResolver.findApiOperation(
+                    exchange.getMessage().getHeader(Exchange.HTTP_URI, String.class),
+                    Request.Method.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD, String.class)));
+            return match.isOperationAllowed() && AsyncOffload.isHeavyOperation(match.getApiOperation().getOperation().getExtensions());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates the request, setting a {@link BadRequestException} on the exchange if it's invalid,
+     * or a {@link PayloadTooLargeException} if its body is too large.
+     */
+    private void validate(Exchange exchange) {
         LOGGER.debug("Trying validation");
+        final ValidationMetrics metrics = this.metrics;
+        // the whole validation uses the same version of the specification, even if it's reloaded meanwhile
+        final CompiledSpec spec = this.spec.get();
 
         try {
-            ValidationReport report = validator.validateRequest(fromExchange(exchange));
+            long time = metrics != null ? System.nanoTime() : 0;
+            final Request.Method method = Request.Method.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD, String.class));
+            final String path = exchange.getMessage().getHeader(Exchange.HTTP_URI, String.class);
+            final ApiOperationMatch match = spec.operationResolver.findApiOperation(path, method);
+            final String operationId = metrics != null ? operationIdOf(method, match) : null;
+            if (metrics != null) {
+                time = recordStage(metrics, operationId, ValidationMetrics.Stage.LOOKUP, time);
+                if (hasRequestBody(match)) {
+                    long bodyLength = AsyncOffload.bodyLength(exchange.getMessage());
+                    if (bodyLength >= 0) metrics.recordBodySize(operationId, bodyLength);
+                }
+            }
+
+            if (hasRequestBody(match)) {
+                try {
+                    payloadLimits.overriddenBy(match.getApiOperation().getOperation().getExtensions())
+                            .check(exchange, exchange.getMessage().getHeader(Exchange.CONTENT_TYPE, String.class));
+                } catch (PayloadTooLargeException | BadRequestException e) {
+                    if (metrics != null) metrics.recordFailure(operationId, Collections.singleton(PAYLOAD_ERROR_CODE));
+                    exchange.setException(e);
+                    return;
+                }
+            }
+
+            final Request request = fromExchange(spec, exchange, method, path, match);
+            if (metrics != null) {
+                time = recordStage(metrics, operationId, ValidationMetrics.Stage.REQUEST, time);
+            }
+
+            ValidationReport report = spec.validator.validateRequest(request);
+            if (metrics != null) {
+                recordStage(metrics, operationId, ValidationMetrics.Stage.VALIDATION, time);
+                if (report.hasErrors()) {
+                    metrics.recordFailure(operationId, errorCodesOf(report));
+                } else {
+                    metrics.recordSuccess(operationId);
+                }
+            }
+
             if (report.hasErrors()) {
-                LOGGER.debug(report.toString());
+                LOGGER.debug("Validation report: {}", report);
                 exchange.setException(new BadRequestException(fromReport(report)));
             }
 
             LOGGER.debug("Validating complete");
         } catch (Exception ex) {
             exchange.setException(new CamelException(ex));
-        } finally {
-            callback.done(true);
         }
+    }
 
-        return true;
+    /**
+     * Finds the operation of a request in the current version of the specification, for the {@link ResponseValidator}.
+     *
+     * @param method the request method
+     * @param uri    the request URI
+     * @return the operation, or {@code null} if the request doesn't match any
+     */
+    ResponseValidator.ResponseContract responseContractOf(String method, String uri) {
+        final CompiledSpec spec = this.spec.get();
+        final Request.Method requestMethod = Request.Method.valueOf(method);
+        final ApiOperationMatch match = spec.operationResolver.findApiOperation(uri, requestMethod);
+        if (!match.isOperationAllowed()) return null;
+
+        final String operationId = operationIdOf(requestMethod, match);
+        return new ResponseValidator.ResponseContract() {
+            @Override
+            public String getOperationId() {
+                return operationId;
+            }
+
+            @Override
+            public Collection<String> validate(ResponseValidator.CapturedResponse response) {
+                final SimpleResponse.Builder responseBuilder = new SimpleResponse.Builder(response.getStatus());
+                response.getHeaders().forEach(responseBuilder::withHeader);
+                if (response.getBody() != null) {
+                    responseBuilder.withBody(response.getBody());
+                }
+
+                return errorCodesOf(spec.validator.validateResponse(uri, requestMethod, responseBuilder.build()));
+            }
+        };
+    }
+
+    /**
+     * @return the operationId of the operation, its method and templated path if it doesn't have one
+     */
+    private static String operationIdOf(Request.Method method, ApiOperationMatch match) {
+        if (match == null || !match.isOperationAllowed()) return ValidationMetrics.UNKNOWN_OPERATION;
+
+        String operationId = match.getApiOperation().getOperation().getOperationId();
+        return operationId != null ? operationId : method.name() + ' ' + match.getApiOperation().getApiPath().original();
+    }
+
+    /**
+     * @return the end of the stage, which is the start of the next one
+     */
+    private static long recordStage(ValidationMetrics metrics, String operationId, ValidationMetrics.Stage stage, long start) {
+        long end = System.nanoTime();
+        metrics.recordStage(operationId, stage, end - start);
+        return end;
+    }
+
+    /**
+     * @return the distinct keys of the error messages of the report
+     */
+    private static Collection<String> errorCodesOf(ValidationReport report) {
+        Set<String> errorCodes = new TreeSet<>();
+        for (ValidationReport.Message message : report.getMessages()) {
+            if (message.getLevel() == ValidationReport.Level.ERROR) {
+                errorCodes.add(message.getKey());
+            }
+        }
+        return errorCodes;
     }
 
     /**
@@ -104,8 +629,19 @@ public class SwaggerRequestValidator extends AsyncProcessorSupport {
     private static OperationResult.Message fromReport(ValidationReport report) {
         // separates the report into a "Validation failed." line and the rest for diagnostics
         String[] result = SimpleValidationReportFormat.getInstance().apply(report).split(System.lineSeparator(), 2);
+        List<OperationResult.Diagnostic> errors = new ArrayList<>();
+        for (ValidationReport.Message reportMessage : report.getMessages()) {
+            if (reportMessage.getLevel() == ValidationReport.Level.ERROR) {
+                String location = reportMessage.getContext()
+                        .flatMap(ValidationReport.MessageContext::getParameter)
+                        .map(Parameter::getName)
+                        .orElse(null);
+                errors.add(new OperationResult.Diagnostic(reportMessage.getKey(), location, reportMessage.getMessage()));
+            }
+        }
         OperationResult.Message message = MessageBuilder.error("RequestValidationError", "HTTP request failed API specification validation.")
             .withDiagnostics(result[1])
+            .withErrors(errors)
             .build();
 
         return message;
@@ -114,37 +650,82 @@ public class SwaggerRequestValidator extends AsyncProcessorSupport {
     /**
      * Builds the request from the {@code Exchange} using the builder pattern.
      * First initializes the needed headers and values from the exchange.
-     * If the body is not empty, it gets added to the request.
-     * Adds the query params and the necessary headers to the request.
+     * If the matched operation declares a request body and the body is not empty, it gets added to the request.
+     * Otherwise the body isn't read at all.
+     * Adds the query params and the headers the operation refers to.
      *
+     * @param spec     the specification the request is validated against
      * @param exchange the entire {@code Exchange} object of the request
+     * @param method   the request method
+     * @param path     the request path
+     * @param match    the operation of the request
      * @return the {@code Request} built from the necessary exchange values
      */
-    private static Request fromExchange(Exchange exchange) {
-        final Request.Method method = Request.Method.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD, String.class));
-        final String path = exchange.getMessage().getHeader(Exchange.HTTP_URI, String.class);
+    private Request fromExchange(CompiledSpec spec, Exchange exchange, Request.Method method, String path, ApiOperationMatch match) {
         final String query = exchange.getMessage().getHeader(Exchange.HTTP_QUERY, String.class);
-        final String body = MessageHelper.extractBodyAsString(exchange.getMessage());
         final SimpleRequest.Builder requestBuilder = new SimpleRequest.Builder(method, path);
 
-        if (body != null && !body.isEmpty()) {
-            requestBuilder.withBody(body);
+        if (hasRequestBody(match)) {
+            final String body = MessageHelper.extractBodyAsString(exchange.getMessage());
+            if (body != null && !body.isEmpty()) {
+                requestBuilder.withBody(body);
+            }
+        } else {
+            LOGGER.debug("Skipping body, no request body declared");
         }
 
-        for (Map.Entry<String, Object> header : exchange.getMessage().getHeaders().entrySet()) {
-            if (!header.getKey().startsWith("Camel") && header.getValue() instanceof String) {
-                requestBuilder.withHeader(header.getKey(), (String) header.getValue());
+        if (match.isOperationAllowed()) {
+            List<String> names = spec.headerNames.getOrDefault(match.getApiOperation().getOperation(), Collections.emptyList());
+            for (String headerName : names) {
+                List<String> values = HeaderValues.of(exchange, headerName);
+                if (values != null) {
+                    requestBuilder.withHeader(headerName, values);
+                }
             }
         }
 
-        MultiValueMap<String, String> queryParams = UriComponentsBuilder.newInstance()
-                .query(query)
-                .build()
-                .getQueryParams();
-        for (Map.Entry<String, List<String>> queryParamEntry : queryParams.entrySet()) {
+        for (Map.Entry<String, List<String>> queryParamEntry : QueryStringParser.parse(query).entrySet()) {
             requestBuilder.withQueryParam(queryParamEntry.getKey(), queryParamEntry.getValue());
         }
 
         return requestBuilder.build();
     }
-}
\ No newline at end of file
+
+    /**
+     * @return whether the operation of the request declares a request body, which is only validated then
+     */
+    private static boolean hasRequestBody(ApiOperationMatch match) {
+        return match.isOperationAllowed() && match.getApiOperation().getOperation().getRequestBody() != null;
+    }
+
+    /**
+     * The specification and everything compiled from it, replaced as a whole when the specification is reloaded.
+     */
+    private static final class CompiledSpec {
+        private final OpenApiInteractionValidator validator;
+        // resolves the operation of a request before reading its body or headers
+        private final ApiOperationResolver operationResolver;
+        // header names by operation, computed once
+        private final Map<Operation, List<String>> headerNames = new IdentityHashMap<>();
+
+        /**
+         * @param api      the API, shared by the validator and the resolver
+         * @param basePath context path of api, or {@code null}
+         */
+        private CompiledSpec(OpenAPI api, String basePath) {
+            this.validator = OpenApiInteractionValidator
+                    .createFor(api)
+                    .withBasePathOverride(basePath)
+                    .build();
+            this.operationResolver = new ApiOperationResolver(api, basePath);
+
+            if (api.getPaths() != null) {
+                for (PathItem pathItem : api.getPaths().values()) {
+                    for (Operation operation : pathItem.readOperations()) {
+                        headerNames.put(operation, headerNamesOf(api, pathItem, operation));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.apache.camel.Exchange;
+import org.apache.camel.StreamCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads the JSON bodies that aren't text, as set by the route or the consumer, without converting them to a String.
+ * <p>
+ * {@link JsonNode} bodies are used as they are, and maps, collections and POJOs are converted to a tree by the
+ * object mapper. {@code byte[]}, {@link ByteBuffer} and Netty {@code ByteBuf} bodies are parsed straight from their
+ * bytes, decoded with the charset of the content type. Netty isn't a dependency, its buffers are read through
+ * their NIO view, which shares their content and leaves their indexes untouched.
+ */
+final class TypedBodies {
+    private static final String NETTY_BYTE_BUF = "io.netty.buffer.ByteBuf";
+
+    private static volatile Method nioBuffer;
+
+    private TypedBodies() {
+    }
+
+    /**
+     * @param body the body of the message
+     * @return whether the body is an object converted to a tree rather than parsed
+     */
+    static boolean isObject(Object body) {
+        if (body instanceof JsonNode || body instanceof Map || body instanceof Collection) return true;
+        if (body == null || body.getClass().isArray() || byteBufClassOf(body.getClass()) != null) return false;
+
+        final String className = body.getClass().getName();
+        return !className.startsWith("java.") && !className.startsWith("javax.") && !className.startsWith("org.w3c.")
+                && !className.startsWith("org.xml.") && !className.startsWith("org.apache.camel.")
+                && !(body instanceof InputStream) && !(body instanceof StreamCache);
+    }
+
+    /**
+     * @param body the body of the message
+     * @return the readable bytes of a {@code byte[]}, {@code ByteBuffer} or {@code ByteBuf} body,
+     * or {@code null} if the body is of another type
+     */
+    static ByteBuffer bytesOf(Object body) {
+        if (body instanceof byte[]) return ByteBuffer.wrap((byte[]) body);
+        // a view, so the position of the body doesn't move
+        if (body instanceof ByteBuffer) return ((ByteBuffer) body).duplicate();
+
+        final Class<?> byteBufClass = body != null ? byteBufClassOf(body.getClass()) : null;
+        if (byteBufClass == null) return null;
+
+        try {
+            Method method = nioBuffer;
+            if (method == null) {
+                method = nioBuffer = byteBufClass.getMethod("nioBuffer");
+            }
+            return (ByteBuffer) method.invoke(body);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the type converter
+            return null;
+        }
+    }
+
+    private static Class<?> byteBufClassOf(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            if (NETTY_BYTE_BUF.equals(c.getName())) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Converts the body to a tree, or parses its bytes.
+     *
+     * @param mapper      the object mapper converting and parsing the body
+     * @param exchange    the exchange of the request
+     * @param contentType the content type of the request, its charset decoding the bytes
+     * @return the body, or {@code null} if it's empty, neither an object nor bytes, or an object the mapper can't convert
+     * @throws IOException if the bytes aren't well-formed JSON
+     */
+    static JsonNode nodeOf(ObjectMapper mapper, Exchange exchange, String contentType) throws IOException {
+        final Object body = exchange.getMessage().getBody();
+        if (body instanceof JsonNode) return (JsonNode) body;
+        if (isObject(body)) {
+            try {
+                return mapper.valueToTree(body);
+            } catch (IllegalArgumentException e) {
+                // read as a String, which reports it
+                return null;
+            }
+        }
+
+        final ByteBuffer bytes = bytesOf(body);
+        if (bytes == null || !bytes.hasRemaining()) return null;
+
+        final Charset charset = charsetOf(exchange, contentType);
+        final JsonNode node;
+        if (charset != null && !isUnicode(charset)) {
+            // Jackson only detects the Unicode encodings by itself
+            node = mapper.readTree(new InputStreamReader(streamOf(bytes), charset));
+        } else if (bytes.hasArray()) {
+            node = mapper.readTree(mapper.getFactory().createParser(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+        } else {
+            node = mapper.readTree(streamOf(bytes));
+        }
+        return node == null || node.isMissingNode() ? null : node;
+    }
+
+    private static InputStream streamOf(ByteBuffer bytes) {
+        return new ByteBufferBackedInputStream(bytes);
+    }
+
+    /**
+     * @return the charset of the content type, else of the exchange, or {@code null} if neither has one
+     */
+    private static Charset charsetOf(Exchange exchange, String contentType) {
+        final MediaTypeUtils.CompactMediaType mediaType = MediaTypeUtils.CompactMediaType.parse(contentType);
+        final Charset charset = mediaType != null ? mediaType.getCharset() : null;
+        if (charset != null) return charset;
+
+        final String charsetName = exchange.getProperty(Exchange.CHARSET_NAME, String.class);
+        try {
+            return charsetName != null ? Charset.forName(charsetName) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isUnicode(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.name().startsWith("UTF-16") || charset.name().startsWith("UTF-32");
+    }
+}
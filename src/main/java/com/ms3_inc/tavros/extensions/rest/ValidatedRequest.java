@@ -0,0 +1,119 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openapi4j.operation.validator.model.impl.RequestParameters;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The parameters of a valid request, parsed and converted to the types of their schemas, and its parsed body,
+ * set by the {@link OpenApi4jValidator} in the {@value #EXCHANGE_VALIDATED_REQUEST} exchange property,
+ * see {@link OpenApi4jValidator#withValidatedRequest(boolean)}. Downstream processors can use them instead of
+ * parsing the path, query, headers and body again.
+ * <pre>
+ * ValidatedRequest request = exchange.getProperty(ValidatedRequest.EXCHANGE_VALIDATED_REQUEST, ValidatedRequest.class);
+ * int limit = request.getQueryParameter("limit").asInt();
+ * </pre>
+ */
+public class ValidatedRequest {
+    public static final String EXCHANGE_VALIDATED_REQUEST = "CamelxRestValidatedRequest";
+
+    private final RequestParameters parameters;
+    private final JsonNode body;
+
+    ValidatedRequest(RequestParameters parameters, JsonNode body) {
+        this.parameters = parameters;
+        this.body = body;
+    }
+
+    /**
+     * @return the path parameters by name
+     */
+    public Map<String, JsonNode> getPathParameters() {
+        return nonNull(parameters.getPathParameters());
+    }
+
+    /**
+     * @return the query parameters by name
+     */
+    public Map<String, JsonNode> getQueryParameters() {
+        return nonNull(parameters.getQueryParameters());
+    }
+
+    /**
+     * @return the header parameters by their name in the specification
+     */
+    public Map<String, JsonNode> getHeaderParameters() {
+        return nonNull(parameters.getHeaderParameters());
+    }
+
+    /**
+     * @return the cookie parameters by name
+     */
+    public Map<String, JsonNode> getCookieParameters() {
+        return nonNull(parameters.getCookieParameters());
+    }
+
+    /**
+     * @param name the name of the parameter
+     * @return the value of the parameter, or {@code null} if the request doesn't have it
+     */
+    public JsonNode getPathParameter(String name) {
+        return getPathParameters().get(name);
+    }
+
+    /**
+     * @param name the name of the parameter
+     * @return the value of the parameter, or {@code null} if the request doesn't have it
+     */
+    public JsonNode getQueryParameter(String name) {
+        return getQueryParameters().get(name);
+    }
+
+    /**
+     * @param name the name of the parameter in the specification
+     * @return the value of the parameter, or {@code null} if the request doesn't have it
+     */
+    public JsonNode getHeaderParameter(String name) {
+        return getHeaderParameters().get(name);
+    }
+
+    /**
+     * @param name the name of the parameter
+     * @return the value of the parameter, or {@code null} if the request doesn't have it
+     */
+    public JsonNode getCookieParameter(String name) {
+        return getCookieParameters().get(name);
+    }
+
+    /**
+     * Returns the body parsed for the validation, only kept with {@link OpenApi4jValidator#withParsedBody(boolean)}.
+     * JSON bodies are kept as parsed, and XML bodies as converted for the validation.
+     *
+     * @return the body, or {@code null} if it isn't kept, or the request doesn't have a JSON or XML body
+     */
+    public JsonNode getBody() {
+        return body;
+    }
+
+    private static Map<String, JsonNode> nonNull(Map<String, JsonNode> parameters) {
+        return parameters != null ? parameters : Collections.emptyMap();
+    }
+}
@@ -0,0 +1,149 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openapi4j.core.validation.ValidationResults;
+import org.openapi4j.core.validation.ValidationSeverity;
+
+import java.util.List;
+
+/**
+ * Bounds the work spent on invalid requests and the size of what's reported about them, see
+ * {@link OpenApi4jValidator#withLimits(ValidationLimits)}.
+ * <p>
+ * Validation stops once the maximum number of errors is found: parameters are validated one kind at a time,
+ * path, query, headers then cookies, and NDJSON and array bodies item by item, so the remaining ones are skipped.
+ * Other bodies are validated whole, but only the first errors are reported. The body can also be skipped as soon as
+ * a parameter is invalid.
+ * <p>
+ * Limits are immutable, {@code with} methods return a copy.
+ */
+public final class ValidationLimits {
+    /**
+     * Every error is reported, the default.
+     */
+    public static final ValidationLimits NONE = new ValidationLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+
+    private static final String TRUNCATED = "...";
+
+    private final int maxErrors;
+    private final int maxDiagnosticsLength;
+    private final boolean skipBodyOnInvalidParameters;
+
+    private ValidationLimits(int maxErrors, int maxDiagnosticsLength, boolean skipBodyOnInvalidParameters) {
+        this.maxErrors = maxErrors;
+        this.maxDiagnosticsLength = maxDiagnosticsLength;
+        this.skipBodyOnInvalidParameters = skipBodyOnInvalidParameters;
+    }
+
+    /**
+     * Stops at the first error, without validating the body if a parameter is invalid.
+     *
+     * @return the limits
+     */
+    public static ValidationLimits failFast() {
+        return new ValidationLimits(1, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Stops once the given number of errors is found.
+     *
+     * @param maxErrors the maximum number of errors reported
+     * @return the limits
+     * @throws IllegalArgumentException if the number isn't positive
+     */
+    public static ValidationLimits maxErrors(int maxErrors) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("The maximum number of errors must be positive");
+        }
+        return new ValidationLimits(maxErrors, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Caps the length of the diagnostics, which are cut at the limit and end with {@value #TRUNCATED} then.
+     *
+     * @param maxDiagnosticsLength the maximum number of characters of the diagnostics
+     * @return a copy of these limits with the given length
+     * @throws IllegalArgumentException if the length is 3 or less
+     */
+    public ValidationLimits withMaxDiagnosticsLength(int maxDiagnosticsLength) {
+        if (maxDiagnosticsLength <= TRUNCATED.length()) {
+            throw new IllegalArgumentException("The maximum diagnostics length must be greater than " + TRUNCATED.length());
+        }
+        return new ValidationLimits(maxErrors, maxDiagnosticsLength, skipBodyOnInvalidParameters);
+    }
+
+    /**
+     * Skips or not the validation of the body when a parameter is already invalid.
+     *
+     * @param skipBodyOnInvalidParameters whether the body is skipped
+     * @return a copy of these limits with the given option
+     */
+    public ValidationLimits withSkipBodyOnInvalidParameters(boolean skipBodyOnInvalidParameters) {
+        return new ValidationLimits(maxErrors, maxDiagnosticsLength, skipBodyOnInvalidParameters);
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    public int getMaxDiagnosticsLength() {
+        return maxDiagnosticsLength;
+    }
+
+    public boolean isSkipBodyOnInvalidParameters() {
+        return skipBodyOnInvalidParameters;
+    }
+
+    /**
+     * @return the number of errors that can still be found before the validation stops
+     */
+    public int remainingErrors(ValidationResults results) {
+        return maxErrors == Integer.MAX_VALUE ? maxErrors : Math.max(0, maxErrors - errorCount(results));
+    }
+
+    private static int errorCount(ValidationResults results) {
+        int count = 0;
+        for (ValidationResults.ValidationItem item : results.items()) {
+            if (item.severity() == ValidationSeverity.ERROR) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Builds the diagnostics of the first errors, one per line, within the maximum length.
+     *
+     * @param results the results of the validation
+     * @param errors  receives the first errors
+     * @return the diagnostics
+     */
+    String diagnosticsOf(ValidationResults results, List<OperationResult.Diagnostic> errors) {
+        final StringBuilder diagnostics = new StringBuilder();
+        final List<ValidationResults.ValidationItem> items = results.items();
+        for (int i = 0; i < items.size() && i < maxErrors && diagnostics.length() <= maxDiagnosticsLength; i++) {
+            final ValidationResults.ValidationItem item = items.get(i);
+            errors.add(new OperationResult.Diagnostic(String.valueOf(item.code()), item.dataCrumbs(), item.message()));
+            diagnostics.append(item.toString()).append(System.lineSeparator());
+        }
+
+        if (diagnostics.length() > maxDiagnosticsLength) {
+            diagnostics.setLength(maxDiagnosticsLength - TRUNCATED.length());
+            diagnostics.append(TRUNCATED);
+        }
+        return diagnostics.toString();
+    }
+}
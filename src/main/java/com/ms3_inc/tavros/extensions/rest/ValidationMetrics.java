@@ -0,0 +1,76 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collection;
+
+/**
+ * Receives the measurements of the validators, see {@link OpenApi4jValidator#withMetrics(ValidationMetrics)}
+ * and {@link SwaggerRequestValidator#withMetrics(ValidationMetrics)}.
+ * <p>
+ * Operations are identified by their {@code operationId}, or by their method and templated path when they
+ * don't have one. Requests that don't match any operation are reported as {@link #UNKNOWN_OPERATION}.
+ * Implementations are called from the validating threads, so they must be thread-safe and fast.
+ * {@link ValidationStatistics} keeps them in memory and exposes them through JMX, other implementations
+ * can forward them to a metrics library, e.g. Micrometer timers and counters.
+ */
+public interface ValidationMetrics {
+    /**
+     * The operation reported for requests that don't match any operation.
+     */
+    String UNKNOWN_OPERATION = "unknown";
+
+    /**
+     * The stages of a validation.
+     */
+    enum Stage {
+        /** finding the operation of the request */
+        LOOKUP,
+        /** building the request to validate, including reading and parsing the body */
+        REQUEST,
+        /** validating the path, query, header and cookie parameters */
+        PARAMETERS,
+        /** validating the body */
+        BODY,
+        /** validating parameters and body, when the validator can't tell them apart */
+        VALIDATION
+    }
+
+    /**
+     * @param operationId the operation of the request
+     * @param stage       the stage
+     * @param nanos       the time spent in the stage
+     */
+    void recordStage(String operationId, Stage stage, long nanos);
+
+    /**
+     * @param operationId the operation of the request
+     * @param size        the size of the body in bytes, or characters for String bodies
+     */
+    void recordBodySize(String operationId, long size);
+
+    /**
+     * @param operationId the operation of the request
+     */
+    void recordSuccess(String operationId);
+
+    /**
+     * @param operationId the operation of the request
+     * @param errorCodes  the distinct codes of the errors reported by the validation library
+     */
+    void recordFailure(String operationId, Collection<String> errorCodes);
+}
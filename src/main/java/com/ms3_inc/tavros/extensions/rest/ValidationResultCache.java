@@ -0,0 +1,173 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of validation outcomes, keyed by a fingerprint of the request built by the validator
+ * from the inputs the specification looks at.
+ * <p>
+ * Entries expire after a fixed time to live, and the least recently used entry is evicted once the
+ * cache is full. Requests with a body are not cached, unless {@link #withBodies(boolean) enabled}.
+ * <p>
+ * A cache is meant for a single validator, see {@link OpenApi4jValidator#withResultCache(ValidationResultCache)}.
+ */
+public class ValidationResultCache {
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier ticker;
+    private final Map<String, Outcome> outcomes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean bodies;
+
+    /**
+     * @param maximumSize the maximum number of outcomes kept
+     * @param timeToLive  how long an outcome is kept after it's cached
+     * @throws IllegalArgumentException if the size or the time to live isn't positive
+     */
+    public ValidationResultCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    ValidationResultCache(int maximumSize, Duration timeToLive, LongSupplier ticker) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maximumSize);
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("The time to live must be positive: " + timeToLive);
+        }
+
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.ticker = ticker;
+        this.outcomes = new LinkedHashMap<String, Outcome>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+                if (size() <= ValidationResultCache.this.maximumSize) return false;
+
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Enables or disables the caching of requests with a body, disabled by default.
+     * The body is then part of the fingerprint, so only identical bodies share an outcome.
+     *
+     * @param bodies whether requests with a body are cached
+     * @return this cache
+     */
+    public ValidationResultCache withBodies(boolean bodies) {
+        this.bodies = bodies;
+        return this;
+    }
+
+    public boolean isCachingBodies() {
+        return bodies;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the request
+     * @return the outcome of the request, or {@code null} if it isn't cached or has expired
+     */
+    Outcome get(String fingerprint) {
+        final Outcome outcome;
+        synchronized (outcomes) {
+            Outcome cached = outcomes.get(fingerprint);
+            if (cached != null && ticker.getAsLong() - cached.cachedAt >= timeToLiveNanos) {
+                outcomes.remove(fingerprint);
+                evictions.increment();
+                cached = null;
+            }
+            outcome = cached;
+        }
+
+        (outcome != null ? hits : misses).increment();
+        return outcome;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the request
+     * @param failure     the failure of the request, or {@code null} if it's valid
+     */
+    void put(String fingerprint, OperationResult.Message failure) {
+        final Outcome outcome = new Outcome(failure, ticker.getAsLong());
+        synchronized (outcomes) {
+            outcomes.put(fingerprint, outcome);
+        }
+    }
+
+    /**
+     * Discards all the outcomes, the counters are kept.
+     */
+    public void clear() {
+        synchronized (outcomes) {
+            outcomes.clear();
+        }
+    }
+
+    /**
+     * @return the number of outcomes, including the expired ones not evicted yet
+     */
+    public int size() {
+        synchronized (outcomes) {
+            return outcomes.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of outcomes evicted because the cache was full or they expired
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * The outcome of the validation of a request.
+     */
+    static final class Outcome {
+        private final OperationResult.Message failure;
+        private final long cachedAt;
+
+        private Outcome(OperationResult.Message failure, long cachedAt) {
+            this.failure = failure;
+            this.cachedAt = cachedAt;
+        }
+
+        /**
+         * @return the failure, or {@code null} if the request is valid
+         */
+        OperationResult.Message getFailure() {
+            return failure;
+        }
+    }
+}
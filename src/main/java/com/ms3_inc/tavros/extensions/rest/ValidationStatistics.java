@@ -0,0 +1,250 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the measurements of validators in memory, per operation, and exposes them as an MXBean
+ * once {@link #registerMBean(String) registered}, e.g. for JConsole or the JMX tooling of Camel.
+ * <p>
+ * Latencies and body sizes are recorded in histograms of power of two buckets, so recording
+ * doesn't allocate and only contends on striped counters.
+ */
+public class ValidationStatistics implements ValidationMetrics, ValidationStatisticsMXBean {
+    /**
+     * The JMX domain of the registered statistics.
+     */
+    public static final String JMX_DOMAIN = "com.ms3_inc.tavros.extensions.rest";
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private ObjectName objectName;
+
+    /**
+     * Registers the statistics in the platform MBean server, as
+     * {@code com.ms3_inc.tavros.extensions.rest:type=ValidationStatistics,name=<name>}.
+     *
+     * @param name the name of the statistics, e.g. the name of the API
+     * @return these statistics
+     * @throws IllegalArgumentException if the statistics can't be registered, e.g. the name is already taken
+     */
+    public synchronized ValidationStatistics registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=ValidationStatistics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        return this;
+    }
+
+    /**
+     * Unregisters the statistics from the platform MBean server, if registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void recordStage(String operationId, Stage stage, long nanos) {
+        operation(operationId).stages.get(stage).record(nanos);
+    }
+
+    @Override
+    public void recordBodySize(String operationId, long size) {
+        operation(operationId).bodySizes.record(size);
+    }
+
+    @Override
+    public void recordSuccess(String operationId) {
+        operation(operationId).successes.increment();
+    }
+
+    @Override
+    public void recordFailure(String operationId, Collection<String> errorCodes) {
+        Operation operation = operation(operationId);
+        operation.failures.increment();
+        for (String errorCode : errorCodes) {
+            operation.failuresByCode.computeIfAbsent(errorCode, code -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public List<OperationStatistics> getOperations() {
+        List<OperationStatistics> snapshots = new ArrayList<>(operations.size());
+        for (Map.Entry<String, Operation> operation : new TreeMap<>(operations).entrySet()) {
+            snapshots.add(operation.getValue().snapshot(operation.getKey()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * @param operationId the operation
+     * @return the statistics of the operation, or {@code null} if it hasn't been validated
+     */
+    public OperationStatistics getOperation(String operationId) {
+        Operation operation = operations.get(operationId);
+        return operation != null ? operation.snapshot(operationId) : null;
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return operations.values().stream().mapToLong(operation -> operation.successes.sum()).sum();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return operations.values().stream().mapToLong(operation -> operation.failures.sum()).sum();
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+    }
+
+    private Operation operation(String operationId) {
+        Operation operation = operations.get(operationId);
+        return operation != null ? operation : operations.computeIfAbsent(operationId, id -> new Operation());
+    }
+
+    private static final class Operation {
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> failuresByCode = new ConcurrentHashMap<>();
+        private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+        private final Histogram bodySizes = new Histogram();
+
+        private Operation() {
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, new Histogram());
+            }
+        }
+
+        private OperationStatistics snapshot(String operationId) {
+            Map<String, Long> failuresByCode = new TreeMap<>();
+            this.failuresByCode.forEach((code, count) -> failuresByCode.put(code, count.sum()));
+
+            Map<String, Double> meanMicros = new TreeMap<>();
+            Map<String, Long> p99Micros = new TreeMap<>();
+            Map<String, Long> maxMicros = new TreeMap<>();
+            for (Map.Entry<Stage, Histogram> stage : stages.entrySet()) {
+                Histogram histogram = stage.getValue();
+                if (histogram.count() == 0) continue;
+
+                String name = stage.getKey().name().toLowerCase();
+                meanMicros.put(name, histogram.mean() / TimeUnit.MICROSECONDS.toNanos(1));
+                p99Micros.put(name, TimeUnit.NANOSECONDS.toMicros(histogram.percentile(0.99)));
+                maxMicros.put(name, TimeUnit.NANOSECONDS.toMicros(histogram.max()));
+            }
+
+            return new OperationStatistics(operationId, successes.sum(), failures.sum(),
+                    Collections.unmodifiableMap(failuresByCode), Collections.unmodifiableMap(meanMicros),
+                    Collections.unmodifiableMap(p99Micros), Collections.unmodifiableMap(maxMicros),
+                    bodySizes.mean(), bodySizes.percentile(0.99), bodySizes.max());
+        }
+    }
+
+    /**
+     * Counts values in buckets of powers of two: bucket {@code b} holds the values
+     * from {@code 2^(b-1)} to {@code 2^b - 1}, bucket 0 holds 0.
+     */
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long value) {
+            if (value < 0) value = 0;
+
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        private long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        private double mean() {
+            long count = count();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        private long max() {
+            return max.get();
+        }
+
+        private long percentile(double percentile) {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            if (count == 0) return 0;
+
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // the upper bound of the bucket, but never above the largest value recorded
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max());
+                }
+            }
+            return max();
+        }
+    }
+}
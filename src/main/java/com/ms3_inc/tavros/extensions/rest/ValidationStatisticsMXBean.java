@@ -0,0 +1,44 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+/**
+ * The management interface of {@link ValidationStatistics}.
+ */
+public interface ValidationStatisticsMXBean {
+    /**
+     * @return the statistics of every operation validated so far
+     */
+    List<OperationStatistics> getOperations();
+
+    /**
+     * @return the number of valid requests, all operations included
+     */
+    long getSuccessCount();
+
+    /**
+     * @return the number of invalid requests, all operations included
+     */
+    long getFailureCount();
+
+    /**
+     * Discards the statistics collected so far.
+     */
+    void reset();
+}
@@ -0,0 +1,338 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openapi4j.core.model.OAIContext;
+import org.openapi4j.parser.model.v3.Schema;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts XML documents to a {@link JsonNode} straight from a StAX reader, without building
+ * an intermediate String or DOM.
+ * <p>
+ * The conversion is driven by the schema of the request body, following the OpenAPI XML object:
+ * <ul>
+ * <li>the root element is the schema itself, its name is not kept</li>
+ * <li>attributes and child elements become fields, matched to properties by {@code xml.name} or property name</li>
+ * <li>array properties collect the repeated elements, or the children of the wrapper element when {@code xml.wrapped}</li>
+ * <li>text is coerced to the {@code integer}, {@code number} or {@code boolean} type of its schema,
+ * and left as a string if it doesn't parse, so the validator can report it</li>
+ * </ul>
+ * Elements without a schema are converted like Jackson's {@code XmlMapper} does, except repeated elements
+ * are collected in an array. DTDs and external entities are not supported.
+ * <p>
+ * Elements are converted recursively, so documents nested deeper than {@value #MAX_DEPTH} elements are rejected
+ * as malformed rather than exhausting the stack.
+ */
+public class XmlStreamConverter {
+    /**
+     * The maximum nesting depth of elements, the root element being at depth 1.
+     */
+    public static final int MAX_DEPTH = 512;
+
+    // without DTDs, shared with the structure checks of PayloadLimits
+    static final XMLInputFactory XML_INPUT_FACTORY = newInputFactory();
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final String TYPE_ARRAY = "array";
+    private static final String TYPE_OBJECT = "object";
+
+    private final OAIContext context;
+    // resolved references and element layouts, schemas don't change once parsed
+    private final Map<String, Schema> references = new ConcurrentHashMap<>();
+    private final Map<Schema, Map<String, Property>> layouts = new ConcurrentHashMap<>();
+
+    /**
+     * @param context the context of the API, used to resolve schema references
+     */
+    public XmlStreamConverter(OAIContext context) {
+        this.context = context;
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Converts the document read from a stream, detecting its encoding.
+     *
+     * @param in     the document
+     * @param schema the schema of the document, or {@code null}
+     * @return the converted document
+     * @throws XMLStreamException if the document is malformed
+     */
+    public JsonNode convert(InputStream in, Schema schema) throws XMLStreamException {
+        return convert(XML_INPUT_FACTORY.createXMLStreamReader(in), schema);
+    }
+
+    /**
+     * Converts the document read from a reader.
+     *
+     * @param in     the document
+     * @param schema the schema of the document, or {@code null}
+     * @return the converted document
+     * @throws XMLStreamException if the document is malformed
+     */
+    public JsonNode convert(Reader in, Schema schema) throws XMLStreamException {
+        return convert(XML_INPUT_FACTORY.createXMLStreamReader(in), schema);
+    }
+
+    private JsonNode convert(XMLStreamReader reader, Schema schema) throws XMLStreamException {
+        try {
+            reader.nextTag();
+            JsonNode node = element(reader, schema, 1);
+
+            // reach the end to report trailing garbage
+            while (reader.hasNext()) {
+                reader.next();
+            }
+
+            return node;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Converts the element the reader is on, and leaves the reader on its end tag.
+     */
+    private JsonNode element(XMLStreamReader reader, Schema schema, int depth) throws XMLStreamException {
+        if (depth > MAX_DEPTH) {
+            throw new XMLStreamException("Elements are nested deeper than " + MAX_DEPTH + " levels", reader.getLocation());
+        }
+        schema = resolve(schema);
+
+        if (TYPE_ARRAY.equals(typeOf(schema))) {
+            return array(reader, schema.getItemsSchema(), depth);
+        }
+
+        ObjectNode object = null;
+        // the text only matters for elements without children, most have a single text event
+        final boolean textual = !TYPE_OBJECT.equals(typeOf(schema));
+        String text = null;
+        StringBuilder texts = null;
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (object == null) object = NODES.objectNode();
+            Property property = property(schema, reader.getAttributeLocalName(i));
+            object.set(property.name, scalar(reader.getAttributeValue(i), resolve(property.schema)));
+        }
+
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (object == null) object = NODES.objectNode();
+                    child(reader, schema, object, depth + 1);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (!textual || object != null) break;
+                    if (text == null) {
+                        text = reader.getText();
+                    } else {
+                        if (texts == null) texts = new StringBuilder(text);
+                        texts.append(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (object != null) return object;
+                    if (!textual) return NODES.objectNode();
+                    return scalar(texts != null ? texts.toString() : text != null ? text : "", schema);
+                default:
+                    // comments, processing instructions and ignorable whitespace
+            }
+        }
+    }
+
+    private void child(XMLStreamReader reader, Schema schema, ObjectNode object, int depth) throws XMLStreamException {
+        Property property = property(schema, reader.getLocalName());
+        Schema propertySchema = resolve(property.schema);
+
+        if (TYPE_ARRAY.equals(typeOf(propertySchema))
+                && (propertySchema.getXml() == null || !propertySchema.getXml().isWrapped())) {
+            // unwrapped array, each occurrence is an item
+            JsonNode item = element(reader, propertySchema.getItemsSchema(), depth);
+            JsonNode items = object.get(property.name);
+            if (items instanceof ArrayNode) {
+                ((ArrayNode) items).add(item);
+            } else {
+                object.set(property.name, NODES.arrayNode().add(item));
+            }
+            return;
+        }
+
+        JsonNode value = element(reader, propertySchema, depth);
+        JsonNode previous = object.get(property.name);
+        if (previous == null) {
+            object.set(property.name, value);
+        } else if (previous instanceof ArrayNode && !TYPE_ARRAY.equals(typeOf(propertySchema))) {
+            ((ArrayNode) previous).add(value);
+        } else {
+            // repeated element without an array schema
+            object.set(property.name, NODES.arrayNode().add(previous).add(value));
+        }
+    }
+
+    private ArrayNode array(XMLStreamReader reader, Schema itemsSchema, int depth) throws XMLStreamException {
+        ArrayNode array = NODES.arrayNode();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            array.add(element(reader, itemsSchema, depth + 1));
+        }
+
+        return array;
+    }
+
+    private static JsonNode scalar(String text, Schema schema) {
+        String type = typeOf(schema);
+        if (type == null) {
+            return NODES.textNode(text);
+        }
+
+        String value = text.trim();
+        try {
+            switch (type) {
+                case "integer":
+                    return value.length() < 19
+                            ? NODES.numberNode(Long.parseLong(value))
+                            : NODES.numberNode(new BigInteger(value));
+                case "number":
+                    return NODES.numberNode(new BigDecimal(value));
+                case "boolean":
+                    if ("true".equals(value)) return NODES.booleanNode(true);
+                    if ("false".equals(value)) return NODES.booleanNode(false);
+                    break;
+                default:
+            }
+        } catch (NumberFormatException e) {
+            // let the validator report the type mismatch
+        }
+
+        return NODES.textNode(text);
+    }
+
+    private static String typeOf(Schema schema) {
+        if (schema == null) return null;
+        if (schema.getType() != null) return schema.getType();
+        if (schema.getProperties() != null) return TYPE_OBJECT;
+        if (schema.getItemsSchema() != null) return TYPE_ARRAY;
+        return null;
+    }
+
+    private Schema resolve(Schema schema) {
+        if (schema == null || !schema.isRef() || context == null) {
+            return schema;
+        }
+
+        return references.computeIfAbsent(schema.getRef(), ref -> {
+            Schema resolved = schema.getFlatSchema(context);
+            return resolved != null ? resolved : new Schema();
+        });
+    }
+
+    private Property property(Schema schema, String elementName) {
+        if (schema == null) {
+            return new Property(elementName, null);
+        }
+
+        Map<String, Property> layout = layouts.get(schema);
+        if (layout == null) {
+            layout = layouts.computeIfAbsent(schema, this::layout);
+        }
+
+        Property property = layout.get(elementName);
+        return property != null ? property : new Property(elementName, null);
+    }
+
+    /**
+     * Maps the element and attribute names of an object schema to its properties,
+     * including the ones of its composed schemas.
+     */
+    private Map<String, Property> layout(Schema schema) {
+        Map<String, Property> layout = new HashMap<>();
+        addProperties(layout, schema, 0);
+        return layout.isEmpty() ? Collections.emptyMap() : layout;
+    }
+
+    private void addProperties(Map<String, Property> layout, Schema schema, int depth) {
+        schema = resolve(schema);
+        // guards against schemas composed of themselves
+        if (schema == null || depth > 8) return;
+
+        if (schema.getProperties() != null) {
+            for (Map.Entry<String, Schema> entry : schema.getProperties().entrySet()) {
+                Schema propertySchema = resolve(entry.getValue());
+                Property property = new Property(entry.getKey(), entry.getValue());
+
+                String elementName = propertySchema != null && propertySchema.getXml() != null && propertySchema.getXml().getName() != null
+                        ? propertySchema.getXml().getName()
+                        : entry.getKey();
+                layout.putIfAbsent(elementName, property);
+
+                // the items of unwrapped arrays may be named after the items schema
+                if (propertySchema != null && TYPE_ARRAY.equals(typeOf(propertySchema))) {
+                    Schema itemsSchema = resolve(propertySchema.getItemsSchema());
+                    if (itemsSchema != null && itemsSchema.getXml() != null && itemsSchema.getXml().getName() != null) {
+                        layout.putIfAbsent(itemsSchema.getXml().getName(), property);
+                    }
+                }
+            }
+        }
+
+        addComposedProperties(layout, schema.getAllOfSchemas(), depth);
+        addComposedProperties(layout, schema.getOneOfSchemas(), depth);
+        addComposedProperties(layout, schema.getAnyOfSchemas(), depth);
+    }
+
+    private void addComposedProperties(Map<String, Property> layout, List<Schema> schemas, int depth) {
+        if (schemas == null) return;
+
+        for (Schema schema : schemas) {
+            addProperties(layout, schema, depth + 1);
+        }
+    }
+
+    private static final class Property {
+        private final String name;
+        private final Schema schema;
+
+        private Property(String name, Schema schema) {
+            this.name = name;
+            this.schema = schema;
+        }
+    }
+}
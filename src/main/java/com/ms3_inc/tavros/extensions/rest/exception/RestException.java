@@ -22,21 +22,55 @@ import java.util.Optional;
 
 /***
  * Base class for all checked REST exceptions.
+ * <p>
+ * The exception message is rendered from the {@code OperationResult.Message} the first time it's asked for.
+ * Setting the {@code camelx.rest.ff.lightexceptions} system property or the {@code CAMELX_REST_FF_LIGHTEXCEPTIONS}
+ * environment variable to {@code true} also skips capturing the stack trace, which is of little use for
+ * failures reported to the client, to keep floods of invalid requests cheap.
  * @see <a href="https://tools.ietf.org/html/rfc7231#section-6.1">RFC Overview of Status Codes</a>
  */
 public abstract class RestException extends CamelException {
+	private final static boolean lightweight = Boolean.parseBoolean(
+			System.getProperty("camelx.rest.ff.lightexceptions",
+			System.getenv().getOrDefault("CAMELX_REST_FF_LIGHTEXCEPTIONS", "false")));
 	private final OperationResult.Message message;
+	private transient String renderedMessage;
 
 	public RestException(OperationResult.Message message) {
-		super(message.toString());
+		super();
 		this.message = message;
 	}
 
 	public RestException(OperationResult.Message message, Throwable cause) {
-		super(message.toString(), cause);
+		super(null, cause);
 		this.message = message;
 	}
 
+	/***
+	 * Whether the exceptions are created without a stack trace.
+	 *
+	 * @return {@code true} if the lightweight exceptions are enabled
+	 */
+	public static boolean isLightweight() {
+		return lightweight;
+	}
+
+	@Override
+	public String getMessage() {
+		String rendered = renderedMessage;
+		if (rendered == null) {
+			rendered = message.toString();
+			renderedMessage = rendered;
+		}
+		return rendered;
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		// called by the Throwable constructor, before the fields of this class are set
+		return lightweight ? this : super.fillInStackTrace();
+	}
+
 	/***
 	 * Getter for the {@code OperationResult.Message}.
 	 *
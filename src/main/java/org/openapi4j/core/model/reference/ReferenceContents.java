@@ -0,0 +1,44 @@
+package org.openapi4j.core.model.reference;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the contents of the references resolved in a {@link ReferenceRegistry}, which only exposes them to its
+ * package. They include the parts of the external documents the specification refers to, which aren't in its
+ * base document.
+ */
+public final class ReferenceContents {
+    private ReferenceContents() {
+    }
+
+    /**
+     * @param registry the reference registry of a context
+     * @return the contents of the references by canonical reference
+     */
+    public static Map<String, JsonNode> of(ReferenceRegistry registry) {
+        final Map<String, JsonNode> contents = new HashMap<>();
+        for (Reference reference : registry.getReferences()) {
+            contents.put(reference.getCanonicalRef(), reference.getContent());
+        }
+        return contents;
+    }
+}
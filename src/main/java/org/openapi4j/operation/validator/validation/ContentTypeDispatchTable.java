@@ -0,0 +1,171 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.ms3_inc.tavros.extensions.rest.MediaTypeUtils;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the value (e.g. the body validator) declared for the content type of a request.
+ * <p>
+ * The declared media types are split once into tiers, looked up in this order:
+ * <ol>
+ * <li>exact types, e.g. {@code application/json}</li>
+ * <li>suffix wildcards, e.g. {@code application/*+json}</li>
+ * <li>type wildcards, e.g. {@code application/*}</li>
+ * <li>{@code *}{@code /*}</li>
+ * </ol>
+ * Within a tier, media types declaring more parameters come first, then declaration order.
+ * The first candidate that {@link MediaTypeUtils#includes includes} the content type wins.
+ * <p>
+ * Resolutions are cached by raw header value, so repeated content types are neither parsed
+ * nor matched again. Once {@link #CACHE_CAPACITY} headers are cached, the least recently used one is evicted.
+ *
+ * @param <V> the type of the resolved values
+ */
+final class ContentTypeDispatchTable<V> {
+    static final int CACHE_CAPACITY = 64;
+
+    private static final Comparator<Candidate<?>> MOST_PARAMETERS_FIRST =
+            Comparator.comparingInt(candidate -> -candidate.mimeType.getParameters().size());
+
+    private final Map<String, List<Candidate<V>>> exact = new HashMap<>();
+    private final Map<String, List<Candidate<V>>> suffixes = new HashMap<>();
+    private final Map<String, List<Candidate<V>>> types = new HashMap<>();
+    private final List<Candidate<V>> any = new ArrayList<>(1);
+
+    // values are never null, headers without a value map to the none candidate
+    private final Map<String, Candidate<V>> cache = new LinkedHashMap<String, Candidate<V>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Candidate<V>> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+    private final Candidate<V> none = new Candidate<>(null, null);
+
+    /**
+     * @param values the values by media type, in declaration order
+     */
+    ContentTypeDispatchTable(LinkedHashMap<MimeType, V> values) {
+        for (Map.Entry<MimeType, V> entry : values.entrySet()) {
+            MimeType mimeType = entry.getKey();
+            Candidate<V> candidate = new Candidate<>(mimeType, entry.getValue());
+
+            if (mimeType.isWildcardType()) {
+                any.add(candidate);
+            } else if (!mimeType.isWildcardSubtype()) {
+                exact.computeIfAbsent(mimeType.getType() + '/' + mimeType.getSubtype(), k -> new ArrayList<>(1)).add(candidate);
+            } else if (mimeType.getSubtype().startsWith("*+")) {
+                suffixes.computeIfAbsent(mimeType.getType() + '/' + mimeType.getSubtype().substring(2), k -> new ArrayList<>(1)).add(candidate);
+            } else {
+                types.computeIfAbsent(mimeType.getType(), k -> new ArrayList<>(1)).add(candidate);
+            }
+        }
+
+        // stable sort, declaration order is kept between media types with as many parameters
+        exact.values().forEach(candidates -> candidates.sort(MOST_PARAMETERS_FIRST));
+        suffixes.values().forEach(candidates -> candidates.sort(MOST_PARAMETERS_FIRST));
+        types.values().forEach(candidates -> candidates.sort(MOST_PARAMETERS_FIRST));
+        any.sort(MOST_PARAMETERS_FIRST);
+    }
+
+    /**
+     * @param rawContentType the content type header of the request
+     * @return the value declared for the content type, or {@code null} if the content type
+     * is not allowed or cannot be parsed
+     */
+    V get(String rawContentType) {
+        if (rawContentType == null) return null;
+
+        Candidate<V> candidate;
+        synchronized (cache) {
+            candidate = cache.get(rawContentType);
+        }
+
+        if (candidate == null) {
+            candidate = resolve(rawContentType);
+            synchronized (cache) {
+                cache.put(rawContentType, candidate);
+            }
+        }
+
+        return candidate.value;
+    }
+
+    /**
+     * @return whether the resolution of the content type is cached
+     */
+    boolean isCached(String rawContentType) {
+        synchronized (cache) {
+            return cache.containsKey(rawContentType);
+        }
+    }
+
+    private Candidate<V> resolve(String rawContentType) {
+        final MimeType contentType;
+        try {
+            contentType = MimeType.valueOf(rawContentType);
+        } catch (InvalidMimeTypeException e) {
+            return none;
+        }
+
+        Candidate<V> candidate = first(exact.get(contentType.getType() + '/' + contentType.getSubtype()), contentType);
+
+        int plusIdx = contentType.getSubtype().lastIndexOf('+');
+        if (candidate == null && plusIdx != -1) {
+            candidate = first(suffixes.get(contentType.getType() + '/' + contentType.getSubtype().substring(plusIdx + 1)), contentType);
+        }
+        if (candidate == null) {
+            candidate = first(types.get(contentType.getType()), contentType);
+        }
+        if (candidate == null) {
+            candidate = first(any, contentType);
+        }
+
+        return candidate != null ? candidate : none;
+    }
+
+    private static <V> Candidate<V> first(List<Candidate<V>> candidates, MimeType contentType) {
+        if (candidates == null) return null;
+
+        for (Candidate<V> candidate : candidates) {
+            if (MediaTypeUtils.includes(candidate.mimeType, contentType)) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    private static final class Candidate<V> {
+        private final MimeType mimeType;
+        private final V value;
+
+        private Candidate(MimeType mimeType, V value) {
+            this.mimeType = mimeType;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openapi4j.operation.validator.model.Request;
+import org.openapi4j.operation.validator.util.PathResolver;
+import org.openapi4j.parser.model.v3.OpenApi3;
+import org.openapi4j.parser.model.v3.Operation;
+import org.openapi4j.parser.model.v3.Path;
+import org.openapi4j.parser.model.v3.Server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Segment trie over the methods and templated paths of an API.
+ * <p>
+ * {@link RequestValidator} resolves the operation of a request by trying the regular expression
+ * of every path in turn, which grows linearly with the size of the specification. This index
+ * walks the request path one segment at a time instead, so the cost of a lookup depends on the
+ * depth of the path rather than on the number of paths.
+ * <p>
+ * At every level literal segments are preferred over segments mixing literals and parameters
+ * (e.g. {@code {name}.json}), which are preferred over whole-segment parameters. When the
+ * preferred branch has no operation for the request method, the next one is tried.
+ * Server base paths, including one overridden through the servers of the API, are part of the trie.
+ */
+public class OperationIndex {
+    private final Node root = new Node();
+
+    /**
+     * Builds the index for all the operations of the given API.
+     *
+     * @param openApi    the API
+     * @param validators the factory of the validator stored with each operation
+     */
+    public OperationIndex(OpenApi3 openApi, BiFunction<Path, Operation, OperationValidator> validators) {
+        List<String> basePaths = basePaths(openApi);
+
+        for (Map.Entry<String, Path> pathEntry : openApi.getPaths().entrySet()) {
+            Path path = pathEntry.getValue();
+            if (path.getOperations() == null) continue;
+
+            for (Map.Entry<String, Operation> operationEntry : path.getOperations().entrySet()) {
+                Request.Method method = Request.Method.getMethod(operationEntry.getKey());
+                if (method == null) continue;
+
+                Match match = new Match(pathEntry.getKey(), path, operationEntry.getValue(),
+                        validators.apply(path, operationEntry.getValue()));
+                for (String basePath : basePaths) {
+                    insert(basePath + pathEntry.getKey()).put(method, match);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the operation matching the method and path of a request.
+     * The path is split into segments before they're decoded, so an encoded slash ({@code %2F}) stays
+     * within its segment.
+     *
+     * @param method      the request method
+     * @param requestPath the raw request path, percent-encoded as sent, see {@link #pathOf(String)}
+     * @return the match, or {@code null} if no path declares an operation for the method
+     */
+    public Match find(Request.Method method, String requestPath) {
+        String path = requestPath == null || requestPath.isEmpty() ? "/" : requestPath;
+        if (path.charAt(0) != '/') return null;
+
+        return find(root, path, 1, method);
+    }
+
+    /**
+     * Indicates whether any path matches the request path, regardless of its operations.
+     * Only used to tell an unknown path from a method that is not allowed.
+     *
+     * @param requestPath the raw request path, percent-encoded as sent
+     * @return {@code true} if a path of the API matches
+     */
+    public boolean containsPath(String requestPath) {
+        String path = requestPath == null || requestPath.isEmpty() ? "/" : requestPath;
+        if (path.charAt(0) != '/') return false;
+
+        return find(root, path, 1, null) != null;
+    }
+
+    private Match find(Node node, String path, int start, Request.Method method) {
+        if (start > path.length()) {
+            if (node.operations == null) return null;
+            // when looking for any operation, the first one will do
+            return method != null ? node.operations.get(method) : node.operations.values().iterator().next();
+        }
+
+        int end = path.indexOf('/', start);
+        if (end == -1) end = path.length();
+
+        final String segment = decode(path.substring(start, end));
+        Match match;
+        if (node.literals != null) {
+            Node child = node.literals.get(segment);
+            if (child != null && (match = find(child, path, end + 1, method)) != null) {
+                return match;
+            }
+        }
+
+        if (node.patterns != null) {
+            for (PatternNode child : node.patterns) {
+                if (child.pattern.matcher(segment).matches()
+                        && (match = find(child, path, end + 1, method)) != null) {
+                    return match;
+                }
+            }
+        }
+
+        if (node.parameter != null) {
+            return find(node.parameter, path, end + 1, method);
+        }
+
+        return null;
+    }
+
+    /**
+     * Takes the raw path of a request URL without parsing it as a URI, so URLs with characters a URI
+     * can't hold, e.g. spaces or braces, still have a path.
+     *
+     * @param url the request URL, absolute or not
+     * @return the path, without the query and the fragment, still percent-encoded
+     */
+    public static String pathOf(String url) {
+        if (url == null) return null;
+
+        int start = 0;
+        final int schemeEnd = url.indexOf("://");
+        if (!url.startsWith("/") && schemeEnd != -1) {
+            start = url.indexOf('/', schemeEnd + 3);
+            if (start == -1) return "/";
+        }
+
+        int end = start;
+        while (end < url.length() && url.charAt(end) != '?' && url.charAt(end) != '#') end++;
+        return url.substring(start, end);
+    }
+
+    /**
+     * Decodes the percent-encoded UTF-8 octets of a segment. Malformed escapes, e.g. a stray {@code %},
+     * are kept as they are rather than failing the lookup.
+     */
+    static String decode(String segment) {
+        if (segment.indexOf('%') == -1) return segment;
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(segment.length());
+        int literalStart = 0;
+        for (int i = 0; i + 2 < segment.length(); i++) {
+            int high;
+            int low;
+            if (segment.charAt(i) == '%' && (high = Character.digit(segment.charAt(i + 1), 16)) != -1
+                    && (low = Character.digit(segment.charAt(i + 2), 16)) != -1) {
+                writeUtf8(bytes, segment, literalStart, i);
+                bytes.write(high << 4 | low);
+                i += 2;
+                literalStart = i + 1;
+            }
+        }
+        writeUtf8(bytes, segment, literalStart, segment.length());
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeUtf8(ByteArrayOutputStream bytes, String value, int start, int end) {
+        if (start < end) {
+            byte[] encoded = value.substring(start, end).getBytes(StandardCharsets.UTF_8);
+            bytes.write(encoded, 0, encoded.length);
+        }
+    }
+
+    private Map<Request.Method, Match> insert(String templatePath) {
+        Node node = root;
+        int start = 1;
+
+        while (start <= templatePath.length()) {
+            int end = templatePath.indexOf('/', start);
+            if (end == -1) end = templatePath.length();
+
+            node = node.child(templatePath.substring(start, end));
+            start = end + 1;
+        }
+
+        if (node.operations == null) {
+            node.operations = new EnumMap<>(Request.Method.class);
+        }
+        return node.operations;
+    }
+
+    /**
+     * Resolves the base path of every server the same way {@link RequestValidator} does,
+     * without the trailing slash so it can be prepended to the templated paths.
+     */
+    private static List<String> basePaths(OpenApi3 openApi) {
+        if (openApi.getServers() == null || openApi.getServers().isEmpty()) {
+            return Collections.singletonList("");
+        }
+
+        List<String> basePaths = new ArrayList<>(openApi.getServers().size());
+        for (Server server : openApi.getServers()) {
+            // absolute URLs do not need the context, which is only missing for APIs built in code
+            String basePath = openApi.getContext() != null || server.getUrl().contains("://")
+                    ? PathResolver.instance().getResolvedPath(openApi.getContext(), server.getUrl())
+                    : server.getUrl();
+
+            while (basePath.endsWith("/")) {
+                basePath = basePath.substring(0, basePath.length() - 1);
+            }
+            if (!basePath.isEmpty() && basePath.charAt(0) != '/') {
+                basePath = "/" + basePath;
+            }
+            if (!basePaths.contains(basePath)) {
+                basePaths.add(basePath);
+            }
+        }
+
+        return basePaths;
+    }
+
+    /**
+     * The operation found for a request.
+     */
+    public static class Match {
+        private final String templatePath;
+        private final Path path;
+        private final Operation operation;
+        private final OperationValidator validator;
+
+        Match(String templatePath, Path path, Operation operation, OperationValidator validator) {
+            this.templatePath = templatePath;
+            this.path = path;
+            this.operation = operation;
+            this.validator = validator;
+        }
+
+        /**
+         * @return the templated path as declared in the specification, without base path
+         */
+        public String getTemplatePath() {
+            return templatePath;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public OperationValidator getValidator() {
+            return validator;
+        }
+    }
+
+    private static class Node {
+        private Map<String, Node> literals;
+        private List<PatternNode> patterns;
+        private Node parameter;
+        private Map<Request.Method, Match> operations;
+
+        Node child(String segment) {
+            if (segment.indexOf('{') == -1) {
+                if (literals == null) literals = new HashMap<>();
+                return literals.computeIfAbsent(segment, s -> new Node());
+            }
+
+            if (segment.charAt(0) == '{' && segment.indexOf('}') == segment.length() - 1) {
+                if (parameter == null) parameter = new Node();
+                return parameter;
+            }
+
+            if (patterns == null) patterns = new ArrayList<>(2);
+            for (PatternNode node : patterns) {
+                if (node.segment.equals(segment)) return node;
+            }
+            PatternNode node = new PatternNode(segment, PathResolver.instance().solve(segment));
+            patterns.add(node);
+            return node;
+        }
+    }
+
+    private static class PatternNode extends Node {
+        private final String segment;
+        private final Pattern pattern;
+
+        PatternNode(String segment, Pattern pattern) {
+            this.segment = segment;
+            this.pattern = pattern;
+        }
+    }
+}
@@ -17,7 +17,6 @@ package org.openapi4j.operation.validator.validation;
  */
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.ms3_inc.tavros.extensions.rest.MediaTypeUtils;
 import org.openapi4j.core.model.v3.OAI3;
 import org.openapi4j.core.validation.ValidationResult;
 import org.openapi4j.operation.validator.model.Request;
@@ -33,7 +32,7 @@ import org.openapi4j.schema.validator.ValidationData;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -45,19 +44,22 @@ import static org.openapi4j.core.validation.ValidationSeverity.ERROR;
  * from openapi4j v1.0.4. Modifications made to the original work include:
  * <li>Retain only pieces to be overriden and employ proxy pattern to original implementation</li>
  * <li>Using Spring MimeTypes and MediaTypeUtils for content type validation</li>
+ * <li>Resolving body validators through a {@link ContentTypeDispatchTable} built once per operation</li>
+ * <li>Validating responses with the original implementation</li>
+ * <li>Validating NDJSON bodies, and array bodies in streaming mode, item by item with a {@link StreamingBodyValidator}</li>
  * </p>
  */
 public class OperationValidatorExtension extends OperationValidator {
     private final OperationValidator proxy;
     private final Operation operation;
     private final ValidationContext<OAI3> context;
+    private final boolean streamingArrays;
 
     private static final ValidationResult BODY_REQUIRED_ERR = new ValidationResult(ERROR, 200, "Body is required but none provided.");
     private static final ValidationResult BODY_CONTENT_TYPE_ERR = new ValidationResult(ERROR, 202, "Body content type cannot be determined. No 'Content-Type' header available.");
     private static final ValidationResult BODY_WRONG_CONTENT_TYPE_ERR = new ValidationResult(ERROR, 203, "Content type '%s' is not allowed for body content.");
 
-    // Map<content type, validator>
-    private final Map<MimeType, BodyValidator> specRequestBodyValidators;
+    private final ContentTypeDispatchTable<BodyValidator> specRequestBodyValidators;
 
 
     private static final OpenApi3 dummyApi;
@@ -78,10 +80,20 @@ public class OperationValidatorExtension extends OperationValidator {
     }
 
     public OperationValidatorExtension(ValidationContext<OAI3> context, OperationValidator validator) {
+        this(context, validator, false);
+    }
+
+    /**
+     * @param context         the validation context
+     * @param validator       the original validator of the operation
+     * @param streamingArrays whether JSON array bodies are validated item by item, NDJSON bodies always are
+     */
+    public OperationValidatorExtension(ValidationContext<OAI3> context, OperationValidator validator, boolean streamingArrays) {
         super(dummyApi, dummyPath, dummyOp);
 
         this.proxy = validator;
         this.context = context;
+        this.streamingArrays = streamingArrays;
         this.operation = proxy.getOperation();
         specRequestBodyValidators = createRequestBodyValidators();
     }
@@ -121,6 +133,11 @@ public class OperationValidatorExtension extends OperationValidator {
         proxy.validateHeaders(response, validation);
     }
 
+    @Override
+    public void validateBody(Response response, ValidationData<?> validation) {
+        proxy.validateBody(response, validation);
+    }
+
     @Override
     public void validateBody(Request request, ValidationData<?> validation) {
         if (specRequestBodyValidators == null) return;
@@ -143,20 +160,12 @@ public class OperationValidatorExtension extends OperationValidator {
     }
 
 
-    private void validateBodyWithContentType(final Map<MimeType, BodyValidator> validators,
+    private void validateBodyWithContentType(final ContentTypeDispatchTable<BodyValidator> validators,
                                              final String rawContentType,
                                              final Body body,
                                              final ValidationData<?> validation) {
 
-        final MimeType contentType = MimeType.valueOf(rawContentType);
-
-        BodyValidator validator = null;
-        for (Map.Entry<MimeType, BodyValidator> mediaType : validators.entrySet()) {
-            if (MediaTypeUtils.includes(mediaType.getKey(), contentType)) {
-                validator = mediaType.getValue();
-                break;
-            }
-        }
+        final BodyValidator validator = validators.get(rawContentType);
 
         if (validator == null) {
             validation.add(BODY_WRONG_CONTENT_TYPE_ERR, rawContentType);
@@ -168,7 +177,7 @@ public class OperationValidatorExtension extends OperationValidator {
                 validation);
     }
 
-    private Map<MimeType, BodyValidator> createRequestBodyValidators() {
+    private ContentTypeDispatchTable<BodyValidator> createRequestBodyValidators() {
         if (operation.getRequestBody() == null) {
             return null;
         }
@@ -176,17 +185,18 @@ public class OperationValidatorExtension extends OperationValidator {
         return createBodyValidators(operation.getRequestBody().getContentMediaTypes());
     }
 
-    private Map<MimeType, BodyValidator> createBodyValidators(final Map<String, MediaType> mediaTypes) {
-        final Map<MimeType, BodyValidator> validators = new HashMap<>();
+    private ContentTypeDispatchTable<BodyValidator> createBodyValidators(final Map<String, MediaType> mediaTypes) {
+        final LinkedHashMap<MimeType, BodyValidator> validators = new LinkedHashMap<>();
 
         if (mediaTypes == null) {
             validators.put(MimeTypeUtils.ALL, new BodyValidator(context, null));
         } else {
             for (Map.Entry<String, MediaType> entry : mediaTypes.entrySet()) {
-                validators.put(MimeType.valueOf(entry.getKey()), new BodyValidator(context, entry.getValue()));
+                BodyValidator streaming = StreamingBodyValidator.create(context, entry.getKey(), entry.getValue(), streamingArrays);
+                validators.put(MimeType.valueOf(entry.getKey()), streaming != null ? streaming : new BodyValidator(context, entry.getValue()));
             }
         }
 
-        return validators;
+        return new ContentTypeDispatchTable<>(validators);
     }
 }
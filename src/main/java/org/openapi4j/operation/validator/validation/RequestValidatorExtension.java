@@ -16,29 +16,264 @@ package org.openapi4j.operation.validator.validation;
  * limitations under the License.
  */
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ms3_inc.tavros.extensions.rest.ValidationLimits;
+import com.ms3_inc.tavros.extensions.rest.ValidationMetrics;
+import org.openapi4j.core.model.reference.ReferenceContents;
 import org.openapi4j.core.model.v3.OAI3;
+import org.openapi4j.core.validation.ValidationException;
+import org.openapi4j.operation.validator.model.Request;
+import org.openapi4j.operation.validator.model.impl.RequestParameters;
 import org.openapi4j.parser.model.v3.OpenApi3;
 import org.openapi4j.parser.model.v3.Operation;
 import org.openapi4j.parser.model.v3.Path;
+import org.openapi4j.parser.model.v3.Server;
 import org.openapi4j.schema.validator.ValidationContext;
+import org.openapi4j.schema.validator.ValidationData;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjLongConsumer;
 
 /**
- * Custom RequestValidator that uses OperationValidatorExtension
+ * Custom RequestValidator that uses OperationValidatorExtension and resolves
+ * the operation of a request through an {@link OperationIndex}.
+ * Operations with NDJSON request bodies, or array request bodies in streaming mode, always use the extension,
+ * which validates them item by item.
  */
 public class RequestValidatorExtension extends RequestValidator {
+    private static final String INVALID_OP_ERR_MSG = "Operation not found from URL '%s' with method '%s'.";
+    private static final String INVALID_OP_PATH_ERR_MSG = "Operation path not found from URL '%s'.";
+    private static final String INVALID_REQUEST_ERR_MSG = "Invalid request.";
+    private static final String PATHS = "paths";
+
     private final ValidationContext<OAI3> context;
+    private final OpenApi3 openApi;
+    private final boolean extendedOperations;
+    private final boolean streamingArrays;
+    private final Map<Operation, OperationValidator> operationValidators = new ConcurrentHashMap<>();
+    private final OperationIndex index;
 
     public RequestValidatorExtension(OpenApi3 openApi) {
         this(new ValidationContext<>(openApi.getContext()), openApi);
     }
 
     public RequestValidatorExtension(ValidationContext<OAI3> context, OpenApi3 openApi) {
+        this(context, openApi, true);
+    }
+
+    /**
+     * @param context            the validation context
+     * @param openApi            the API
+     * @param extendedOperations whether operations are validated by {@link OperationValidatorExtension}
+     *                           or by the original {@link OperationValidator}
+     */
+    public RequestValidatorExtension(ValidationContext<OAI3> context, OpenApi3 openApi, boolean extendedOperations) {
+        this(context, openApi, extendedOperations, false, null);
+    }
+
+    /**
+     * @param context            the validation context
+     * @param openApi            the API
+     * @param extendedOperations whether operations are validated by {@link OperationValidatorExtension}
+     *                           or by the original {@link OperationValidator}
+     * @param streamingArrays    whether JSON array bodies are validated item by item, NDJSON bodies always are
+     */
+    public RequestValidatorExtension(ValidationContext<OAI3> context, OpenApi3 openApi, boolean extendedOperations,
+                                     boolean streamingArrays) {
+        this(context, openApi, extendedOperations, streamingArrays, null);
+    }
+
+    /**
+     * Constructs the validator of a new version of an API, reusing the operation validators of the previous
+     * version for the paths that didn't change. They're only reused when nothing but the paths changed,
+     * as the components, servers and security of the API, and the documents it refers to, may affect any operation.
+     *
+     * @param context            the validation context
+     * @param openApi            the API
+     * @param extendedOperations whether operations are validated by {@link OperationValidatorExtension}
+     *                           or by the original {@link OperationValidator}
+     * @param streamingArrays    whether JSON array bodies are validated item by item, NDJSON bodies always are
+     * @param previous           the validator of the previous version, or {@code null}
+     */
+    public RequestValidatorExtension(ValidationContext<OAI3> context, OpenApi3 openApi, boolean extendedOperations,
+                                     boolean streamingArrays, RequestValidatorExtension previous) {
         super(context, openApi);
         this.context = context;
+        this.openApi = openApi;
+        this.extendedOperations = extendedOperations;
+        this.streamingArrays = streamingArrays;
+        if (previous != null && previous.extendedOperations == extendedOperations && previous.streamingArrays == streamingArrays) {
+            reuseUnchangedOperations(previous);
+        }
+        this.index = new OperationIndex(openApi, this::getValidator);
+    }
+
+    private void reuseUnchangedOperations(RequestValidatorExtension previous) {
+        final JsonNode document = openApi.getContext().getBaseDocument();
+        final JsonNode previousDocument = previous.openApi.getContext().getBaseDocument();
+        if (document == null || previousDocument == null
+                || !equalExceptPaths(document, previousDocument)
+                || !referencedContentsEqual(openApi, previous.openApi)
+                || !serverUrls(openApi).equals(serverUrls(previous.openApi))) {
+            return;
+        }
+
+        for (Map.Entry<String, Path> pathEntry : openApi.getPaths().entrySet()) {
+            final Path previousPath = previous.openApi.getPath(pathEntry.getKey());
+            if (previousPath == null || pathEntry.getValue().getOperations() == null
+                    || !document.path(PATHS).path(pathEntry.getKey()).equals(previousDocument.path(PATHS).path(pathEntry.getKey()))) {
+                continue;
+            }
+
+            for (Map.Entry<String, Operation> operationEntry : pathEntry.getValue().getOperations().entrySet()) {
+                final Operation previousOperation = previousPath.getOperation(operationEntry.getKey());
+                final OperationValidator validator = previousOperation != null ? previous.operationValidators.get(previousOperation) : null;
+                if (validator != null) {
+                    operationValidators.put(operationEntry.getValue(), validator);
+                }
+            }
+        }
+    }
+
+    private static boolean equalExceptPaths(JsonNode document, JsonNode previousDocument) {
+        if (document.size() != previousDocument.size()) return false;
+
+        for (Iterator<Map.Entry<String, JsonNode>> fields = document.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!PATHS.equals(field.getKey()) && !field.getValue().equals(previousDocument.get(field.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The documents the specification refers to may have changed too, while its base document didn't.
+     */
+    private static boolean referencedContentsEqual(OpenApi3 openApi, OpenApi3 previousOpenApi) {
+        return ReferenceContents.of(openApi.getContext().getReferenceRegistry())
+                .equals(ReferenceContents.of(previousOpenApi.getContext().getReferenceRegistry()));
+    }
+
+    private static List<String> serverUrls(OpenApi3 openApi) {
+        final List<String> urls = new ArrayList<>();
+        if (openApi.getServers() != null) {
+            for (Server server : openApi.getServers()) {
+                urls.add(server.getUrl());
+            }
+        }
+        return urls;
     }
 
     @Override
     public OperationValidator getValidator(Path path, Operation operation) {
-        return new OperationValidatorExtension(context, super.getValidator(path, operation));
+        // the original validator is cached by the parent, the extension has to be cached here.
+        // Operations with streamed bodies always need the extension, the original can't stream them
+        return operationValidators.computeIfAbsent(operation, op -> extendedOperations || StreamingBodyValidator.hasStreamedBody(context, op, streamingArrays)
+                ? new OperationValidatorExtension(context, super.getValidator(path, op), streamingArrays)
+                : super.getValidator(path, op));
+    }
+
+    /**
+     * Finds the operation of a request.
+     *
+     * @param method      the request method
+     * @param requestPath the raw request path, see {@link OperationIndex#find(Request.Method, String)}
+     * @return the match, or {@code null} if the API has no operation for the request
+     */
+    public OperationIndex.Match find(Request.Method method, String requestPath) {
+        return index.find(method, requestPath);
+    }
+
+    @Override
+    public RequestParameters validate(Request request, ValidationData<?> validation) throws ValidationException {
+        return validate(request, index.find(request.getMethod(), OperationIndex.pathOf(request.getURL())), validation);
+    }
+
+    /**
+     * Validates a request against the operation previously found for it.
+     *
+     * @param request the request
+     * @param match   the operation found by {@link #find(Request.Method, String)}, or {@code null}
+     * @return the validated parameters
+     * @throws ValidationException if the operation wasn't found or the request isn't valid
+     */
+    public RequestParameters validate(Request request, OperationIndex.Match match) throws ValidationException {
+        return validate(request, match, new ValidationData<>());
+    }
+
+    /**
+     * Validates a request against the operation previously found for it, like {@link #validate(Request, OperationIndex.Match)},
+     * reporting the time spent validating the {@link ValidationMetrics.Stage#PARAMETERS parameters} and the
+     * {@link ValidationMetrics.Stage#BODY body}.
+     *
+     * @param request    the request
+     * @param match      the operation found by {@link #find(Request.Method, String)}, or {@code null}
+     * @param stageTimes receives the nanoseconds spent in each stage
+     * @return the validated parameters
+     * @throws ValidationException if the operation wasn't found or the request isn't valid
+     */
+    public RequestParameters validate(Request request, OperationIndex.Match match, ObjLongConsumer<ValidationMetrics.Stage> stageTimes)
+            throws ValidationException {
+        return validate(request, match, ValidationLimits.NONE, stageTimes);
+    }
+
+    /**
+     * Validates a request against the operation previously found for it, stopping once the maximum number of errors
+     * of the limits is found. Parameters are validated one kind at a time, and the limits are passed on to the
+     * body validators through the {@link ValidationData#delegate() delegate} of the validation data.
+     *
+     * @param request    the request
+     * @param match      the operation found by {@link #find(Request.Method, String)}, or {@code null}
+     * @param limits     the limits of the validation
+     * @param stageTimes receives the nanoseconds spent in each stage, or {@code null}
+     * @return the validated parameters
+     * @throws ValidationException if the operation wasn't found or the request isn't valid
+     */
+    public RequestParameters validate(Request request, OperationIndex.Match match, ValidationLimits limits,
+                                      ObjLongConsumer<ValidationMetrics.Stage> stageTimes) throws ValidationException {
+        if (match == null) {
+            return validate(request, match);
+        }
+
+        final OperationValidator validator = getValidator(match.getPath(), match.getOperation());
+        final ValidationData<ValidationLimits> validation = new ValidationData<>(limits);
+
+        long start = stageTimes != null ? System.nanoTime() : 0;
+        Map<String, JsonNode> pathParameters = validator.validatePath(request, validation);
+        Map<String, JsonNode> queryParameters = canContinue(validation) ? validator.validateQuery(request, validation) : null;
+        Map<String, JsonNode> headerParameters = canContinue(validation) ? validator.validateHeaders(request, validation) : null;
+        Map<String, JsonNode> cookieParameters = canContinue(validation) ? validator.validateCookies(request, validation) : null;
+        long parametersEnd = stageTimes != null ? System.nanoTime() : 0;
+        if (stageTimes != null) stageTimes.accept(ValidationMetrics.Stage.PARAMETERS, parametersEnd - start);
+
+        if (canContinue(validation) && (validation.isValid() || !limits.isSkipBodyOnInvalidParameters())) {
+            validator.validateBody(request, validation);
+            if (stageTimes != null) stageTimes.accept(ValidationMetrics.Stage.BODY, System.nanoTime() - parametersEnd);
+        }
+
+        if (!validation.isValid()) {
+            throw new ValidationException(INVALID_REQUEST_ERR_MSG, validation.results());
+        }
+        return new RequestParameters(pathParameters, queryParameters, headerParameters, cookieParameters);
+    }
+
+    private static boolean canContinue(ValidationData<ValidationLimits> validation) {
+        return validation.delegate().remainingErrors(validation.results()) > 0;
+    }
+
+    private RequestParameters validate(Request request, OperationIndex.Match match, ValidationData<?> validation) throws ValidationException {
+        if (match == null) {
+            if (index.containsPath(OperationIndex.pathOf(request.getURL()))) {
+                throw new ValidationException(String.format(INVALID_OP_ERR_MSG, request.getURL(), request.getMethod().name()));
+            }
+            throw new ValidationException(String.format(INVALID_OP_PATH_ERR_MSG, request.getURL()));
+        }
+
+        return validate(request, match.getPath(), match.getOperation(), validation);
     }
 }
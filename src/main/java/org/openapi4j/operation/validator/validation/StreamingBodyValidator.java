@@ -0,0 +1,245 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ms3_inc.tavros.extensions.rest.ValidationLimits;
+import org.openapi4j.core.exception.DecodeException;
+import org.openapi4j.core.model.v3.OAI3;
+import org.openapi4j.core.util.TreeUtil;
+import org.openapi4j.core.validation.ValidationResult;
+import org.openapi4j.core.validation.ValidationResults;
+import org.openapi4j.operation.validator.model.impl.Body;
+import org.openapi4j.parser.model.v3.MediaType;
+import org.openapi4j.parser.model.v3.Operation;
+import org.openapi4j.parser.model.v3.Schema;
+import org.openapi4j.schema.validator.JsonValidator;
+import org.openapi4j.schema.validator.ValidationContext;
+import org.openapi4j.schema.validator.ValidationData;
+import org.openapi4j.schema.validator.v3.SchemaValidator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.openapi4j.core.validation.ValidationSeverity.ERROR;
+
+/**
+ * Validates NDJSON bodies, and in streaming mode JSON bodies whose schema is an array, one item at a time against
+ * the schema of the items, instead of parsing the whole body into a tree first. Bodies are read with a streaming
+ * parser, so memory doesn't grow with the number of items when they come as a stream.
+ * <p>
+ * Each line of an NDJSON body is an item, validated against the {@code items} of the schema if it's an array,
+ * against the schema itself otherwise. Arrays requiring {@code uniqueItems} aren't streamed, as checking them needs
+ * every item. The {@code minItems} and {@code maxItems} of the array are checked by counting the items.
+ * <p>
+ * Validation stops after {@value #DEFAULT_MAX_ERRORS} invalid items, unless set otherwise by the
+ * {@code camelx.rest.ff.streamingmaxerrors} system property or the {@code CAMELX_REST_FF_STREAMINGMAXERRORS}
+ * environment variable, or once the maximum number of errors of the {@link ValidationLimits} of the request is found.
+ */
+class StreamingBodyValidator extends BodyValidator {
+    static final int DEFAULT_MAX_ERRORS = 10;
+
+    private static final int MAX_ERRORS = Integer.parseInt(
+            System.getProperty("camelx.rest.ff.streamingmaxerrors",
+            System.getenv().getOrDefault("CAMELX_REST_FF_STREAMINGMAXERRORS", String.valueOf(DEFAULT_MAX_ERRORS))));
+    private static final ValidationResults.CrumbInfo BODY_CRUMB = new ValidationResults.CrumbInfo("body", false);
+    private static final ValidationResult BODY_CONTENT_ERR = new ValidationResult(ERROR, 201, "An error occurred when getting the body content from type '%s'.%n%s");
+    private static final ValidationResult MIN_ITEMS_ERR = new ValidationResult(ERROR, 1016, "Min items is '%s', found '%s'.");
+    private static final ValidationResult MAX_ITEMS_ERR = new ValidationResult(ERROR, 1011, "Max items is '%s', found '%s'.");
+    private static final ValidationResult TOO_MANY_ERRORS_ERR = new ValidationResult(ERROR, 204, "Validation stopped after %s invalid items.");
+    private static final ValidationResults.CrumbInfo MIN_ITEMS_CRUMB = new ValidationResults.CrumbInfo("minItems", true);
+    private static final ValidationResults.CrumbInfo MAX_ITEMS_CRUMB = new ValidationResults.CrumbInfo("maxItems", true);
+
+    // the content of a Body isn't exposed by openapi4j
+    private static final MethodHandle BODY_STREAM = bodyField("bodyIs");
+    private static final MethodHandle BODY_STRING = bodyField("bodyStr");
+
+    private final boolean ndjson;
+    private final JsonValidator itemValidator;
+    private final Integer minItems;
+    private final Integer maxItems;
+
+    private StreamingBodyValidator(ValidationContext<OAI3> context, MediaType mediaType, boolean ndjson, Schema schema, Schema itemsSchema) {
+        super(context, mediaType);
+        this.ndjson = ndjson;
+        // unnamed, the crumbs of the body and the index of the item are added to its results
+        this.itemValidator = new SchemaValidator(context, null, TreeUtil.json.convertValue(itemsSchema.copy(), JsonNode.class));
+        this.minItems = schema != itemsSchema ? schema.getMinItems() : null;
+        this.maxItems = schema != itemsSchema ? schema.getMaxItems() : null;
+    }
+
+    private static MethodHandle bodyField(String name) {
+        try {
+            Field field = Body.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Unsupported openapi4j version", e);
+        }
+    }
+
+    /**
+     * @param context   the validation context
+     * @param mediaType the media type, e.g. {@code application/x-ndjson}
+     * @param content   the content of the media type
+     * @param arrays    whether JSON arrays are streamed too, NDJSON bodies always are
+     * @return the validator of the media type if its bodies are streamed, {@code null} otherwise
+     */
+    static StreamingBodyValidator create(ValidationContext<OAI3> context, String mediaType, MediaType content, boolean arrays) {
+        final boolean ndjson = isNdjson(mediaType);
+        if (!ndjson && !(arrays && isJson(mediaType))) return null;
+
+        final Schema schema = flatSchema(context, content != null ? content.getSchema() : null);
+        if (schema == null) return null;
+
+        if (!"array".equals(schema.getType()) || schema.getItemsSchema() == null) {
+            // every line of an NDJSON body has the schema, other bodies are validated whole
+            return ndjson ? new StreamingBodyValidator(context, content, true, schema, schema) : null;
+        }
+        if (Boolean.TRUE.equals(schema.getUniqueItems())) return null;
+
+        return new StreamingBodyValidator(context, content, ndjson, schema, schema.getItemsSchema());
+    }
+
+    /**
+     * @param arrays whether JSON arrays are streamed too, NDJSON bodies always are
+     * @return whether the request body of the operation has a media type whose bodies are streamed
+     */
+    static boolean hasStreamedBody(ValidationContext<OAI3> context, Operation operation, boolean arrays) {
+        if (operation.getRequestBody() == null || operation.getRequestBody().getContentMediaTypes() == null) return false;
+
+        for (Map.Entry<String, MediaType> mediaType : operation.getRequestBody().getContentMediaTypes().entrySet()) {
+            if (create(context, mediaType.getKey(), mediaType.getValue(), arrays) != null) return true;
+        }
+        return false;
+    }
+
+    private static Schema flatSchema(ValidationContext<OAI3> context, Schema schema) {
+        if (schema == null || !schema.isRef()) return schema;
+
+        try {
+            return schema.getReference(context.getContext()).getMappedContent(Schema.class);
+        } catch (DecodeException | RuntimeException e) {
+            // validated whole
+            return null;
+        }
+    }
+
+    private static boolean isNdjson(String mediaType) {
+        final String type = typeOf(mediaType);
+        return type.equals("application/x-ndjson") || type.equals("application/ndjson");
+    }
+
+    private static boolean isJson(String mediaType) {
+        final String type = typeOf(mediaType);
+        return type.endsWith("/json") || type.endsWith("+json");
+    }
+
+    private static String typeOf(String mediaType) {
+        final int paramsIdx = mediaType.indexOf(';');
+        return (paramsIdx == -1 ? mediaType : mediaType.substring(0, paramsIdx)).trim().toLowerCase();
+    }
+
+    @Override
+    void validate(Body body, String rawContentType, ValidationData<?> validation) {
+        if (body == null) {
+            super.validate(null, rawContentType, validation);
+            return;
+        }
+
+        try (JsonParser parser = parserOf(body)) {
+            if (parser == null) {
+                // already parsed, or an object of the caller
+                validateItems(TreeUtil.json.treeAsTokens(body.getContentAsNode(null, null, rawContentType)), rawContentType, validation);
+            } else {
+                validateItems(parser, rawContentType, validation);
+            }
+        } catch (IOException e) {
+            validation.add(BODY_CONTENT_ERR, rawContentType, e);
+        }
+    }
+
+    private static JsonParser parserOf(Body body) throws IOException {
+        try {
+            final InputStream stream = (InputStream) BODY_STREAM.invoke(body);
+            if (stream != null) {
+                // the stream belongs to the message, it may be read again once reset
+                return TreeUtil.json.getFactory().createParser(stream).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            }
+
+            final String string = (String) BODY_STRING.invoke(body);
+            if (string != null) return TreeUtil.json.getFactory().createParser(string);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return null;
+    }
+
+    private void validateItems(JsonParser parser, String rawContentType, ValidationData<?> validation) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (!ndjson) {
+            if (token != JsonToken.START_ARRAY) {
+                // reported against the whole schema, as if it wasn't streamed
+                final JsonNode value = token != null ? TreeUtil.json.readTree(parser) : null;
+                super.validate(value != null ? Body.from(value) : null, rawContentType, validation);
+                return;
+            }
+            token = parser.nextToken();
+        }
+
+        // set by the request validator, see ValidationLimits
+        final ValidationLimits limits = validation.delegate() instanceof ValidationLimits ? (ValidationLimits) validation.delegate() : null;
+        int count = 0;
+        int errors = 0;
+        // NDJSON bodies are a sequence of root values, arrays end with their closing bracket
+        while (token != null && token != JsonToken.END_ARRAY) {
+            final JsonNode item = TreeUtil.json.readTree(parser);
+            final int index = count++;
+            final ValidationData<?> itemValidation = new ValidationData<>();
+            itemValidator.validate(item, itemValidation);
+            if (!itemValidation.isValid()) {
+                validation.add(Arrays.asList(BODY_CRUMB, new ValidationResults.CrumbInfo(String.valueOf(index), false)),
+                        itemValidation.results());
+                if (++errors >= MAX_ERRORS) {
+                    validation.add(TOO_MANY_ERRORS_ERR, errors);
+                    return;
+                }
+                if (limits != null && limits.remainingErrors(validation.results()) == 0) return;
+            }
+            token = parser.nextToken();
+        }
+
+        final int itemCount = count;
+        validation.results().withCrumb(BODY_CRUMB, () -> {
+            if (minItems != null && itemCount < minItems) {
+                validation.add(MIN_ITEMS_CRUMB, MIN_ITEMS_ERR, minItems, itemCount);
+            }
+            if (maxItems != null && itemCount > maxItems) {
+                validation.add(MAX_ITEMS_CRUMB, MAX_ITEMS_ERR, maxItems, itemCount);
+            }
+        });
+    }
+}
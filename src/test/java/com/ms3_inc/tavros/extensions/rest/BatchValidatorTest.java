@@ -0,0 +1,91 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchValidatorTest {
+	private final BatchValidator batchValidator = new BatchValidator(new OpenApi4jValidator("batch.yaml"));
+
+	@Test
+	public void testValidateOperation() {
+		OperationResult result = batchValidator.validateOperation("createGreetings", Arrays.asList(
+				"{\"caller\":\"someone\"}",
+				"{\"caller\":\"\"}",
+				Collections.singletonMap("caller", "someone"),
+				"{\"not-caller\":\"someone\"",
+				Collections.singletonMap("count", 1)));
+
+		assertThat(result.getMessages()).extracting(message -> message.code).containsExactly("1", "3", "4");
+		assertThat(result.getMessages().get(0).details).isEqualTo("Item 1 failed API specification validation.");
+		assertThat(result.getMessages().get(1).details).isEqualTo("Item 3 is malformed.");
+	}
+
+	@Test
+	public void testValidateSchemaArrayInParallel() {
+		StringBuilder array = new StringBuilder("[");
+		List<String> invalid = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			if (i > 0) array.append(',');
+			if (i % 7 == 0) {
+				array.append("{\"count\":").append(i).append('}');
+				invalid.add(String.valueOf(i));
+			} else {
+				array.append("{\"caller\":\"caller ").append(i).append("\",\"count\":").append(i).append('}');
+			}
+		}
+		array.append(']');
+
+		OperationResult result = new BatchValidator(new OpenApi4jValidator("batch.yaml"))
+				.withPool(new ForkJoinPool(4))
+				.validateSchema("Greeting", array.toString());
+
+		assertThat(result.getMessages()).extracting(message -> message.code).containsExactlyElementsOf(invalid);
+	}
+
+	@Test
+	public void testNullItems() {
+		OperationResult result = batchValidator.validateSchema("Name", Arrays.asList("\"a\"", null, "\"b\""));
+
+		assertThat(result.getMessages()).extracting(message -> message.code).containsExactly("1");
+		assertThat(result.getMessages().get(0).details).isEqualTo("Item 1 failed API specification validation.");
+	}
+
+	@Test
+	public void testAllValid() {
+		assertThat(batchValidator.validateSchema("Name", Arrays.asList("\"a\"", "\"b\"")).getMessages()).isEmpty();
+		assertThat(batchValidator.validateSchema("Name", Collections.emptyList()).getMessages()).isEmpty();
+	}
+
+	@Test
+	public void testUnknownTargets() {
+		assertThatThrownBy(() -> batchValidator.validateOperation("unknown", Collections.emptyList()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> batchValidator.validateSchema("Unknown", Collections.emptyList()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> batchValidator.validateSchema("Greeting", "{}"))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,84 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.MediaTypeUtils.CompactMediaType;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MediaTypeUtilsTest {
+	private static final String[] MEDIA_TYPES = {
+			"*/*", "*", "application/*", "application/json", "Application/JSON", "application/json;charset=UTF-8",
+			"application/json; charset=utf-8", "application/json;charset=ISO-8859-1", "application/json;version=1",
+			"application/json;version=\"1\";charset=utf-8", "application/*+json", "application/vnd.api+json",
+			"application/vnd.api+json;version=2", "application/xml", "application/*+xml", "application/soap+xml",
+			"text/*", "text/plain", "text/plain;format=flowed"
+	};
+
+	@Test
+	public void testSameAsMimeType() {
+		MediaTypeUtils utils = new MediaTypeUtils();
+		for (String one : MEDIA_TYPES) {
+			for (String other : MEDIA_TYPES) {
+				MimeType oneMime = MimeType.valueOf(one);
+				MimeType otherMime = MimeType.valueOf(other);
+				CompactMediaType oneCompact = CompactMediaType.parse(one);
+				CompactMediaType otherCompact = CompactMediaType.parse(other);
+
+				assertThat(MediaTypeUtils.includes(oneCompact, otherCompact))
+						.as("%s includes %s", one, other)
+						.isEqualTo(MediaTypeUtils.includes(oneMime, otherMime));
+				assertThat(MediaTypeUtils.isCompatibleWith(oneCompact, otherCompact))
+						.as("%s is compatible with %s", one, other)
+						.isEqualTo(utils.isCompatibleWith(oneMime, otherMime));
+			}
+		}
+	}
+
+	@Test
+	public void testInterned() {
+		assertThat(CompactMediaType.parse("application/json")).isSameAs(CompactMediaType.APPLICATION_JSON);
+		assertThat(CompactMediaType.parse(" Application/Json ")).isSameAs(CompactMediaType.APPLICATION_JSON);
+		assertThat(CompactMediaType.parse("application/*+json")).isSameAs(CompactMediaType.APPLICATION_ANY_JSON);
+		assertThat(CompactMediaType.parse("application/json;charset=UTF-8")).isNotSameAs(CompactMediaType.APPLICATION_JSON);
+	}
+
+	@Test
+	public void testParameters() {
+		CompactMediaType mediaType = CompactMediaType.parse("text/plain; Charset=\"utf-8\"; a=\"x;y\"");
+
+		assertThat(mediaType.getParameterCount()).isEqualTo(2);
+		assertThat(mediaType.getCharset()).isEqualTo(StandardCharsets.UTF_8);
+		assertThat(mediaType.getParameter("A")).isEqualTo("x;y");
+		assertThat(mediaType.getParameter("b")).isNull();
+		assertThat(CompactMediaType.parse("text/plain;charset=unknown").getCharset()).isNull();
+	}
+
+	@Test
+	public void testMalformed() {
+		assertThat(CompactMediaType.parse(null)).isNull();
+		assertThat(CompactMediaType.parse("")).isNull();
+		assertThat(CompactMediaType.parse("json")).isNull();
+		assertThat(CompactMediaType.parse("application/")).isNull();
+		assertThat(CompactMediaType.parse("*/json")).isNull();
+		assertThat(CompactMediaType.parse("application/js on")).isNull();
+		assertThat(CompactMediaType.parse("application/json;charset=a b")).isNull();
+	}
+}
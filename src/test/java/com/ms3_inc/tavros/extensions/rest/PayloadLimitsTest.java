@@ -0,0 +1,148 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import com.ms3_inc.tavros.extensions.rest.exception.PayloadTooLargeException;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.StreamCache;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class PayloadLimitsTest {
+	private CamelContext context;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testBodySize() {
+		PayloadLimits limits = PayloadLimits.NONE.withMaxBodySize(16);
+
+		Exchange declared = exchangeOf(new ByteArrayInputStream(new byte[0]));
+		declared.getMessage().setHeader(Exchange.CONTENT_LENGTH, "1000000");
+		assertThat(catchThrowableOfType(() -> limits.check(declared, "application/json"), PayloadTooLargeException.class)
+				.httpStatusCode()).contains(413);
+
+		Exchange streamed = exchangeOf(new ByteArrayInputStream(new byte[17]));
+		assertThat(catchThrowableOfType(() -> limits.check(streamed, "application/octet-stream"), PayloadTooLargeException.class))
+				.isNotNull();
+
+		Exchange small = exchangeOf(new ByteArrayInputStream("{\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+		assertThatCode(() -> limits.check(small, "application/json")).doesNotThrowAnyException();
+		// cached so it can still be read
+		assertThat(small.getMessage().getBody()).isInstanceOf(StreamCache.class);
+		assertThat(small.getMessage().getBody(String.class)).isEqualTo("{\"id\":1}");
+	}
+
+	@Test
+	public void testStructure() {
+		PayloadLimits limits = PayloadLimits.NONE.withMaxDepth(3).withMaxStringLength(5).withMaxArrayLength(2);
+
+		assertThatCode(() -> limits.check(exchangeOf("{\"a\":[[1,2],{\"b\":\"abc\"}]}"), "application/json"))
+				.doesNotThrowAnyException();
+		assertThat(diagnosticsOf(limits, "{\"a\":[[[1]]]}")).contains("nested deeper than 3 levels");
+		assertThat(diagnosticsOf(limits, "{\"a\":\"abcdef\"}")).contains("longer than 5 characters");
+		assertThat(diagnosticsOf(limits, "{\"abcdef\":1}")).contains("longer than 5 characters");
+		assertThat(diagnosticsOf(limits, "[1,[2,3],4]")).contains("longer than 2 items");
+		// only JSON bodies are parsed
+		assertThatCode(() -> limits.check(exchangeOf("[[[[1]]]]"), "text/plain")).doesNotThrowAnyException();
+	}
+
+	@Test
+	public void testStructureOfStream() {
+		PayloadLimits limits = PayloadLimits.NONE.withMaxDepth(2);
+
+		Exchange exchange = exchangeOf(new ByteArrayInputStream("[[[1]]]".getBytes(StandardCharsets.UTF_8)));
+		assertThat(catchThrowableOfType(() -> limits.check(exchange, "application/json"), BadRequestException.class))
+				.isNotNull();
+
+		Exchange valid = exchangeOf(new ByteArrayInputStream("[[1]]".getBytes(StandardCharsets.UTF_8)));
+		assertThatCode(() -> limits.check(valid, "application/json")).doesNotThrowAnyException();
+		assertThat(valid.getMessage().getBody(String.class)).isEqualTo("[[1]]");
+	}
+
+	@Test
+	public void testStructureOfXml() {
+		PayloadLimits limits = PayloadLimits.NONE.withMaxDepth(2).withMaxStringLength(5);
+
+		assertThatCode(() -> limits.check(exchangeOf("<a><b><c>abc</c></b></a>"), "application/xml"))
+				.doesNotThrowAnyException();
+		assertThat(diagnosticsOf(limits, "<a><b><c><d>1</d></c></b></a>", "application/xml")).contains("nested deeper than 2 levels");
+		assertThat(diagnosticsOf(limits, "<a><b>abcdef</b></a>", "text/xml")).contains("longer than 5 characters");
+		assertThat(diagnosticsOf(limits, "<a b=\"abcdef\"/>", "application/problem+xml")).contains("longer than 5 characters");
+		// malformed bodies are left to the validator
+		assertThatCode(() -> limits.check(exchangeOf("<a><b>"), "application/xml")).doesNotThrowAnyException();
+
+		Exchange deep = exchangeOf(new ByteArrayInputStream("<a><b><c><d/></c></b></a>".getBytes(StandardCharsets.UTF_8)));
+		assertThat(catchThrowableOfType(() -> limits.check(deep, "application/xml"), BadRequestException.class)).isNotNull();
+
+		Exchange valid = exchangeOf(new ByteArrayInputStream("<a><b>1</b></a>".getBytes(StandardCharsets.UTF_8)));
+		assertThatCode(() -> limits.check(valid, "application/xml")).doesNotThrowAnyException();
+		assertThat(valid.getMessage().getBody(String.class)).isEqualTo("<a><b>1</b></a>");
+	}
+
+	@Test
+	public void testOverriddenByExtensions() {
+		PayloadLimits limits = PayloadLimits.NONE.withMaxBodySize(1000);
+
+		assertThat(limits.overriddenBy(null)).isSameAs(limits);
+		assertThat(limits.overriddenBy(Collections.singletonMap("x-other", 1))).isSameAs(limits);
+
+		PayloadLimits overridden = limits.overriddenBy(Collections.singletonMap(PayloadLimits.MAX_DEPTH_EXTENSION, "4"));
+		assertThat(overridden.getMaxDepth()).isEqualTo(4);
+		assertThat(overridden.getMaxBodySize()).isEqualTo(1000);
+		assertThat(limits.overriddenBy(Collections.singletonMap(PayloadLimits.MAX_BODY_SIZE_EXTENSION, 10)).getMaxBodySize())
+				.isEqualTo(10);
+	}
+
+	private String diagnosticsOf(PayloadLimits limits, String body) {
+		return diagnosticsOf(limits, body, "application/json");
+	}
+
+	private String diagnosticsOf(PayloadLimits limits, String body, String contentType) {
+		BadRequestException exception = catchThrowableOfType(() -> limits.check(exchangeOf(body), contentType),
+				BadRequestException.class);
+		assertThat(exception).isNotNull();
+		return exception.getOperationResultMessage().diagnostics;
+	}
+
+	private Exchange exchangeOf(Object body) {
+		Exchange exchange = new DefaultExchange(context);
+		exchange.getMessage().setBody(body);
+		return exchange;
+	}
+}
@@ -0,0 +1,145 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProblemRendererTest {
+	private static final String DIAGNOSTICS = "body.0.id: Type expected 'integer', found \"string\".\n\tété ✓ 😀 <&>";
+
+	private CamelContext context;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		Exchange exchange = exchangeOf(badRequest(), null);
+
+		new ProblemRenderer().withTypeBaseUri("https://example.com/problems/").process(exchange);
+
+		assertThat(exchange.getMessage().getHeader(Exchange.HTTP_RESPONSE_CODE)).isEqualTo(400);
+		assertThat(exchange.getMessage().getHeader(Exchange.CONTENT_TYPE)).isEqualTo(ProblemRenderer.PROBLEM_JSON);
+		JsonNode problem = new ObjectMapper().readTree(exchange.getMessage().getBody(byte[].class));
+		assertThat(problem.get("type").asText()).isEqualTo("https://example.com/problems/RequestValidationError");
+		assertThat(problem.get("title").asText()).isEqualTo("Invalid request.");
+		assertThat(problem.get("status").asInt()).isEqualTo(400);
+		assertThat(problem.get("detail").asText()).isEqualTo(DIAGNOSTICS);
+		assertThat(problem.get("level").asText()).isEqualTo("ERROR");
+		assertThat(problem.has("code")).isFalse();
+		assertThat(problem.get("errors").get(0).get("location").asText()).isEqualTo("body.0.id");
+		assertThat(problem.get("errors").get(1).get("location").isNull()).isTrue();
+	}
+
+	@Test
+	public void testXml() throws Exception {
+		Exchange exchange = exchangeOf(badRequest(), "text/html;q=0.9, application/xml;q=0.8, application/json;q=0.5");
+
+		new ProblemRenderer().process(exchange);
+
+		assertThat(exchange.getMessage().getHeader(Exchange.CONTENT_TYPE)).isEqualTo(ProblemRenderer.PROBLEM_XML);
+		JsonNode problem = new XmlMapper().readTree(exchange.getMessage().getBody(byte[].class));
+		assertThat(problem.get("type").asText()).isEqualTo("RequestValidationError");
+		assertThat(problem.get("status").asInt()).isEqualTo(400);
+		assertThat(problem.get("detail").asText()).isEqualTo(DIAGNOSTICS);
+		assertThat(exchange.getMessage().getBody(String.class))
+				.contains("<error><code>1027</code><location>body.0.id</location><message>Type expected 'integer'</message></error>")
+				.contains("<error><message>Unknown</message></error>");
+	}
+
+	@Test
+	public void testOtherExceptions() throws Exception {
+		Exchange exchange = exchangeOf(new IllegalStateException("connection refused to db:5432"), "application/problem+json");
+
+		new ProblemRenderer().process(exchange);
+
+		assertThat(exchange.getMessage().getHeader(Exchange.HTTP_RESPONSE_CODE)).isEqualTo(500);
+		assertThat(exchange.getMessage().getBody(String.class)).contains("InternalServerError").doesNotContain("db:5432");
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		ProblemRenderer renderer = new ProblemRenderer();
+		Exchange one = exchangeOf(badRequest(), null);
+		Exchange other = exchangeOf(badRequest(), null);
+
+		renderer.process(one);
+		renderer.process(other);
+
+		assertThat(other.getMessage().getBody()).isSameAs(one.getMessage().getBody());
+
+		ProblemRenderer uncached = new ProblemRenderer().withCacheCapacity(0);
+		uncached.process(one);
+		uncached.process(other);
+		assertThat(other.getMessage().getBody()).isNotSameAs(one.getMessage().getBody()).isEqualTo(one.getMessage().getBody());
+	}
+
+	@Test
+	public void testCacheEvictsLeastRecentlyUsed() throws Exception {
+		ProblemRenderer renderer = new ProblemRenderer().withCacheCapacity(2);
+		OperationResult.Message first = OperationResult.MessageBuilder.error("RequestValidationError", "First").build();
+		OperationResult.Message second = OperationResult.MessageBuilder.error("RequestValidationError", "Second").build();
+		OperationResult.Message third = OperationResult.MessageBuilder.error("RequestValidationError", "Third").build();
+
+		byte[] firstRendered = renderer.render(first, 400, false);
+		byte[] secondRendered = renderer.render(second, 400, false);
+		assertThat(renderer.render(first, 400, false)).isSameAs(firstRendered);
+		renderer.render(third, 400, false);
+
+		// problems rendered after the capacity is reached are still cached
+		assertThat(renderer.render(third, 400, false)).isSameAs(renderer.render(third, 400, false));
+		assertThat(renderer.render(first, 400, false)).isSameAs(firstRendered);
+		assertThat(renderer.render(second, 400, false)).isNotSameAs(secondRendered).isEqualTo(secondRendered);
+	}
+
+	private static BadRequestException badRequest() {
+		return new BadRequestException(OperationResult.MessageBuilder.error("RequestValidationError", "Invalid request.")
+				.withDiagnostics(DIAGNOSTICS)
+				.withErrors(Arrays.asList(
+						new OperationResult.Diagnostic("1027", "body.0.id", "Type expected 'integer'"),
+						new OperationResult.Diagnostic(null, null, "Unknown")))
+				.build());
+	}
+
+	private Exchange exchangeOf(Exception exception, String accept) {
+		Exchange exchange = new DefaultExchange(context);
+		exchange.setProperty(Exchange.EXCEPTION_CAUGHT, exception);
+		exchange.getMessage().setHeader("Accept", accept);
+		return exchange;
+	}
+}
@@ -0,0 +1,79 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class QueryStringParserTest {
+
+	@Test
+	public void testRepeatedNamesKeepOrder() {
+		Map<String, List<String>> params = QueryStringParser.parse("b=1&a=2&b=3");
+
+		assertThat(params).containsExactly(
+				entry("b", Arrays.asList("1", "3")),
+				entry("a", Collections.singletonList("2")));
+	}
+
+	@Test
+	public void testPercentDecoding() {
+		Map<String, List<String>> params = QueryStringParser.parse("na%6De=caf%C3%A9+au+lait&sum=1%2B1%3D2");
+
+		assertThat(params).containsExactly(
+				entry("name", Collections.singletonList("café au lait")),
+				entry("sum", Collections.singletonList("1+1=2")));
+	}
+
+	@Test
+	public void testInvalidEscapesKeptAsIs() {
+		Map<String, List<String>> params = QueryStringParser.parse("a=100%&b=%zz&c=%4");
+
+		assertThat(params).containsExactly(
+				entry("a", Collections.singletonList("100%")),
+				entry("b", Collections.singletonList("%zz")),
+				entry("c", Collections.singletonList("%4")));
+	}
+
+	@Test
+	public void testEmptyAndMissingValues() {
+		Map<String, List<String>> params = QueryStringParser.parse("&a=&&b&c==");
+
+		assertThat(params).containsExactly(
+				entry("a", Collections.singletonList("")),
+				entry("b", Collections.singletonList(null)),
+				entry("c", Collections.singletonList("=")));
+		assertThat(QueryStringParser.parse("")).isEmpty();
+		assertThat(QueryStringParser.parse(null)).isEmpty();
+	}
+
+	@Test
+	public void testValuesNotSplitByStyle() {
+		Map<String, List<String>> params = QueryStringParser.parse("ids=1,2,3&filter[name]=x&tags=a|b");
+
+		assertThat(params).containsExactly(
+				entry("ids", Collections.singletonList("1,2,3")),
+				entry("filter[name]", Collections.singletonList("x")),
+				entry("tags", Collections.singletonList("a|b")));
+	}
+}
@@ -0,0 +1,125 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.service.ServiceHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResponseValidatorTest {
+	private static final String OPERATION = "GET /hello";
+
+	private CamelContext context;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testViolationsReportedAsMetrics() throws Exception {
+		for (ResponseValidator validator : validators()) {
+			ValidationStatistics statistics = new ValidationStatistics();
+			validator.withSamplingRate(1).withExecutor(Runnable::run).withMetrics(statistics);
+
+			Exchange valid = helloResponse("{\"greetings\":\"hello\"}");
+			validator.process(valid);
+			Exchange invalid = helloResponse("{\"greetings\":42}");
+			validator.process(invalid);
+
+			assertThat(invalid.getException()).isNull();
+			assertThat(invalid.getMessage().getBody()).isEqualTo("{\"greetings\":42}");
+			assertThat(statistics.getOperation(OPERATION).getSuccessCount()).isEqualTo(1);
+			assertThat(statistics.getOperation(OPERATION).getFailureCount()).isEqualTo(1);
+			assertThat(statistics.getOperation(OPERATION).getFailuresByCode()).isNotEmpty();
+		}
+	}
+
+	@Test
+	public void testSamplingRatePerOperation() throws Exception {
+		for (ResponseValidator validator : validators()) {
+			ValidationStatistics statistics = new ValidationStatistics();
+			validator.withSamplingRate(0).withExecutor(Runnable::run).withMetrics(statistics);
+
+			validator.process(helloResponse("{\"greetings\":42}"));
+			assertThat(statistics.getOperation(OPERATION)).isNull();
+
+			validator.withSamplingRate(OPERATION, 1);
+			validator.process(helloResponse("{\"greetings\":42}"));
+			assertThat(statistics.getOperation(OPERATION).getFailureCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void testValidatedInBackground() throws Exception {
+		ValidationStatistics statistics = new ValidationStatistics();
+		ResponseValidator validator = new ResponseValidator(new OpenApi4jValidator("api.yaml"))
+				.withSamplingRate(1)
+				.withMetrics(statistics);
+		ServiceHelper.startService(validator);
+		try {
+			validator.process(helloResponse("{\"greetings\":42}"));
+
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (statistics.getFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(statistics.getFailureCount()).isEqualTo(1);
+		} finally {
+			ServiceHelper.stopService(validator);
+		}
+
+		// not validated once stopped
+		validator.process(helloResponse("{\"greetings\":42}"));
+		assertThat(validator.getDroppedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testInvalidSamplingRate() {
+		ResponseValidator validator = new ResponseValidator(new OpenApi4jValidator("api.yaml"));
+
+		assertThatThrownBy(() -> validator.withSamplingRate(1.5)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> validator.withSamplingRate(OPERATION, Double.NaN)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private List<ResponseValidator> validators() {
+		return Arrays.asList(
+				new ResponseValidator(new OpenApi4jValidator("api.yaml")),
+				new ResponseValidator(new SwaggerRequestValidator("api.yaml")));
+	}
+
+	private Exchange helloResponse(String body) {
+		Exchange exchange = TestExchanges.request(context, "GET", "/hello", "application/json", body);
+		exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+		return exchange;
+	}
+}
@@ -0,0 +1,115 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShadowModeTest {
+	private static final String INVALID_BODY = "{\"not-caller\":\"someone\"}";
+
+	private CamelContext context;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testNeverRejects() throws Exception {
+		ShadowMode shadowMode = new ShadowMode(1).withExecutor(Runnable::run);
+		ValidationStatistics statistics = new ValidationStatistics();
+		AsyncProcessor[] validators = {
+				new OpenApi4jValidator("api.yaml").withShadowMode(shadowMode).withMetrics(statistics),
+				new SwaggerRequestValidator("api.yaml").withShadowMode(shadowMode).withMetrics(statistics)
+		};
+
+		for (AsyncProcessor validator : validators) {
+			Exchange exchange = greetingExchange();
+			validator.process(exchange);
+
+			assertThat(exchange.getException()).isNull();
+			// the stream is still readable
+			assertThat(exchange.getMessage().getBody(String.class)).isEqualTo(INVALID_BODY);
+		}
+
+		assertThat(shadowMode.getValidatedCount()).isEqualTo(2);
+		assertThat(shadowMode.getFailureCount()).isEqualTo(2);
+		assertThat(statistics.getFailureCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void testNotSampled() throws Exception {
+		ShadowMode shadowMode = new ShadowMode(0).withExecutor(Runnable::run);
+
+		new OpenApi4jValidator("api.yaml").withShadowMode(shadowMode).process(greetingExchange());
+
+		assertThat(shadowMode.getValidatedCount()).isZero();
+	}
+
+	@Test
+	public void testSamplingRateAdaptsToCpuBudget() {
+		AtomicLong ticker = new AtomicLong();
+		ShadowMode shadowMode = new ShadowMode(0.8, ticker::get, System::nanoTime).withCpuBudget(0.1);
+
+		// half of a processor
+		ticker.set(TimeUnit.SECONDS.toNanos(1));
+		shadowMode.spent(TimeUnit.MILLISECONDS.toNanos(500));
+		assertThat(shadowMode.getSamplingRate()).isEqualTo(0.4);
+
+		ticker.set(TimeUnit.SECONDS.toNanos(2));
+		shadowMode.spent(TimeUnit.MILLISECONDS.toNanos(500));
+		assertThat(shadowMode.getSamplingRate()).isEqualTo(0.2);
+
+		// within the budget, but not by much
+		ticker.set(TimeUnit.SECONDS.toNanos(3));
+		shadowMode.spent(TimeUnit.MILLISECONDS.toNanos(80));
+		assertThat(shadowMode.getSamplingRate()).isEqualTo(0.2);
+
+		ticker.set(TimeUnit.SECONDS.toNanos(4));
+		shadowMode.spent(0);
+		ticker.set(TimeUnit.SECONDS.toNanos(5));
+		shadowMode.spent(0);
+		ticker.set(TimeUnit.SECONDS.toNanos(6));
+		shadowMode.spent(0);
+		assertThat(shadowMode.getSamplingRate()).isEqualTo(0.8);
+	}
+
+	private Exchange greetingExchange() {
+		Exchange exchange = TestExchanges.request(context, "POST", "/greeting", "application/json",
+				new ByteArrayInputStream(INVALID_BODY.getBytes(StandardCharsets.UTF_8)));
+		exchange.getMessage().setHeader("Authorization", "Bearer token");
+		return exchange;
+	}
+}
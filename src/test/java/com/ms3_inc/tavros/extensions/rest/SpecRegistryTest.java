@@ -0,0 +1,132 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.service.ServiceHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpecRegistryTest {
+	private CamelContext context;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testBoundToContext() {
+		assertThat(SpecRegistry.of(context)).isSameAs(SpecRegistry.of(context));
+		assertThat(SpecRegistry.of(context)).isNotSameAs(SpecRegistry.of(new DefaultCamelContext()));
+	}
+
+	@Test
+	public void testSpecificationShared() throws Exception {
+		SpecRegistry registry = SpecRegistry.of(context);
+
+		OpenApi4jValidator first = registry.openApi4jValidator("api.yaml", null);
+		OpenApi4jValidator second = registry.openApi4jValidator("api.yaml", null).withStreamingBody(true);
+		SwaggerRequestValidator swagger = registry.swaggerValidator("api.yaml", null);
+		registry.openApi4jValidator("api.yaml", "/api");
+
+		assertThat(first).isNotSameAs(second);
+		assertThat(registry.size()).isEqualTo(3);
+		assertValidates(first);
+		assertValidates(second);
+		assertValidates(swagger);
+	}
+
+	@Test
+	public void testStreamingModeNotShared() throws Exception {
+		SpecRegistry registry = SpecRegistry.of(context);
+		OpenApi4jValidator whole = registry.openApi4jValidator("streaming.yaml", null);
+		OpenApi4jValidator streaming = registry.openApi4jValidator("streaming.yaml", null).withStreamingBody(true);
+
+		assertThat(invalidEvents(whole)).doesNotContain("Validation stopped");
+		assertThat(invalidEvents(streaming)).contains("Validation stopped");
+	}
+
+	@Test
+	public void testReleasedWhenLastValidatorStops() {
+		SpecRegistry registry = SpecRegistry.of(context);
+		OpenApi4jValidator first = registry.openApi4jValidator("api.yaml", null);
+		OpenApi4jValidator second = registry.openApi4jValidator("api.yaml", null);
+		ServiceHelper.startService(first, second);
+
+		ServiceHelper.stopService(first);
+		assertThat(registry.size()).isEqualTo(1);
+
+		ServiceHelper.stopService(second);
+		assertThat(registry.size()).isZero();
+
+		// shared again once restarted
+		ServiceHelper.startService(second);
+		assertThat(registry.size()).isEqualTo(1);
+		ServiceHelper.stopService(second);
+	}
+
+	@Test
+	public void testReleasedWhenContextStops() {
+		SpecRegistry registry = SpecRegistry.of(context);
+		ServiceHelper.startService(registry.swaggerValidator("api.yaml", null));
+
+		context.stop();
+
+		assertThat(registry.size()).isZero();
+	}
+
+	private void assertValidates(AsyncProcessor validator) throws Exception {
+		Exchange valid = helloExchange("bar-query=some");
+		valid.getMessage().setHeader("foo-header", "some");
+		validator.process(valid);
+		assertThat(valid.getException()).isNull();
+
+		Exchange invalid = helloExchange("bar-query=some");
+		validator.process(invalid);
+		assertThat(invalid.getException()).isInstanceOf(BadRequestException.class);
+	}
+
+	private String invalidEvents(AsyncProcessor validator) throws Exception {
+		// more invalid items than a streamed body is validated for
+		String items = String.join(",", Collections.nCopies(12, "{}"));
+		Exchange exchange = TestExchanges.request(context, "POST", "/events", "application/json", "[" + items + "]");
+		validator.process(exchange);
+		assertThat(exchange.getException()).isInstanceOf(BadRequestException.class);
+		return exchange.getException().getMessage();
+	}
+
+	private Exchange helloExchange(String query) {
+		Exchange exchange = TestExchanges.request(context, "GET", "/hello");
+		exchange.getMessage().setHeader(Exchange.HTTP_QUERY, query);
+		return exchange;
+	}
+}
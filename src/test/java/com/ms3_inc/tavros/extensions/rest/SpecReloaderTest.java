@@ -0,0 +1,190 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.service.ServiceHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpecReloaderTest {
+	private static final String SPEC = "openapi: 3.0.0\n"
+			+ "info:\n"
+			+ "  title: hello\n"
+			+ "  version: '1'\n"
+			+ "paths:\n"
+			+ "  /hello:\n"
+			+ "    get:\n"
+			+ "      parameters:\n"
+			+ "        - name: name\n"
+			+ "          in: query\n"
+			+ "          required: %s\n"
+			+ "          schema:\n"
+			+ "            type: string\n"
+			+ "      responses:\n"
+			+ "        '200':\n"
+			+ "          description: hello\n";
+
+	@TempDir
+	Path directory;
+
+	private CamelContext context;
+	private Path spec;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		context = new DefaultCamelContext();
+		context.start();
+		spec = directory.resolve("api.yaml");
+		writeSpec(true);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testReloadOpenApi4j() throws Exception {
+		OpenApi4jValidator validator = new OpenApi4jValidator(spec.toUri().toString());
+		assertThat(validate(validator)).isInstanceOf(BadRequestException.class);
+
+		writeSpec(false);
+		validator.reload().get();
+
+		assertThat(validate(validator)).isNull();
+	}
+
+	@Test
+	public void testReloadSwagger() throws Exception {
+		SwaggerRequestValidator validator = new SwaggerRequestValidator(spec.toUri().toString());
+		assertThat(validate(validator)).isInstanceOf(BadRequestException.class);
+
+		writeSpec(false);
+		validator.reload().get();
+
+		assertThat(validate(validator)).isNull();
+	}
+
+	@Test
+	public void testReloadReferencedDocument() throws Exception {
+		Path splitSpec = directory.resolve("split.yaml");
+		Path schemas = directory.resolve("schemas.yaml");
+		Files.copy(getClass().getClassLoader().getResourceAsStream("snapshot/api.yaml"), splitSpec);
+		Files.copy(getClass().getClassLoader().getResourceAsStream("snapshot/schemas.yaml"), schemas);
+		OpenApi4jValidator validator = new OpenApi4jValidator(splitSpec.toUri().toString());
+		assertThat(validateGreeting(validator)).isNull();
+
+		String schemasYaml = new String(Files.readAllBytes(schemas), StandardCharsets.UTF_8);
+		Files.write(schemas, schemasYaml.replace("minLength: 1", "minLength: 5").getBytes(StandardCharsets.UTF_8));
+		validator.reload().join();
+
+		assertThat(validateGreeting(validator)).isInstanceOf(BadRequestException.class);
+	}
+
+	@Test
+	public void testReloadKeepsStreamingModes() throws Exception {
+		SpecRegistry registry = SpecRegistry.of(context);
+		OpenApi4jValidator whole = registry.openApi4jValidator("streaming.yaml", null);
+		OpenApi4jValidator streaming = registry.openApi4jValidator("streaming.yaml", null).withStreamingBody(true);
+
+		streaming.reload().get();
+		assertThat(validateEvents(whole)).hasMessageNotContaining("Validation stopped");
+		assertThat(validateEvents(streaming)).hasMessageContaining("Validation stopped");
+
+		whole.reload().get();
+		assertThat(validateEvents(whole)).hasMessageNotContaining("Validation stopped");
+		assertThat(validateEvents(streaming)).hasMessageContaining("Validation stopped");
+	}
+
+	@Test
+	public void testFailedReloadKeepsPreviousVersion() throws Exception {
+		OpenApi4jValidator validator = new OpenApi4jValidator(spec.toUri().toString());
+		SpecReloader reloader = new SpecReloader(validator);
+
+		Files.write(spec, "openapi: [".getBytes(StandardCharsets.UTF_8));
+
+		assertThatThrownBy(reloader::reload).isInstanceOf(IllegalStateException.class);
+		assertThat(reloader.getFailureCount()).isEqualTo(1);
+		assertThat(reloader.getLastFailure()).isNotNull();
+		assertThat(validate(validator)).isInstanceOf(BadRequestException.class);
+
+		writeSpec(false);
+		reloader.reload();
+		assertThat(reloader.getReloadCount()).isEqualTo(1);
+		assertThat(validate(validator)).isNull();
+	}
+
+	@Test
+	public void testReloadOnFileChange() throws Exception {
+		OpenApi4jValidator validator = new OpenApi4jValidator(spec.toUri().toString());
+		SpecReloader reloader = new SpecReloader(validator).withFileWatch(true).withQuietPeriod(Duration.ofMillis(50));
+		ServiceHelper.startService(reloader);
+		try {
+			writeSpec(false);
+
+			long deadline = System.currentTimeMillis() + 20_000;
+			while (reloader.getReloadCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+
+			assertThat(reloader.getReloadCount()).isPositive();
+			assertThat(validate(validator)).isNull();
+		} finally {
+			ServiceHelper.stopService(reloader);
+		}
+	}
+
+	private void writeSpec(boolean required) throws Exception {
+		Files.write(spec, String.format(SPEC, required).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Exception validateGreeting(AsyncProcessor validator) throws Exception {
+		Exchange exchange = TestExchanges.request(context, "POST", "/greeting", "application/json", "{\"caller\":\"x\"}");
+		exchange.getMessage().setHeader(Exchange.HTTP_QUERY, "language=en");
+		validator.process(exchange);
+		return exchange.getException();
+	}
+
+	private Exception validateEvents(AsyncProcessor validator) throws Exception {
+		// more invalid items than a streamed body is validated for
+		String items = String.join(",", Collections.nCopies(12, "{}"));
+		Exchange exchange = TestExchanges.request(context, "POST", "/events", "application/json", "[" + items + "]");
+		validator.process(exchange);
+		return exchange.getException();
+	}
+
+	private Exception validate(AsyncProcessor validator) throws Exception {
+		Exchange exchange = TestExchanges.request(context, "GET", "/hello");
+		validator.process(exchange);
+		return exchange.getException();
+	}
+}
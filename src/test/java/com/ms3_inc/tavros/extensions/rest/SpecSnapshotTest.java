@@ -0,0 +1,102 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpecSnapshotTest {
+	private final CamelContext context = new DefaultCamelContext();
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		SpecSnapshot snapshot = SpecSnapshot.compile("api.yaml");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		snapshot.write(out);
+		SpecSnapshot read = SpecSnapshot.read(new ByteArrayInputStream(out.toByteArray()), snapshot.getLocation());
+
+		assertThat(read.toJson()).isEqualTo(snapshot.toJson());
+		assertThat(read.toOpenApi3().getPaths()).containsKeys("/hello", "/greeting");
+	}
+
+	@Test
+	public void testReferencesToOtherDocumentsReplaced() throws Exception {
+		String json = SpecSnapshot.compile("snapshot/api.yaml").toJson();
+
+		assertThat(json)
+				.doesNotContain("schemas.yaml")
+				.contains("\"$ref\":\"#/components/schemas/Greeting\"")
+				.contains("\"minLength\":1")
+				.contains("\"maximum\":9999999999");
+	}
+
+	@Test
+	public void testValidatorsLoadSnapshots(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("api.yaml" + SpecSnapshot.FILE_EXTENSION);
+		try (OutputStream out = Files.newOutputStream(file)) {
+			SpecSnapshot.compile("snapshot/api.yaml").write(out);
+		}
+		String location = file.toUri().toString();
+
+		assertValidates(new OpenApi4jValidator(location));
+		assertValidates(new SwaggerRequestValidator(location));
+		assertValidates(new OpenApi4jValidator(SpecSnapshot.load(location), null));
+		assertValidates(new SwaggerRequestValidator(SpecSnapshot.load(location), null));
+	}
+
+	@Test
+	public void testNotASnapshot() {
+		assertThatThrownBy(() -> SpecSnapshot.read(new ByteArrayInputStream("openapi: 3.0.0".getBytes()), new URL("file:api.yaml")))
+				.isInstanceOf(IOException.class);
+	}
+
+	private void assertValidates(AsyncProcessor validator) throws Exception {
+		Exchange valid = greetingExchange("language=en", "{\"caller\":\"someone\"}");
+		validator.process(valid);
+		assertThat(valid.getException()).isNull();
+
+		Exchange invalidBody = greetingExchange("language=en", "{\"caller\":\"\"}");
+		validator.process(invalidBody);
+		assertThat(invalidBody.getException()).isInstanceOf(BadRequestException.class);
+
+		Exchange invalidQuery = greetingExchange("language=fr", "{\"caller\":\"someone\"}");
+		validator.process(invalidQuery);
+		assertThat(invalidQuery.getException()).isInstanceOf(BadRequestException.class);
+	}
+
+	private Exchange greetingExchange(String query, String body) {
+		Exchange exchange = TestExchanges.request(context, "POST", "/greeting", "application/json", body);
+		exchange.getMessage().setHeader(Exchange.HTTP_QUERY, query);
+		return exchange;
+	}
+}
@@ -0,0 +1,42 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.support.DefaultExchange;
+
+/**
+ * Builds the request exchanges the validators read, as the REST consumers set them up.
+ */
+final class TestExchanges {
+	private TestExchanges() {
+	}
+
+	static Exchange request(CamelContext context, String method, String uri) {
+		Exchange exchange = new DefaultExchange(context);
+		exchange.getMessage().setHeader(Exchange.HTTP_METHOD, method);
+		exchange.getMessage().setHeader(Exchange.HTTP_URI, uri);
+		return exchange;
+	}
+
+	static Exchange request(CamelContext context, String method, String uri, String contentType, Object body) {
+		Exchange exchange = request(context, method, uri);
+		exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, contentType);
+		exchange.getMessage().setBody(body);
+		return exchange;
+	}
+}
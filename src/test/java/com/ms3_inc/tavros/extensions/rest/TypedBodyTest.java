@@ -0,0 +1,129 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypedBodyTest {
+	private CamelContext context;
+	private OpenApi4jValidator validator;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+		validator = new OpenApi4jValidator("streaming.yaml");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testObjects() throws Exception {
+		assertThat(errorOf(JsonNodeFactory.instance.arrayNode().add(JsonNodeFactory.instance.objectNode().put("id", 1)))).isNull();
+		assertThat(errorOf(JsonNodeFactory.instance.arrayNode())).isNotNull();
+
+		assertThat(errorOf(Collections.singletonList(Collections.singletonMap("id", 1)))).isNull();
+		assertThat(errorOf(Collections.singletonList(Collections.singletonMap("id", "one")))).isNotNull();
+
+		assertThat(errorOf(Collections.singletonList(new Event(1)))).isNull();
+	}
+
+	@Test
+	public void testUnconvertibleObject() throws Exception {
+		assertThat(errorOf(new Empty())).isInstanceOf(BadRequestException.class);
+
+		Exchange exchange = eventsExchange(new Empty());
+		new OpenApi4jValidator("streaming.yaml").withParsedBody(true).process(exchange);
+		assertThat(exchange.getException()).isInstanceOf(BadRequestException.class);
+	}
+
+	@Test
+	public void testBytes() throws Exception {
+		assertThat(errorOf("[{\"id\":1}]".getBytes(StandardCharsets.UTF_8))).isNull();
+		assertThat(errorOf("[{\"id\":\"one\"}]".getBytes(StandardCharsets.UTF_8))).isNotNull();
+		assertThat(errorOf("[{\"id\":".getBytes(StandardCharsets.UTF_8))).isNotNull();
+
+		// only the remaining bytes are read, and the position doesn't move
+		ByteBuffer buffer = ByteBuffer.wrap("xx[{\"id\":1}]".getBytes(StandardCharsets.UTF_8));
+		buffer.position(2);
+		assertThat(errorOf(buffer)).isNull();
+		assertThat(buffer.position()).isEqualTo(2);
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(16);
+		direct.put("[{\"id\":1}]".getBytes(StandardCharsets.UTF_8)).flip();
+		assertThat(errorOf(direct)).isNull();
+
+		ByteBuf byteBuf = Unpooled.copiedBuffer("[{\"id\":\"one\"}]", StandardCharsets.UTF_8);
+		assertThat(errorOf(byteBuf)).isNotNull();
+		assertThat(byteBuf.readerIndex()).isZero();
+	}
+
+	@Test
+	public void testCharset() throws Exception {
+		Exchange exchange = eventsExchange("[{\"id\":1,\"name\":\"été\"}]".getBytes(StandardCharsets.ISO_8859_1));
+		exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "application/json; charset=ISO-8859-1");
+
+		new OpenApi4jValidator("streaming.yaml").withParsedBody(true).process(exchange);
+
+		assertThat(exchange.getException()).isNull();
+		ValidatedRequest request = exchange.getProperty(ValidatedRequest.EXCHANGE_VALIDATED_REQUEST, ValidatedRequest.class);
+		assertThat(request.getBody().get(0).get("name").asText()).isEqualTo("été");
+	}
+
+	private Exception errorOf(Object body) throws Exception {
+		Exchange exchange = eventsExchange(body);
+		validator.process(exchange);
+		return exchange.getException();
+	}
+
+	private Exchange eventsExchange(Object body) {
+		Exchange exchange = TestExchanges.request(context, "POST", "/events", "application/json", body);
+		return exchange;
+	}
+
+	public static class Event {
+		private final int id;
+
+		Event(int id) {
+			this.id = id;
+		}
+
+		public int getId() {
+			return id;
+		}
+	}
+
+	public static class Empty {
+	}
+}
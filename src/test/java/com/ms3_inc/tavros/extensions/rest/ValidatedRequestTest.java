@@ -0,0 +1,93 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ValidatedRequestTest {
+	private static final String EVENTS = "[{\"id\":1},{\"id\":2}]";
+
+	private CamelContext context;
+
+	@BeforeEach
+	public void setUp() {
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Test
+	public void testParameters() throws Exception {
+		OpenApi4jValidator validator = new OpenApi4jValidator("streaming.yaml").withValidatedRequest(true);
+		Exchange exchange = eventsExchange(EVENTS);
+
+		validator.process(exchange);
+
+		ValidatedRequest request = exchange.getProperty(ValidatedRequest.EXCHANGE_VALIDATED_REQUEST, ValidatedRequest.class);
+		assertThat(request).isNotNull();
+		// converted to the type of the schema
+		assertThat(request.getHeaderParameter("X-Batch").isIntegralNumber()).isTrue();
+		assertThat(request.getHeaderParameter("X-Batch").asInt()).isEqualTo(7);
+		assertThat(request.getQueryParameters()).isEmpty();
+		assertThat(request.getBody()).isNull();
+	}
+
+	@Test
+	public void testParsedBody() throws Exception {
+		OpenApi4jValidator validator = new OpenApi4jValidator("streaming.yaml").withParsedBody(true).withStreamingBody(true);
+		Exchange exchange = eventsExchange(EVENTS);
+
+		validator.process(exchange);
+
+		ValidatedRequest request = exchange.getProperty(ValidatedRequest.EXCHANGE_VALIDATED_REQUEST, ValidatedRequest.class);
+		assertThat(request.getBody().size()).isEqualTo(2);
+		assertThat(request.getBody().get(1).get("id").asInt()).isEqualTo(2);
+		// parsed from the stream cache, still readable downstream
+		assertThat(exchange.getMessage().getBody(String.class)).isEqualTo(EVENTS);
+	}
+
+	@Test
+	public void testNotSetOnInvalidRequest() throws Exception {
+		OpenApi4jValidator validator = new OpenApi4jValidator("streaming.yaml").withParsedBody(true);
+		Exchange exchange = eventsExchange("[{\"id\":\"one\"}]");
+
+		validator.process(exchange);
+
+		assertThat(exchange.getException()).isNotNull();
+		assertThat(exchange.getProperty(ValidatedRequest.EXCHANGE_VALIDATED_REQUEST)).isNull();
+	}
+
+	private Exchange eventsExchange(String body) {
+		Exchange exchange = TestExchanges.request(context, "POST", "/events", "application/json",
+				new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+		exchange.getMessage().setHeader("X-Batch", "7");
+		return exchange;
+	}
+}
@@ -0,0 +1,122 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapi4j.core.validation.ValidationException;
+import org.openapi4j.core.validation.ValidationResults;
+import org.openapi4j.operation.validator.model.Request;
+import org.openapi4j.operation.validator.model.impl.Body;
+import org.openapi4j.operation.validator.model.impl.DefaultRequest;
+import org.openapi4j.operation.validator.validation.RequestValidatorExtension;
+import org.openapi4j.parser.OpenApi3Parser;
+import org.openapi4j.parser.model.v3.OpenApi3;
+import org.openapi4j.schema.validator.ValidationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class ValidationLimitsTest {
+	private RequestValidatorExtension validator;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		OpenApi3 api = new OpenApi3Parser().parse(getClass().getClassLoader().getResource("streaming.yaml"), false);
+		validator = new RequestValidatorExtension(new ValidationContext<>(api.getContext()), api, false, true);
+	}
+
+	@Test
+	public void testFailFastSkipsBody() {
+		ValidationResults results = resultsOf(ValidationLimits.failFast(), "one", Body.from("[{},{}]"));
+
+		assertThat(results.items()).hasSize(1);
+		assertThat(results.items().get(0).dataCrumbs()).isEqualTo("X-Batch");
+	}
+
+	@Test
+	public void testMaxErrorsIncludesBody() {
+		ValidationResults results = resultsOf(ValidationLimits.maxErrors(5), "one", Body.from("[{},{}]"));
+
+		assertThat(results.items()).hasSize(3);
+		assertThat(results.items().get(2).dataCrumbs()).isEqualTo("body.1");
+	}
+
+	@Test
+	public void testMaxErrorsStopsStreamedBody() {
+		// an endless stream of invalid items
+		Enumeration<InputStream> items = new Enumeration<InputStream>() {
+			private boolean first = true;
+
+			@Override
+			public boolean hasMoreElements() {
+				return true;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				String item = first ? "[{}" : ",{}";
+				first = false;
+				return new ByteArrayInputStream(item.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+
+		ValidationResults results = resultsOf(ValidationLimits.maxErrors(3), null, Body.from(new SequenceInputStream(items)));
+
+		assertThat(results.items()).hasSize(3);
+	}
+
+	@Test
+	public void testDiagnostics() {
+		ValidationResults results = resultsOf(ValidationLimits.NONE, "one", Body.from("[{},{}]"));
+
+		List<OperationResult.Diagnostic> errors = new ArrayList<>();
+		String diagnostics = ValidationLimits.maxErrors(2).diagnosticsOf(results, errors);
+		assertThat(errors).hasSize(2);
+		assertThat(errors.get(0).location).isEqualTo("X-Batch");
+		assertThat(errors.get(1).location).isEqualTo("body.0");
+		assertThat(diagnostics).startsWith("X-Batch: ").contains("body.0: ").doesNotContain("body.1");
+
+		errors.clear();
+		diagnostics = ValidationLimits.NONE.withMaxDiagnosticsLength(20).diagnosticsOf(results, errors);
+		assertThat(diagnostics).hasSize(20).endsWith("...");
+		assertThat(errors).hasSize(1);
+	}
+
+	private ValidationResults resultsOf(ValidationLimits limits, String batch, Body body) {
+		DefaultRequest.Builder requestBuilder = new DefaultRequest.Builder("/events", Request.Method.POST)
+				.header("Content-Type", "application/json")
+				.body(body);
+		if (batch != null) {
+			requestBuilder.header("X-Batch", batch);
+		}
+		Request request = requestBuilder.build();
+
+		ValidationException exception = catchThrowableOfType(
+				() -> validator.validate(request, validator.find(request.getMethod(), request.getPath()), limits, null),
+				ValidationException.class);
+		assertThat(exception).isNotNull();
+		return exception.results();
+	}
+}
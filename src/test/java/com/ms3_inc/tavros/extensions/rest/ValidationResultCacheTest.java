@@ -0,0 +1,81 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ValidationResultCacheTest {
+	private final AtomicLong time = new AtomicLong();
+
+	@Test
+	public void testHitsAndMisses() {
+		ValidationResultCache cache = new ValidationResultCache(10, Duration.ofMinutes(1), time::get);
+		OperationResult.Message failure = OperationResult.MessageBuilder.error("RequestValidationError", "Invalid.").build();
+
+		assertThat(cache.get("a")).isNull();
+		cache.put("a", null);
+		cache.put("b", failure);
+
+		assertThat(cache.get("a").getFailure()).isNull();
+		assertThat(cache.get("b").getFailure()).isSameAs(failure);
+		assertThat(cache.getHitCount()).isEqualTo(2);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		ValidationResultCache cache = new ValidationResultCache(2, Duration.ofMinutes(1), time::get);
+
+		cache.put("a", null);
+		cache.put("b", null);
+		cache.get("a");
+		cache.put("c", null);
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("a")).isNotNull();
+		assertThat(cache.get("c")).isNotNull();
+		assertThat(cache.getEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testExpiredOutcomesEvicted() {
+		ValidationResultCache cache = new ValidationResultCache(10, Duration.ofSeconds(1), time::get);
+
+		cache.put("a", null);
+		time.addAndGet(Duration.ofMillis(999).toNanos());
+		assertThat(cache.get("a")).isNotNull();
+
+		time.addAndGet(Duration.ofMillis(1).toNanos());
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.size()).isZero();
+		assertThat(cache.getEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testInvalidBounds() {
+		assertThatThrownBy(() -> new ValidationResultCache(0, Duration.ofSeconds(1)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new ValidationResultCache(1, Duration.ZERO))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,87 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ValidationStatisticsTest {
+	private final ValidationStatistics statistics = new ValidationStatistics();
+
+	@Test
+	public void testOutcomes() {
+		statistics.recordSuccess("getHello");
+		statistics.recordFailure("getHello", Arrays.asList("1001", "202"));
+		statistics.recordFailure("getHello", Collections.singleton("202"));
+
+		OperationStatistics hello = statistics.getOperation("getHello");
+		assertThat(hello.getSuccessCount()).isEqualTo(1);
+		assertThat(hello.getFailureCount()).isEqualTo(2);
+		assertThat(hello.getFailuresByCode()).containsEntry("1001", 1L).containsEntry("202", 2L);
+		assertThat(statistics.getFailureCount()).isEqualTo(2);
+		assertThat(statistics.getOperation("unknown")).isNull();
+	}
+
+	@Test
+	public void testLatencyPercentiles() {
+		for (int i = 0; i < 99; i++) {
+			statistics.recordStage("getHello", ValidationMetrics.Stage.BODY, TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		statistics.recordStage("getHello", ValidationMetrics.Stage.BODY, TimeUnit.MILLISECONDS.toNanos(10));
+
+		OperationStatistics hello = statistics.getOperation("getHello");
+		// 100 µs falls in the bucket up to 131071 ns
+		assertThat(hello.getP99MicrosByStage()).containsEntry("body", 131L);
+		assertThat(hello.getMaxMicrosByStage()).containsEntry("body", 10_000L);
+		assertThat(hello.getMeanMicrosByStage().get("body")).isEqualTo(199.0);
+		assertThat(hello.getMeanMicrosByStage()).doesNotContainKey("lookup");
+	}
+
+	@Test
+	public void testBodySizes() {
+		statistics.recordBodySize("postGreeting", 0);
+		statistics.recordBodySize("postGreeting", 1000);
+
+		OperationStatistics greeting = statistics.getOperation("postGreeting");
+		assertThat(greeting.getMeanBodySize()).isEqualTo(500.0);
+		assertThat(greeting.getP99BodySize()).isEqualTo(1000);
+		assertThat(greeting.getMaxBodySize()).isEqualTo(1000);
+	}
+
+	@Test
+	public void testRegisteredAsMXBean() throws Exception {
+		statistics.recordSuccess("getHello");
+		statistics.registerMBean("test-api");
+		try {
+			ObjectName name = new ObjectName(ValidationStatistics.JMX_DOMAIN + ":type=ValidationStatistics,name=\"test-api\"");
+			assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SuccessCount")).isEqualTo(1L);
+
+			CompositeData[] operations = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations");
+			assertThat(operations).hasSize(1);
+			assertThat(operations[0].get("operationId")).isEqualTo("getHello");
+		} finally {
+			statistics.unregisterMBean();
+		}
+	}
+}
@@ -15,6 +15,12 @@ package com.ms3_inc.tavros.extensions.rest;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import com.atlassian.oai.validator.OpenApiInteractionValidator;
+import com.atlassian.oai.validator.model.SimpleRequest;
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.ms3_inc.tavros.extensions.rest.exception.BadRequestException;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
 import org.apache.camel.builder.AdviceWithRouteBuilder;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
@@ -30,6 +36,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -290,6 +306,333 @@ class ValidatorTest extends CamelTestSupport {
 		mock.assertIsSatisfied();
 	}
 
+	@Test
+	public void testMalformedGreetingXML() throws Exception {
+		RouteReifier.adviceWith(context.getRouteDefinitions().get(2), context, new AdviceWithRouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				interceptFrom()
+						.process(new OpenApi4jValidator("api.yaml"))
+				;
+			}
+		});
+
+		MockEndpoint mock = getMockEndpoint("mock:error");
+
+		CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+		HttpPost req = new HttpPost("http://localhost:9000/greeting");
+		req.setHeader("content-type", "application/xml");
+		req.setEntity(new StringEntity("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<greeting>\n" +
+				"\t<caller>someone</callr>\n" +
+				"</greeting>"));
+
+		httpClient.execute(req);
+
+		mock.expectedMessageCount(1);
+		mock.assertIsSatisfied();
+
+		String exceptionCaught = mock.getExchanges().get(0).getProperty("CamelExceptionCaught").toString();
+		assertThat(exceptionCaught).contains("BadRequestException").contains("line 3");
+	}
+
+	@Test
+	public void testValidGreetingXMLStreaming() throws Exception {
+		RouteReifier.adviceWith(context.getRouteDefinitions().get(2), context, new AdviceWithRouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				interceptFrom()
+						.process(new OpenApi4jValidator("api.yaml").withStreamingBody(true))
+						// read the body again after validation
+						.convertBodyTo(String.class)
+				;
+			}
+		});
+
+		MockEndpoint mock = getMockEndpoint("mock:result");
+
+		CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+		HttpPost req = new HttpPost("http://localhost:9000/greeting");
+		req.setHeader("content-type", "application/xml");
+		req.setEntity(new StringEntity("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<greeting>\n" +
+				"\t<caller>someone</caller>\n" +
+				"</greeting>"));
+
+		httpClient.execute(req);
+
+		mock.expectedMessageCount(1);
+		mock.assertIsSatisfied();
+
+		assertThat(mock.getExchanges().get(0).getMessage().getBody(String.class)).contains("<caller>someone</caller>");
+	}
+
+	@Test
+	public void testInvalidGreetingJSONStreaming() throws Exception {
+		RouteReifier.adviceWith(context.getRouteDefinitions().get(0), context, new AdviceWithRouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				interceptFrom()
+						.process(new OpenApi4jValidator("api.yaml").withStreamingBody(true))
+				;
+			}
+		});
+
+		MockEndpoint mock = getMockEndpoint("mock:error");
+
+		CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+		HttpPost req = new HttpPost("http://localhost:9000/greeting");
+		req.setHeader("content-type", "application/json");
+		req.setEntity(new StringEntity("{\"not-caller\":\"someone\"}"));
+
+		httpClient.execute(req);
+
+		mock.expectedMessageCount(1);
+		mock.assertIsSatisfied();
+
+		String exceptionCaught = mock.getExchanges().get(0).getProperty("CamelExceptionCaught").toString();
+		assertThat(exceptionCaught).contains("BadRequestException").contains("caller");
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testBodyNotReadWithoutRequestBody(String input) throws Exception {
+		AsyncProcessor validator = input.equals("openapi4j")
+				? new OpenApi4jValidator("api.yaml").withStreamingBody(true)
+				: new SwaggerRequestValidator("api.yaml");
+
+		Exchange exchange = TestExchanges.request(context, "GET", "/hello");
+		exchange.getMessage().setHeader(Exchange.HTTP_QUERY, "bar-query=some");
+		exchange.getMessage().setHeader("foo-header", "some");
+		exchange.getMessage().setBody(new InputStream() {
+			@Override
+			public int read() {
+				throw new IllegalStateException("body read");
+			}
+		});
+
+		validator.process(exchange, doneSync -> { });
+
+		assertThat(exchange.getException()).isNull();
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testNonStringHeaderConverted(String input) throws Exception {
+		AsyncProcessor validator = input.equals("openapi4j")
+				? new OpenApi4jValidator("api.yaml")
+				: new SwaggerRequestValidator("api.yaml");
+
+		Exchange exchange = TestExchanges.request(context, "GET", "/hello");
+		exchange.getMessage().setHeader(Exchange.HTTP_QUERY, "bar-query=some");
+		exchange.getMessage().setHeader("Foo-Header", 42);
+
+		validator.process(exchange, doneSync -> { });
+
+		assertThat(exchange.getException()).isNull();
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testUnencodedPathNotFound(String input) throws Exception {
+		AsyncProcessor validator = input.equals("openapi4j")
+				? new OpenApi4jValidator("api.yaml")
+				: new SwaggerRequestValidator("api.yaml");
+
+		for (String uri : new String[]{"/hello world", "/{hello}", "/hello|there", "/50%", "/h%C3%A9llo wörld"}) {
+			Exchange exchange = helloExchange("bar-query=some");
+			exchange.getMessage().setHeader(Exchange.HTTP_URI, uri);
+
+			validator.process(exchange, doneSync -> { });
+
+			assertThat(exchange.getException()).as(uri).isInstanceOf(BadRequestException.class);
+		}
+	}
+
+	@Test
+	public void testByteStringsLikeAtlassianLoader() throws Exception {
+		SwaggerRequestValidator validator = new SwaggerRequestValidator("bytes.yaml");
+		OpenApiInteractionValidator atlassian = OpenApiInteractionValidator.createForSpecificationUrl("bytes.yaml").build();
+
+		for (String body : new String[]{"{\"data\":\"QUJD\"}", "{\"data\":\"ABC\"}", "{\"chunks\":[\"QUJD\"]}",
+				"{\"checksums\":{\"md5\":\"QUJD\"}}", "{\"preview\":\"QUJD\"}", "{\"parent\":{\"data\":\"QUJD\"}}",
+				"{\"data\":1}"}) {
+			Exchange exchange = TestExchanges.request(context, "POST", "/files", "application/json", body);
+			validator.process(exchange, doneSync -> { });
+
+			ValidationReport report = atlassian.validateRequest(SimpleRequest.Builder.post("/files")
+					.withContentType("application/json")
+					.withBody(body)
+					.build());
+			assertThat(exchange.getException() != null).as(body).isEqualTo(report.hasErrors());
+		}
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testOnlyReferencedHeadersRead(String input) throws Exception {
+		AsyncProcessor validator = input.equals("openapi4j")
+				? new OpenApi4jValidator("api.yaml")
+				: new SwaggerRequestValidator("api.yaml");
+
+		AtomicBoolean read = new AtomicBoolean();
+		Exchange exchange = helloExchange("bar-query=some");
+		// the case of the specification doesn't matter
+		exchange.getMessage().setHeader("FOO-HEADER", "some");
+		exchange.getMessage().setHeader("X-Unreferenced", (Iterable<String>) () -> {
+			read.set(true);
+			return Collections.singletonList("some").iterator();
+		});
+
+		validator.process(exchange, doneSync -> { });
+
+		assertThat(exchange.getException()).isNull();
+		assertThat(read).isFalse();
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testReferencedPathHeader(String input) throws Exception {
+		AsyncProcessor validator = input.equals("openapi4j")
+				? new OpenApi4jValidator("parameters.yaml")
+				: new SwaggerRequestValidator("parameters.yaml");
+
+		Exchange valid = TestExchanges.request(context, "GET", "/greeting");
+		valid.getMessage().setHeader("bar-header", "some");
+		validator.process(valid, doneSync -> { });
+		Exchange missing = TestExchanges.request(context, "GET", "/greeting");
+		validator.process(missing, doneSync -> { });
+
+		assertThat(valid.getException()).isNull();
+		assertThat(missing.getException()).isInstanceOf(BadRequestException.class)
+				.hasMessageContaining("bar-header");
+	}
+
+	@Test
+	public void testResultCache() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache(16, Duration.ofMinutes(1));
+		OpenApi4jValidator validator = new OpenApi4jValidator("api.yaml").withResultCache(cache);
+
+		Exchange first = helloExchange("bar-query=some&other=1");
+		validator.process(first, doneSync -> { });
+		Exchange second = helloExchange("other=1&bar-query=some");
+		validator.process(second, doneSync -> { });
+
+		assertThat(first.getException()).isInstanceOf(BadRequestException.class);
+		assertThat(second.getException()).isInstanceOf(BadRequestException.class)
+				.hasMessage(first.getException().getMessage());
+		assertThat(cache.getMissCount()).isEqualTo(1);
+		assertThat(cache.getHitCount()).isEqualTo(1);
+
+		Exchange valid = helloExchange("bar-query=some&other=1");
+		valid.getMessage().setHeader("foo-header", "some");
+		validator.process(valid, doneSync -> { });
+
+		assertThat(valid.getException()).isNull();
+		assertThat(cache.getMissCount()).isEqualTo(2);
+
+		Exchange withBody = TestExchanges.request(context, "POST", "/greeting", "application/json", "{\"caller\":\"someone\"}");
+		validator.process(withBody, doneSync -> { });
+
+		assertThat(withBody.getException()).isNull();
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testResultCacheSkipsStreams() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache(16, Duration.ofMinutes(1));
+		OpenApi4jValidator validator = new OpenApi4jValidator("api.yaml").withResultCache(cache);
+
+		Exchange exchange = greetingExchange(null);
+		exchange.getMessage().setBody(new ByteArrayInputStream("{\"not-caller\":\"someone\"}".getBytes(StandardCharsets.UTF_8)));
+		validator.process(exchange, doneSync -> { });
+
+		assertThat(exchange.getException()).isInstanceOf(BadRequestException.class);
+		assertThat(cache.size()).isZero();
+		assertThat(cache.getMissCount()).isZero();
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testHeavyBodyValidatedAsync(String input) throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			AsyncProcessor validator = input.equals("openapi4j")
+					? new OpenApi4jValidator("api.yaml").withExecutor(executor).withAsyncBodyThreshold(16)
+					: new SwaggerRequestValidator("api.yaml").withExecutor(executor).withAsyncBodyThreshold(16);
+
+			Exchange small = greetingExchange("{}");
+			AtomicBoolean smallDoneSync = new AtomicBoolean();
+			assertThat(validator.process(small, smallDoneSync::set)).isTrue();
+			assertThat(smallDoneSync).isTrue();
+			assertThat(small.getException()).isNotNull();
+
+			Exchange large = greetingExchange("{\"not-caller\":\"someone\"}");
+			CompletableFuture<Boolean> largeDoneSync = new CompletableFuture<>();
+			assertThat(validator.process(large, largeDoneSync::complete)).isFalse();
+			assertThat(largeDoneSync.get(5, TimeUnit.SECONDS)).isFalse();
+			assertThat(large.getException()).isNotNull();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testCallbackDoneWithoutMethod(String input) throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			AsyncProcessor validator = input.equals("openapi4j")
+					? new OpenApi4jValidator("api.yaml").withExecutor(executor)
+					: new SwaggerRequestValidator("api.yaml").withExecutor(executor);
+
+			Exchange exchange = helloExchange("bar-query=some");
+			exchange.getMessage().removeHeader(Exchange.HTTP_METHOD);
+			AtomicBoolean done = new AtomicBoolean();
+			try {
+				validator.process(exchange, doneSync -> done.set(true));
+			} catch (RuntimeException e) {
+				// reported by the validation, the callback must be done anyway
+			}
+
+			assertThat(done).isTrue();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@ParameterizedTest(name = "#{index} - Test with: {0}")
+	@MethodSource("validatorProvider")
+	public void testMetrics(String input) throws Exception {
+		ValidationStatistics statistics = new ValidationStatistics();
+		AsyncProcessor validator = input.equals("openapi4j")
+				? new OpenApi4jValidator("api.yaml").withMetrics(statistics)
+				: new SwaggerRequestValidator("api.yaml").withMetrics(statistics);
+
+		validator.process(greetingExchange("{\"caller\":\"someone\"}"), doneSync -> { });
+		validator.process(greetingExchange("{\"not-caller\":\"someone\"}"), doneSync -> { });
+
+		OperationStatistics greeting = statistics.getOperation("POST /greeting");
+		assertThat(greeting.getSuccessCount()).isEqualTo(1);
+		assertThat(greeting.getFailureCount()).isEqualTo(1);
+		assertThat(greeting.getFailuresByCode()).isNotEmpty();
+		assertThat(greeting.getMeanMicrosByStage()).containsKeys("lookup", "request")
+				.containsKeys(input.equals("openapi4j") ? new String[]{"parameters", "body"} : new String[]{"validation"});
+		assertThat(greeting.getMaxBodySize()).isEqualTo(24);
+	}
+
+	private Exchange greetingExchange(String body) {
+		Exchange exchange = TestExchanges.request(context, "POST", "/greeting", "application/json", body);
+		exchange.getMessage().setHeader("Authorization", "Bearer token");
+		return exchange;
+	}
+
+	private Exchange helloExchange(String query) {
+		Exchange exchange = TestExchanges.request(context, "GET", "/hello");
+		exchange.getMessage().setHeader(Exchange.HTTP_QUERY, query);
+		return exchange;
+	}
+
 	static Stream<String> validatorProvider() {
 		return Stream.of("openapi4j", "swagger");
 	}
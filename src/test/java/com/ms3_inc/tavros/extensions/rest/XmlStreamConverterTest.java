@@ -0,0 +1,120 @@
+package com.ms3_inc.tavros.extensions.rest;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.openapi4j.parser.model.v3.Schema;
+import org.openapi4j.parser.model.v3.Xml;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class XmlStreamConverterTest {
+	private final XmlStreamConverter converter = new XmlStreamConverter(null);
+
+	private static Schema order() {
+		return new Schema()
+				.setType("object")
+				.setXml(new Xml().setName("order"))
+				.setProperty("id", new Schema().setType("integer").setXml(new Xml().setAttribute(true)))
+				.setProperty("paid", new Schema().setType("boolean"))
+				.setProperty("total", new Schema().setType("number"))
+				.setProperty("lines", new Schema().setType("array")
+						.setItemsSchema(new Schema().setType("object")
+								.setProperty("sku", new Schema().setType("string"))
+								.setProperty("quantity", new Schema().setType("integer")))
+						.setXml(new Xml().setName("line")))
+				.setProperty("tags", new Schema().setType("array")
+						.setItemsSchema(new Schema().setType("string").setXml(new Xml().setName("tag")))
+						.setXml(new Xml().setWrapped(true)));
+	}
+
+	private JsonNode convert(String xml, Schema schema) throws XMLStreamException {
+		return converter.convert(new StringReader(xml), schema);
+	}
+
+	@Test
+	public void testSchemaDrivenConversion() throws Exception {
+		JsonNode node = convert("<order id=\"7\">" +
+				"<paid>true</paid><total>12.50</total>" +
+				"<line><sku>a</sku><quantity>2</quantity></line>" +
+				"<tags><tag>x</tag><tag>y</tag></tags>" +
+				"</order>", order());
+
+		assertThat(node.get("id").isIntegralNumber()).isTrue();
+		assertThat(node.get("id").asLong()).isEqualTo(7);
+		assertThat(node.get("paid").isBoolean()).isTrue();
+		assertThat(node.get("total").decimalValue()).isEqualByComparingTo("12.50");
+		assertThat(node.get("lines").isArray()).isTrue();
+		assertThat(node.get("lines")).hasSize(1);
+		assertThat(node.get("lines").get(0).get("quantity").asInt()).isEqualTo(2);
+		assertThat(node.get("tags").toString()).isEqualTo("[\"x\",\"y\"]");
+	}
+
+	@Test
+	public void testMismatchedTypesAreLeftAsText() throws Exception {
+		JsonNode node = convert("<order id=\"seven\"><paid>yes</paid></order>", order());
+
+		assertThat(node.get("id").isTextual()).isTrue();
+		assertThat(node.get("paid").asText()).isEqualTo("yes");
+	}
+
+	@Test
+	public void testWithoutSchema() throws Exception {
+		JsonNode node = converter.convert(new ByteArrayInputStream(
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?><greeting><caller>someone</caller><a>1</a><a>2</a><a>3</a></greeting>"
+						.getBytes(StandardCharsets.UTF_8)), null);
+
+		assertThat(node.get("caller").asText()).isEqualTo("someone");
+		assertThat(node.get("a").toString()).isEqualTo("[\"1\",\"2\",\"3\"]");
+	}
+
+	@Test
+	public void testMalformedDocumentReportsPosition() {
+		assertThatThrownBy(() -> convert("<order>\n<paid>true</total>\n</order>", order()))
+				.isInstanceOf(XMLStreamException.class)
+				.satisfies(e -> assertThat(((XMLStreamException) e).getLocation().getLineNumber()).isEqualTo(2));
+	}
+
+	@Test
+	public void testDepthIsLimited() throws Exception {
+		assertThat(convert(nested(XmlStreamConverter.MAX_DEPTH), null)).isNotNull();
+		assertThatThrownBy(() -> convert(nested(XmlStreamConverter.MAX_DEPTH + 1), null))
+				.isInstanceOf(XMLStreamException.class)
+				.hasMessageContaining("nested deeper than " + XmlStreamConverter.MAX_DEPTH);
+		// deep enough to overflow the stack without the limit
+		assertThatThrownBy(() -> convert(nested(100_000), null)).isInstanceOf(XMLStreamException.class);
+	}
+
+	private static String nested(int depth) {
+		StringBuilder xml = new StringBuilder(depth * 7);
+		for (int i = 0; i < depth; i++) xml.append("<a>");
+		for (int i = 0; i < depth; i++) xml.append("</a>");
+		return xml.toString();
+	}
+
+	@Test
+	public void testDoctypeIsRejected() {
+		assertThatThrownBy(() -> convert("<!DOCTYPE order [<!ENTITY x SYSTEM \"file:///etc/passwd\">]><order>&x;</order>", order()))
+				.isInstanceOf(XMLStreamException.class);
+	}
+}
@@ -0,0 +1,47 @@
+package com.ms3_inc.tavros.extensions.rest.exception;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.ms3_inc.tavros.extensions.rest.OperationResult;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RestExceptionTest {
+
+	@Test
+	public void testMessageRenderedFromOperationResult() {
+		OperationResult.Message message = OperationResult.MessageBuilder.error("RequestValidationError", "Invalid request.")
+				.withDiagnostics("body.caller: is required")
+				.build();
+		IllegalStateException cause = new IllegalStateException("cause");
+
+		BadRequestException exception = new BadRequestException(cause, message);
+
+		assertThat(exception.getMessage()).isEqualTo(message.toString()).isSameAs(exception.getMessage());
+		assertThat(exception.toString()).contains("BadRequestException").contains("body.caller: is required");
+		assertThat(exception.getCause()).isSameAs(cause);
+		assertThat(exception.getOperationResultMessage()).isSameAs(message);
+	}
+
+	@Test
+	public void testStackTraceCapturedUnlessLightweight() {
+		BadRequestException exception = new BadRequestException(
+				OperationResult.MessageBuilder.error("RequestValidationError", "Invalid request.").build());
+
+		assertThat(exception.getStackTrace().length == 0).isEqualTo(RestException.isLightweight());
+	}
+}
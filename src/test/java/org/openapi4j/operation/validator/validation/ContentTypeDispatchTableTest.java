@@ -0,0 +1,88 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+import org.springframework.util.MimeType;
+
+import java.util.LinkedHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentTypeDispatchTableTest {
+
+	private static ContentTypeDispatchTable<String> table(String... mediaTypes) {
+		LinkedHashMap<MimeType, String> values = new LinkedHashMap<>();
+		for (String mediaType : mediaTypes) {
+			values.put(MimeType.valueOf(mediaType), mediaType);
+		}
+		return new ContentTypeDispatchTable<>(values);
+	}
+
+	@Test
+	public void testPrecedenceDoesNotDependOnDeclarationOrder() {
+		ContentTypeDispatchTable<String> table = table("*/*", "application/*", "application/*+json", "application/json");
+
+		assertThat(table.get("application/json")).isEqualTo("application/json");
+		assertThat(table.get("application/json;charset=UTF-8")).isEqualTo("application/json");
+		assertThat(table.get("application/problem+json")).isEqualTo("application/*+json");
+		assertThat(table.get("application/xml")).isEqualTo("application/*");
+		assertThat(table.get("text/plain")).isEqualTo("*/*");
+	}
+
+	@Test
+	public void testMostParametersFirst() {
+		ContentTypeDispatchTable<String> table = table("application/json", "application/json;profile=v2");
+
+		assertThat(table.get("application/json;profile=v2")).isEqualTo("application/json;profile=v2");
+		assertThat(table.get("application/json;profile=v1")).isEqualTo("application/json");
+		assertThat(table.get("application/json")).isEqualTo("application/json");
+	}
+
+	@Test
+	public void testParametersMustBeIncluded() {
+		ContentTypeDispatchTable<String> table = table("application/json;profile=v2");
+
+		assertThat(table.get("application/json")).isNull();
+		assertThat(table.get("application/json;profile=v2;charset=UTF-8")).isEqualTo("application/json;profile=v2");
+	}
+
+	@Test
+	public void testUnknownAndInvalidContentTypes() {
+		ContentTypeDispatchTable<String> table = table("application/json");
+
+		assertThat(table.get("application/xml")).isNull();
+		assertThat(table.get("not a content type")).isNull();
+		assertThat(table.get("")).isNull();
+		assertThat(table.get(null)).isNull();
+	}
+
+	@Test
+	public void testCacheIsBounded() {
+		ContentTypeDispatchTable<String> table = table("application/*");
+
+		for (int i = 0; i < ContentTypeDispatchTable.CACHE_CAPACITY * 2; i++) {
+			assertThat(table.get("application/vnd.test" + i)).isEqualTo("application/*");
+			// kept as the most recently used
+			assertThat(table.get("application/json")).isEqualTo("application/*");
+		}
+		assertThat(table.isCached("application/json")).isTrue();
+		assertThat(table.isCached("application/vnd.test0")).isFalse();
+		assertThat(table.isCached("application/vnd.test" + (ContentTypeDispatchTable.CACHE_CAPACITY * 2 - 1))).isTrue();
+		assertThat(table.get("application/vnd.test0")).isEqualTo("application/*");
+		assertThat(table.get("text/plain")).isNull();
+	}
+}
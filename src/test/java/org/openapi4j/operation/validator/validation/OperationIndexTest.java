@@ -0,0 +1,128 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+import org.openapi4j.operation.validator.model.Request;
+import org.openapi4j.parser.model.v3.Info;
+import org.openapi4j.parser.model.v3.OpenApi3;
+import org.openapi4j.parser.model.v3.Operation;
+import org.openapi4j.parser.model.v3.Path;
+import org.openapi4j.parser.model.v3.Server;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OperationIndexTest {
+
+	private static OpenApi3 api() {
+		return new OpenApi3()
+				.setOpenapi("3.0.3")
+				.setInfo(new Info().setTitle("index").setVersion("1.0"))
+				.setPath("/", path("get"))
+				.setPath("/users", path("get", "post"))
+				.setPath("/users/{id}", path("get", "delete"))
+				.setPath("/users/me", path("get"))
+				.setPath("/users/{id}/orders/{orderId}", path("get"))
+				.setPath("/files/{name}.json", path("get"))
+				.setPath("/files/{name}", path("get"));
+	}
+
+	private static Path path(String... methods) {
+		Path path = new Path();
+		for (String method : methods) {
+			path.setOperation(method, new Operation().setOperationId(method));
+		}
+		return path;
+	}
+
+	private static String templateOf(OperationIndex index, Request.Method method, String path) {
+		OperationIndex.Match match = index.find(method, path);
+		return match == null ? null : match.getTemplatePath();
+	}
+
+	@Test
+	public void testLiteralSegmentsWinOverParameters() {
+		OperationIndex index = new OperationIndex(api(), (path, operation) -> null);
+
+		assertThat(templateOf(index, Request.Method.GET, "/users/me")).isEqualTo("/users/me");
+		assertThat(templateOf(index, Request.Method.GET, "/users/42")).isEqualTo("/users/{id}");
+		assertThat(templateOf(index, Request.Method.GET, "/users/42/orders/7")).isEqualTo("/users/{id}/orders/{orderId}");
+		assertThat(templateOf(index, Request.Method.GET, "/files/report.json")).isEqualTo("/files/{name}.json");
+		assertThat(templateOf(index, Request.Method.GET, "/files/report.xml")).isEqualTo("/files/{name}");
+		assertThat(templateOf(index, Request.Method.GET, "/")).isEqualTo("/");
+		assertThat(templateOf(index, Request.Method.GET, "")).isEqualTo("/");
+	}
+
+	@Test
+	public void testFallsBackToParameterWhenLiteralLacksMethod() {
+		OperationIndex index = new OperationIndex(api(), (path, operation) -> null);
+
+		assertThat(templateOf(index, Request.Method.DELETE, "/users/me")).isEqualTo("/users/{id}");
+		assertThat(index.find(Request.Method.PUT, "/users/me")).isNull();
+		assertThat(index.containsPath("/users/me")).isTrue();
+	}
+
+	@Test
+	public void testUnknownPaths() {
+		OperationIndex index = new OperationIndex(api(), (path, operation) -> null);
+
+		assertThat(index.find(Request.Method.GET, "/users/42/orders")).isNull();
+		assertThat(index.find(Request.Method.GET, "/users/42/orders/7/items")).isNull();
+		assertThat(index.find(Request.Method.GET, "/unknown")).isNull();
+		assertThat(index.containsPath("/unknown")).isFalse();
+	}
+
+	@Test
+	public void testEmptySegmentMatchesParameterLikeRequestValidator() {
+		OperationIndex index = new OperationIndex(api(), (path, operation) -> null);
+
+		assertThat(templateOf(index, Request.Method.GET, "/users/")).isEqualTo("/users/{id}");
+	}
+
+	@Test
+	public void testSegmentsDecodedAfterSplitting() {
+		OperationIndex index = new OperationIndex(api(), (path, operation) -> null);
+
+		// an encoded slash stays within the parameter
+		assertThat(templateOf(index, Request.Method.GET, "/users/a%2Fb")).isEqualTo("/users/{id}");
+		assertThat(templateOf(index, Request.Method.GET, "/users/a%2Fb/orders/%E2%9C%93")).isEqualTo("/users/{id}/orders/{orderId}");
+		assertThat(templateOf(index, Request.Method.GET, "/%75sers/me")).isEqualTo("/users/me");
+		assertThat(templateOf(index, Request.Method.GET, "/users/50%")).isEqualTo("/users/{id}");
+		assertThat(OperationIndex.decode("caf%C3%A9%2x%")).isEqualTo("café%2x%");
+	}
+
+	@Test
+	public void testPathOf() {
+		assertThat(OperationIndex.pathOf("/users/a%2Fb?q=1#top")).isEqualTo("/users/a%2Fb");
+		assertThat(OperationIndex.pathOf("/users/a b/{x}|y")).isEqualTo("/users/a b/{x}|y");
+		assertThat(OperationIndex.pathOf("http://localhost:9000/api/users?q=/x")).isEqualTo("/api/users");
+		assertThat(OperationIndex.pathOf("http://localhost:9000")).isEqualTo("/");
+	}
+
+	@Test
+	public void testServerBasePaths() {
+		OpenApi3 api = api().setServers(Arrays.asList(
+				new Server().setUrl("http://localhost:9000/api/"),
+				new Server().setUrl("https://example.com/v1")));
+		OperationIndex index = new OperationIndex(api, (path, operation) -> null);
+
+		assertThat(templateOf(index, Request.Method.GET, "/api/users/42")).isEqualTo("/users/{id}");
+		assertThat(templateOf(index, Request.Method.POST, "/v1/users")).isEqualTo("/users");
+		assertThat(index.find(Request.Method.GET, "/users/42")).isNull();
+	}
+}
@@ -0,0 +1,139 @@
+package org.openapi4j.operation.validator.validation;
+
+/*-
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapi4j.core.validation.ValidationException;
+import org.openapi4j.core.validation.ValidationResults;
+import org.openapi4j.operation.validator.model.Request;
+import org.openapi4j.operation.validator.model.impl.Body;
+import org.openapi4j.operation.validator.model.impl.DefaultRequest;
+import org.openapi4j.parser.OpenApi3Parser;
+import org.openapi4j.parser.model.v3.OpenApi3;
+import org.openapi4j.schema.validator.ValidationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class StreamingBodyValidatorTest {
+	private RequestValidatorExtension validator;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		OpenApi3 api = new OpenApi3Parser().parse(getClass().getClassLoader().getResource("streaming.yaml"), false);
+		// the extension is used for streamed bodies even without media type parameters support
+		validator = new RequestValidatorExtension(new ValidationContext<>(api.getContext()), api, false, true);
+	}
+
+	@Test
+	public void testNdjson() {
+		assertThatCode(() -> validate("/events", "application/x-ndjson", Body.from("{\"id\":1}\n{\"id\":2}\n")))
+				.doesNotThrowAnyException();
+
+		List<String> errors = errorsOf("/events", "application/x-ndjson", Body.from("{\"id\":1}\n{\"name\":\"two\"}\n{\"id\":\"three\"}\n"));
+		assertThat(errors).hasSize(2);
+		// like arrays validated whole
+		assertThat(errors.get(0)).startsWith("body.1:");
+		assertThat(errors.get(1)).startsWith("body.2.id:");
+	}
+
+	@Test
+	public void testArrayItemsAndSize() {
+		assertThatCode(() -> validate("/events", "application/json", Body.from("[{\"id\":1},{\"id\":2}]")))
+				.doesNotThrowAnyException();
+
+		assertThat(errorsOf("/events", "application/json", Body.from("[{\"id\":1},{}]"))).hasSize(1);
+		assertThat(errorsOf("/events", "application/json", Body.from("[]"))).hasSize(1).first().asString().startsWith("body: Min items is '1', found '0'.");
+		assertThat(errorsOf("/events", "application/json", Body.from("{\"id\":1}"))).hasSize(1);
+	}
+
+	@Test
+	public void testStopsAfterMaxErrors() {
+		// an endless stream of invalid items
+		Enumeration<InputStream> items = new Enumeration<InputStream>() {
+			private boolean first = true;
+
+			@Override
+			public boolean hasMoreElements() {
+				return true;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				String item = first ? "[{}" : ",{}";
+				first = false;
+				return new ByteArrayInputStream(item.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+
+		List<String> errors = errorsOf("/events", "application/json", Body.from(new SequenceInputStream(items)));
+
+		assertThat(errors).hasSize(StreamingBodyValidator.DEFAULT_MAX_ERRORS + 1);
+		assertThat(errors.get(errors.size() - 1)).contains("Validation stopped after 10 invalid items.");
+	}
+
+	@Test
+	public void testUniqueItemsValidatedWhole() {
+		assertThat(errorsOf("/tags", "application/json", Body.from("[\"a\",\"a\"]"))).hasSize(1);
+	}
+
+	@Test
+	public void testNotArrayReportedBySchema() {
+		ValidationException exception = catchThrowableOfType(
+				() -> validate("/events", "application/json", Body.from("{\"id\":1}")), ValidationException.class);
+
+		assertThat(exception.results().items()).hasSize(1);
+		assertThat(exception.results().items().get(0).code()).isEqualTo(1027);
+	}
+
+	@Test
+	public void testArraysValidatedWholeWithoutStreaming() throws Exception {
+		OpenApi3 api = new OpenApi3Parser().parse(getClass().getClassLoader().getResource("streaming.yaml"), false);
+		validator = new RequestValidatorExtension(new ValidationContext<>(api.getContext()), api, true);
+
+		String items = String.join(",", Collections.nCopies(StreamingBodyValidator.DEFAULT_MAX_ERRORS + 2, "{}"));
+		assertThat(errorsOf("/events", "application/json", Body.from("[" + items + "]")))
+				.hasSize(StreamingBodyValidator.DEFAULT_MAX_ERRORS + 2)
+				.noneMatch(error -> error.contains("Validation stopped"));
+		// NDJSON bodies are streamed anyway
+		assertThat(errorsOf("/events", "application/x-ndjson", Body.from("{\"id\":1}\n{}\n"))).hasSize(1);
+	}
+
+	private void validate(String path, String contentType, Body body) throws ValidationException {
+		Request request = new DefaultRequest.Builder(path, Request.Method.POST)
+				.header("Content-Type", contentType)
+				.body(body)
+				.build();
+		validator.validate(request);
+	}
+
+	private List<String> errorsOf(String path, String contentType, Body body) {
+		ValidationException exception = catchThrowableOfType(() -> validate(path, contentType, body), ValidationException.class);
+		assertThat(exception).isNotNull();
+		return exception.results().items().stream().map(ValidationResults.ValidationItem::toString).collect(Collectors.toList());
+	}
+}